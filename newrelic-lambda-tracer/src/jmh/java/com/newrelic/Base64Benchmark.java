@@ -0,0 +1,186 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.util.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base64 encoding and decoding of a distributed trace header sized and a payload sized input, compared with the
+ * char[4] based implementation it replaced and with java.util.Base64.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Base64Benchmark {
+
+    @Param({ "256", "16384" })
+    public int size;
+
+    private byte[] data;
+    private String encoded;
+    private ByteBuffer source;
+    private ByteBuffer target;
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new Random(1).nextBytes(data);
+        encoded = java.util.Base64.getEncoder().encodeToString(data);
+        source = ByteBuffer.wrap(data);
+        target = ByteBuffer.allocate(Base64.encodedLength(size, true));
+    }
+
+    @Benchmark
+    public String encode() {
+        return Base64.encode(data);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeByteBuffer() {
+        source.clear();
+        target.clear();
+        Base64.encode(source, target);
+        return target;
+    }
+
+    @Benchmark
+    public String encodeLegacy() {
+        return LegacyBase64.encode(data, 0, data.length);
+    }
+
+    @Benchmark
+    public String encodeJdk() {
+        return java.util.Base64.getEncoder().encodeToString(data);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return Base64.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] decodeLegacy() {
+        return LegacyBase64.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] decodeJdk() {
+        return java.util.Base64.getDecoder().decode(encoded);
+    }
+
+    /**
+     * The String encode and decode of the replaced implementation.
+     */
+    static final class LegacyBase64 {
+
+        private static final char[] S_BASE64CHAR = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+        private static final char S_BASE64PAD = '=';
+        private static final byte[] S_DECODETABLE = new byte[128];
+
+        static {
+            for (int i = 0; i < S_DECODETABLE.length; i++) {
+                S_DECODETABLE[i] = Byte.MAX_VALUE;
+            }
+            for (int i = 0; i < S_BASE64CHAR.length; i++) {
+                S_DECODETABLE[S_BASE64CHAR[i]] = (byte) i;
+            }
+        }
+
+        private static int decode0(char[] ibuf, byte[] obuf, int wp) {
+            int outlen = 3;
+            if (ibuf[3] == S_BASE64PAD) {
+                outlen = 2;
+            }
+            if (ibuf[2] == S_BASE64PAD) {
+                outlen = 1;
+            }
+            int b0 = S_DECODETABLE[ibuf[0]];
+            int b1 = S_DECODETABLE[ibuf[1]];
+            int b2 = S_DECODETABLE[ibuf[2]];
+            int b3 = S_DECODETABLE[ibuf[3]];
+            switch (outlen) {
+                case 1:
+                    obuf[wp] = (byte) (b0 << 2 & 0xfc | b1 >> 4 & 0x3);
+                    return 1;
+                case 2:
+                    obuf[wp++] = (byte) (b0 << 2 & 0xfc | b1 >> 4 & 0x3);
+                    obuf[wp] = (byte) (b1 << 4 & 0xf0 | b2 >> 2 & 0xf);
+                    return 2;
+                case 3:
+                    obuf[wp++] = (byte) (b0 << 2 & 0xfc | b1 >> 4 & 0x3);
+                    obuf[wp++] = (byte) (b1 << 4 & 0xf0 | b2 >> 2 & 0xf);
+                    obuf[wp] = (byte) (b2 << 6 & 0xc0 | b3 & 0x3f);
+                    return 3;
+                default:
+                    throw new RuntimeException("Decoding error");
+            }
+        }
+
+        static byte[] decode(String data) {
+            char[] ibuf = new char[4];
+            int ibufcount = 0;
+            byte[] obuf = new byte[data.length() / 4 * 3 + 3];
+            int obufcount = 0;
+            for (int i = 0; i < data.length(); i++) {
+                char ch = data.charAt(i);
+                if (ch == S_BASE64PAD || ch < S_DECODETABLE.length && S_DECODETABLE[ch] != Byte.MAX_VALUE) {
+                    ibuf[ibufcount++] = ch;
+                    if (ibufcount == ibuf.length) {
+                        ibufcount = 0;
+                        obufcount += decode0(ibuf, obuf, obufcount);
+                    }
+                }
+            }
+            if (obufcount == obuf.length) {
+                return obuf;
+            }
+            byte[] ret = new byte[obufcount];
+            System.arraycopy(obuf, 0, ret, 0, obufcount);
+            return ret;
+        }
+
+        static String encode(byte[] data, int off, int len) {
+            if (len <= 0) {
+                return "";
+            }
+            char[] out = new char[len / 3 * 4 + 4];
+            int rindex = off;
+            int windex = 0;
+            int rest = len;
+            while (rest >= 3) {
+                int i = ((data[rindex] & 0xff) << 16) + ((data[rindex + 1] & 0xff) << 8) + (data[rindex + 2] & 0xff);
+                out[windex++] = S_BASE64CHAR[i >> 18];
+                out[windex++] = S_BASE64CHAR[(i >> 12) & 0x3f];
+                out[windex++] = S_BASE64CHAR[(i >> 6) & 0x3f];
+                out[windex++] = S_BASE64CHAR[i & 0x3f];
+                rindex += 3;
+                rest -= 3;
+            }
+            if (rest == 1) {
+                int i = data[rindex] & 0xff;
+                out[windex++] = S_BASE64CHAR[i >> 2];
+                out[windex++] = S_BASE64CHAR[(i << 4) & 0x3f];
+                out[windex++] = S_BASE64PAD;
+                out[windex++] = S_BASE64PAD;
+            } else if (rest == 2) {
+                int i = ((data[rindex] & 0xff) << 8) + (data[rindex + 1] & 0xff);
+                out[windex++] = S_BASE64CHAR[i >> 10];
+                out[windex++] = S_BASE64CHAR[(i >> 4) & 0x3f];
+                out[windex++] = S_BASE64CHAR[(i << 2) & 0x3f];
+                out[windex++] = S_BASE64PAD;
+            }
+            return new String(out, 0, windex);
+        }
+
+    }
+
+}
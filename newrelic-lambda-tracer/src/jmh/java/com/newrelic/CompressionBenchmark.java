@@ -0,0 +1,67 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.util.Base64;
+import com.newrelic.opentracing.util.PayloadCompressor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares a new GZIPOutputStream per payload with the reused per-thread Deflater, at the default level and at
+ * BEST_SPEED.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+
+    @Param({ "1000", "50000", "500000" })
+    public int payloadSize;
+
+    private String payload;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(payloadSize);
+        final StringBuilder builder = new StringBuilder(payloadSize);
+        while (builder.length() < payloadSize) {
+            builder.append("{\"guid\":\"").append(Long.toHexString(random.nextLong())).append("\",\"name\":\"span-")
+                    .append(random.nextInt(100)).append("\",\"duration\":").append(random.nextFloat()).append('}');
+        }
+        builder.setLength(payloadSize);
+        payload = builder.toString();
+    }
+
+    @Benchmark
+    public String newGzipStream() throws IOException {
+        // The implementation ProtocolUtil.compressAndEncode used before the compressor was shared
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(output);
+        gzip.write(payload.getBytes(StandardCharsets.UTF_8));
+        gzip.close();
+        return Base64.encode(output.toByteArray());
+    }
+
+    @Benchmark
+    public String reusedDeflater() {
+        return PayloadCompressor.get().compressAndEncode(payload, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Benchmark
+    public String reusedDeflaterBestSpeed() {
+        return PayloadCompressor.get().compressAndEncode(payload, Deflater.BEST_SPEED);
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.LambdaTracer;
+import com.newrelic.opentracing.logging.Log;
+import com.newrelic.opentracing.logging.Logger;
+import io.opentracing.Scope;
+import io.opentracing.util.GlobalTracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a whole invocation when debug messages are built and thrown away (the old ConsoleLogger behavior)
+ * compared to when the logger reports debug as disabled and nothing is formatted.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DebugLoggingBenchmark {
+
+    static {
+        GlobalTracer.register(LambdaTracer.INSTANCE);
+    }
+
+    @Param({ "true", "false" })
+    public boolean debugEnabled;
+
+    @Param({ "1", "10", "100" })
+    public int createSpans;
+
+    @Setup
+    public void setup() {
+        Log.setInstance(new DiscardingLogger(debugEnabled));
+    }
+
+    @Benchmark
+    public void invocation() {
+        try (Scope scope = GlobalTracer.get().buildSpan("handleRequest")
+                .withTag("aws.lambda.arn", "arn:aws:lambda:us-west-2:121212121212:function:S3ListBuckets")
+                .startActive(true)) {
+            for (int i = 0; i < createSpans; i++) {
+                GlobalTracer.get().buildSpan("child").asChildOf(scope.span()).startActive(true).close();
+            }
+        }
+    }
+
+    /**
+     * Drops everything, so only the cost of building the messages is measured.
+     */
+    private static class DiscardingLogger implements Logger {
+
+        private final boolean debugEnabled;
+
+        DiscardingLogger(boolean debugEnabled) {
+            this.debugEnabled = debugEnabled;
+        }
+
+        @Override
+        public void out(String message) {
+        }
+
+        @Override
+        public void debug(String message) {
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+            return debugEnabled;
+        }
+
+        @Override
+        public List<String> getLogs() {
+            return Collections.emptyList();
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.ContextPropagation;
+import com.newrelic.opentracing.LambdaTracer;
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A handler fanning out 100 tasks to an executor service, each of which reads the active span, with and without
+ * {@link ContextPropagation}. The difference is the cost of carrying the span over to the workers.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FanOutBenchmark {
+
+    @Param({ "100" })
+    public int tasks;
+
+    private ExecutorService executor;
+    private ExecutorService tracingExecutor;
+    private Span root;
+    private Scope scope;
+
+    @Setup
+    public void setup() {
+        executor = Executors.newFixedThreadPool(4);
+        tracingExecutor = ContextPropagation.wrap(executor);
+        root = LambdaTracer.INSTANCE.buildSpan("handleRequest").start();
+        scope = LambdaTracer.INSTANCE.scopeManager().activate(root, false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        scope.close();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int fanOut() {
+        return fanOut(executor);
+    }
+
+    @Benchmark
+    public int fanOutWithContextPropagation() {
+        return fanOut(tracingExecutor);
+    }
+
+    private int fanOut(ExecutorService executorService) {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks];
+        for (int i = 0; i < tasks; i++) {
+            futures[i] = CompletableFuture.supplyAsync(() -> LambdaTracer.INSTANCE.activeSpan(), executorService);
+        }
+        CompletableFuture.allOf(futures).join();
+        return futures.length;
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.LambdaSpan;
+import com.newrelic.opentracing.LambdaTracer;
+import com.newrelic.opentracing.dt.DistributedTracing;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapInjectAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Injecting the payload of one span into many outbound messages, as a batch fan-out does, through the tracer's
+ * template and by serializing a new payload each time.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InjectBenchmark {
+
+    private final Map<String, String> headers = new HashMap<>();
+    private final TextMapInjectAdapter carrier = new TextMapInjectAdapter(headers);
+    private LambdaSpan span;
+
+    @Setup
+    public void setup() {
+        span = (LambdaSpan) LambdaTracer.INSTANCE.buildSpan("fan-out").start();
+    }
+
+    @Benchmark
+    public Map<String, String> inject() {
+        LambdaTracer.INSTANCE.inject(span.context(), Format.Builtin.HTTP_HEADERS, carrier);
+        return headers;
+    }
+
+    @Benchmark
+    public String serializeEachTime() {
+        return DistributedTracing.INSTANCE.createDistributedTracePayload(span).httpSafe();
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.logging.ChannelLogger;
+import com.newrelic.opentracing.logging.ConsoleLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a payload line through System.out.println compared to writing its bytes through a FileChannel.
+ * Both write to /dev/null, so the difference is the cost in the JVM, not the speed of the log pipe.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoggerBenchmark {
+
+    @Param({ "1000", "100000", "240000" })
+    public int lineLength;
+
+    private byte[] line;
+    private PrintStream originalOut;
+    private FileChannel channel;
+    private ConsoleLogger consoleLogger;
+    private ChannelLogger channelLogger;
+
+    @Setup
+    public void setup() throws IOException {
+        line = new byte[lineLength];
+        Arrays.fill(line, (byte) 'A');
+
+        originalOut = System.out;
+        System.setOut(new PrintStream(new FileOutputStream("/dev/null"), true));
+        consoleLogger = new ConsoleLogger();
+
+        channel = FileChannel.open(Paths.get("/dev/null"), StandardOpenOption.WRITE);
+        channelLogger = new ChannelLogger(channel, false);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        channel.close();
+    }
+
+    @Benchmark
+    public void consoleLogger() {
+        // What DataCollection did before payloads were written as bytes
+        consoleLogger.out(new String(line, StandardCharsets.US_ASCII));
+    }
+
+    @Benchmark
+    public void channelLogger() {
+        channelLogger.out(line, 0, line.length);
+    }
+
+}
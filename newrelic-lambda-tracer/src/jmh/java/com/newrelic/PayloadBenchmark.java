@@ -0,0 +1,82 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.LambdaSpan;
+import com.newrelic.opentracing.events.ErrorEvent;
+import com.newrelic.opentracing.events.TransactionEvent;
+import com.newrelic.opentracing.traces.ErrorTrace;
+import com.newrelic.opentracing.util.PayloadCodec;
+import com.newrelic.opentracing.util.PayloadWriter;
+import com.newrelic.opentracing.util.ProtocolUtil;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building the payload line through nested maps and Strings with streaming it through gzip and base64.
+ * Run with the gc profiler (enabled in build.gradle) to get bytes/op from gc.alloc.rate.norm.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PayloadBenchmark {
+
+    private static final String ARN = "arn:aws:lambda:us-west-2:121212121212:function:S3ListBuckets";
+
+    @Param({ "10", "100", "1000" })
+    public int spanCount;
+
+    private List<LambdaSpan> spans;
+    private TransactionEvent txnEvent;
+    private final List<ErrorEvent> errorEvents = Collections.emptyList();
+    private final List<ErrorTrace> errorTraces = Collections.emptyList();
+
+    @Setup
+    public void setup() {
+        spans = new ArrayList<>();
+        LambdaSpan parent = null;
+        for (int i = 0; i < spanCount; i++) {
+            final Map<String, Object> tags = new HashMap<>();
+            tags.put("aws.requestId", "e778ff53-e9aa-419a-9558-1EXAMPLEf81b");
+            tags.put("aws.lambda.arn", ARN);
+            tags.put("http.url", "https://example.com/items/" + i);
+            tags.put("count", i);
+            final LambdaSpan span = new LambdaSpan("span-" + i, System.currentTimeMillis(), System.nanoTime(), tags, parent,
+                    Long.toHexString(i), "86e9852546b259e4");
+            parent = span;
+            spans.add(span);
+        }
+        txnEvent = new TransactionEvent(spans.get(0));
+    }
+
+    @Benchmark
+    public String mapPayload() {
+        final Map<String, Object> metadata = ProtocolUtil.getMetadata(ARN, "AWS_Lambda_java8");
+        final Map<String, Object> data = ProtocolUtil.getData(spans, txnEvent, errorEvents, errorTraces);
+        final List<Object> payload = Arrays.asList(2, "NR_LAMBDA_MONITORING", metadata, ProtocolUtil.compressAndEncode(JSONObject.toJSONString(data)));
+        return JSONArray.toJSONString(payload);
+    }
+
+    @Benchmark
+    public String streamingPayload() throws IOException {
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        PayloadWriter.writePayload(payload, PayloadCodec.defaultCodec(), ARN, "AWS_Lambda_java8", spans, txnEvent, errorEvents, errorTraces);
+        return payload.toString("US-ASCII");
+    }
+
+}
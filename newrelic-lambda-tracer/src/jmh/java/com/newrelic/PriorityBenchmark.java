@@ -0,0 +1,35 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.util.DistributedTraceUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.DecimalFormat;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generating a sampling priority with integer rounding against the DecimalFormat round trip it replaced.
+ * Run with the gc profiler (enabled in build.gradle) and compare gc.alloc.rate.norm.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PriorityBenchmark {
+
+    private final DecimalFormat format = new DecimalFormat("#.######");
+
+    @Benchmark
+    public float decimalFormat() {
+        return Float.parseFloat(format.format(ThreadLocalRandom.current().nextFloat()).replace(',', '.'));
+    }
+
+    @Benchmark
+    public float integerRounding() {
+        return DistributedTraceUtil.nextTruncatedFloat();
+    }
+
+}
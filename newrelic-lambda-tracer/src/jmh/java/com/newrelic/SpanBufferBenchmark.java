@@ -0,0 +1,70 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.util.ChunkedBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One invocation's worth of collecting finished events and iterating them twice, once to record errors and once to
+ * serialize: a new LinkedList per invocation against a ChunkedBuffer that is cleared and reused.
+ * Run with the gc profiler (enabled in build.gradle) and compare gc.alloc.rate.norm.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpanBufferBenchmark {
+
+    @Param({ "10", "1000", "50000" })
+    public int spans;
+
+    private Object[] events;
+    private final ChunkedBuffer<Object> buffer = new ChunkedBuffer<>();
+
+    @Setup
+    public void setup() {
+        events = new Object[spans];
+        for (int i = 0; i < spans; i++) {
+            events[i] = new int[] { i };
+        }
+    }
+
+    @Benchmark
+    public long linkedList() {
+        final LinkedList<Object> list = new LinkedList<>();
+        for (Object event : events) {
+            list.addFirst(event);
+        }
+        return invocation(list);
+    }
+
+    @Benchmark
+    public long chunkedBuffer() {
+        for (Object event : events) {
+            buffer.add(event);
+        }
+        final long result = invocation(buffer);
+        buffer.clear();
+        return result;
+    }
+
+    private static long invocation(List<Object> list) {
+        long sum = 0;
+        for (Object event : list) {
+            sum += ((int[]) event)[0];
+        }
+        for (Object event : list) {
+            sum ^= event.hashCode();
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.LambdaTracer;
+import io.opentracing.Span;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of starting child spans under a root span. The root is never finished, so nothing is written.
+ * Run with the gc profiler (enabled in build.gradle) and compare gc.alloc.rate.norm.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpanCreationBenchmark {
+
+    private Span root;
+
+    @Setup
+    public void setup() {
+        root = LambdaTracer.INSTANCE.buildSpan("root").start();
+    }
+
+    @Benchmark
+    public Span startChildSpan() {
+        return LambdaTracer.INSTANCE.buildSpan("child").asChildOf(root).start();
+    }
+
+}
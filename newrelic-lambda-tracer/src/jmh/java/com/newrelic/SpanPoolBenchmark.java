@@ -0,0 +1,72 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.LambdaTracer;
+import com.newrelic.opentracing.logging.ChannelLogger;
+import com.newrelic.opentracing.logging.Log;
+import com.newrelic.opentracing.logging.Logger;
+import io.opentracing.Span;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A warm invocation with a root span and a few children, written to /dev/null, with and without span pooling.
+ * Run with the gc profiler (enabled in build.gradle) and compare gc.alloc.rate.norm.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpanPoolBenchmark {
+
+    @Param({ "0", "64" })
+    public int poolSize;
+
+    @Param({ "8" })
+    public int childSpans;
+
+    private Logger originalLogger;
+    private FileChannel channel;
+
+    @Setup
+    public void setup() throws IOException {
+        originalLogger = Log.getInstance();
+        channel = FileChannel.open(Paths.get("/dev/null"), StandardOpenOption.WRITE);
+        Log.setInstance(new ChannelLogger(channel, false));
+        LambdaTracer.INSTANCE.setSpanPoolSize(poolSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        LambdaTracer.INSTANCE.setSpanPoolSize(0);
+        Log.setInstance(originalLogger);
+        channel.close();
+    }
+
+    @Benchmark
+    public Span invocation() {
+        final LambdaTracer tracer = LambdaTracer.INSTANCE;
+        final Span root = tracer.buildSpan("handleRequest")
+                .withTag("aws.lambda.arn", "arn:aws:lambda:us-west-2:123456789012:function:my-function")
+                .start();
+        for (int i = 0; i < childSpans; i++) {
+            tracer.buildSpan("child").asChildOf(root).start()
+                    .setTag("span.kind", "client")
+                    .setTag("http.status_code", 200)
+                    .finish();
+        }
+        root.finish();
+        return root;
+    }
+
+}
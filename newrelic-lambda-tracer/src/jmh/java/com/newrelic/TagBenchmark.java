@@ -0,0 +1,68 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.LambdaSpan;
+import com.newrelic.opentracing.LambdaTracer;
+import com.newrelic.opentracing.util.JsonWriter;
+import com.newrelic.opentracing.util.SpanCategoryDetection;
+import io.opentracing.Span;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation of tagging a span and reading the tags back for category detection and serialization.
+ * Run with the gc profiler (enabled in build.gradle) and compare gc.alloc.rate.norm.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TagBenchmark {
+
+    private final JsonWriter writer = new JsonWriter(new DiscardingWriter());
+
+    @Benchmark
+    public Span tagSpan() {
+        return LambdaTracer.INSTANCE.buildSpan("handleRequest")
+                .withTag("aws.requestId", "e778ff53-e9aa-419a-9558-1EXAMPLEf81b")
+                .withTag("retries", 3)
+                .withTag("aws.lambda.coldStart", false)
+                .start()
+                .setTag("span.kind", "client")
+                .setTag("http.status_code", 200)
+                .setTag("bytes", 4096L)
+                .setTag("ratio", 0.25d)
+                .setTag("error", false);
+    }
+
+    @Benchmark
+    public Object tagAndSerializeSpan() throws IOException {
+        final LambdaSpan span = (LambdaSpan) tagSpan();
+        final Object category = SpanCategoryDetection.detectSpanCategory(span);
+        span.writeJson(writer);
+        writer.flush();
+        return category;
+    }
+
+    private static class DiscardingWriter extends Writer {
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.newrelic;
+
+import com.newrelic.opentracing.LambdaSpan;
+import com.newrelic.opentracing.LambdaTracer;
+import io.opentracing.SpanContext;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapExtractAdapter;
+import io.opentracing.propagation.TextMapInjectAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracting a caller's W3C Trace Context headers, with and without our tracestate entry, and injecting all headers.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TraceContextBenchmark {
+
+    private final Map<String, String> traceParentOnly = new HashMap<>();
+    private final Map<String, String> traceContext = new HashMap<>();
+    private final Map<String, String> outbound = new HashMap<>();
+    private final TextMapInjectAdapter outboundCarrier = new TextMapInjectAdapter(outbound);
+    private LambdaSpan span;
+
+    @Setup
+    public void setup() {
+        traceParentOnly.put("traceparent", "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01");
+        traceContext.putAll(traceParentOnly);
+        traceContext.put("tracestate", "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-1.23456-"
+                + System.currentTimeMillis() + ",congo=t61rcWkgMzE");
+        span = (LambdaSpan) LambdaTracer.INSTANCE.buildSpan("handler").start();
+    }
+
+    @Benchmark
+    public SpanContext extractTraceParent() {
+        return LambdaTracer.INSTANCE.extract(Format.Builtin.HTTP_HEADERS, new TextMapExtractAdapter(traceParentOnly));
+    }
+
+    @Benchmark
+    public SpanContext extractTraceState() {
+        return LambdaTracer.INSTANCE.extract(Format.Builtin.HTTP_HEADERS, new TextMapExtractAdapter(traceContext));
+    }
+
+    @Benchmark
+    public Map<String, String> inject() {
+        LambdaTracer.INSTANCE.inject(span.context(), Format.Builtin.HTTP_HEADERS, outboundCarrier);
+        return outbound;
+    }
+
+}
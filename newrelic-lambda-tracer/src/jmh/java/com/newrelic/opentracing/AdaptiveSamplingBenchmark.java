@@ -0,0 +1,37 @@
+package com.newrelic.opentracing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The sampling decision made for every root span, from one thread and from several threads sharing the sampler as
+ * they do in a container serving concurrent requests. In the same package as AdaptiveSampling, which is internal.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AdaptiveSamplingBenchmark {
+
+    private final AdaptiveSampling adaptiveSampling = new AdaptiveSampling();
+
+    @Benchmark
+    @Threads(1)
+    public boolean decision() {
+        adaptiveSampling.requestStarted();
+        return adaptiveSampling.computeSampled();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean concurrentDecisions() {
+        adaptiveSampling.requestStarted();
+        return adaptiveSampling.computeSampled();
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.newrelic.opentracing.dt;
+
+import com.newrelic.opentracing.util.Base64;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing an inbound base64 payload with the single-pass parser and with json-simple, as before. Run with the gc
+ * profiler (enabled in build.gradle) to get bytes/op. In the same package as the parsers, which are internal.
+ */
+@State(value = org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PayloadParserBenchmark {
+
+    private final String payload = Base64.encode(("{\"v\":[0,1],\"d\":{\"ty\":\"App\",\"ac\":\"account\",\"tk\":\"trustKey\",\"ap\":\"application\","
+            + "\"id\":\"5f474d64b9cc9b2a\",\"tr\":\"3221bf09aa0bcf0d\",\"pr\":0.1234,\"sa\":false,\"ti\":1482959525577,\"tx\":\"27856f70d3d314b7\"}}")
+            .getBytes(Base64.UTF_8));
+
+    @Benchmark
+    public DistributedTracePayloadImpl payloadParser() {
+        return PayloadParser.parse(payload);
+    }
+
+    @Benchmark
+    public DistributedTracePayloadImpl jsonSimple() throws ParseException {
+        return parseWithJsonSimple(payload);
+    }
+
+    /**
+     * What parsing did before, without the checks that do not allocate.
+     */
+    private static DistributedTracePayloadImpl parseWithJsonSimple(String payload) throws ParseException {
+        final JSONObject object = (JSONObject) new JSONParser().parse(new String(Base64.decode(payload.trim()), Base64.UTF_8));
+        if ((Long) ((JSONArray) object.get("v")).get(0) > DistributedTracing.INSTANCE.getMajorSupportedCatVersion()) {
+            return null;
+        }
+        final JSONObject data = (JSONObject) object.get("d");
+        final Number priority = (Number) data.get("pr");
+        return new DistributedTracePayloadImpl((Long) data.get("ti"), (String) data.get("ty"), (String) data.get("ac"), (String) data.get("tk"),
+                (String) data.get("ap"), (String) data.get("id"), (String) data.get("tr"), (String) data.get("tx"),
+                priority == null ? null : priority.floatValue(), (Boolean) data.get("sa"));
+    }
+
+}
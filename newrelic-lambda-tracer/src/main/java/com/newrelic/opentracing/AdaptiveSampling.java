@@ -1,29 +1,104 @@
 package com.newrelic.opentracing;
 
-import com.newrelic.opentracing.util.DistributedTraceUtil;
-
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Samples about {@link #getTarget()} root spans per period, all of the first ones in the first period and then
+ * spread out based on the number of root spans in the previous period. The target defaults to
+ * NEW_RELIC_SAMPLING_TARGET, or 10, per NEW_RELIC_SAMPLING_TARGET_PERIOD_SECONDS, or 60 seconds. The counters of
+ * each period live in an immutable {@link Period} that is swapped by CAS when the period is over, so exactly one
+ * thread starts the next period and concurrent decisions never reset each other's counts. Decisions only increment
+ * striped counters.
+ */
+public class AdaptiveSampling implements Sampler {
+
+    static final String NEW_RELIC_SAMPLING_TARGET = "NEW_RELIC_SAMPLING_TARGET";
+    static final String NEW_RELIC_SAMPLING_TARGET_PERIOD_SECONDS = "NEW_RELIC_SAMPLING_TARGET_PERIOD_SECONDS";
+    static final int DEFAULT_TARGET = 10;
+    static final int DEFAULT_PERIOD_SECONDS = 60;
+
+    private final int target;
+    private final long samplingTargetPeriodInMilliSeconds;
 
-class AdaptiveSampling {
+    // Once the target is reached, the threshold for the number of sampled decisions, indexed by sampled - target.
+    // The threshold is target^(target / sampled) - sqrt(target), which is 0 or less from 2 * target sampled on.
+    private final double[] thresholds;
 
-    private final int target = 10;
-    private final int samplingTargetPeriodInSeconds = 60;
-    private final long samplingTargetPeriodInMilliSeconds = TimeUnit.SECONDS.toMillis(samplingTargetPeriodInSeconds);
+    private final AtomicReference<Period> period = new AtomicReference<>(new Period(0, true, 0, new LongAdder(), new LongAdder()));
 
-    private final AtomicLong sampledTrueCount = new AtomicLong(0);
-    private final AtomicLong decidedCount = new AtomicLong(0);
-    private final AtomicLong decidedCountLast = new AtomicLong(0);
+    /**
+     * The counters of one period. Only the adders change.
+     */
+    private static final class Period {
+
+        final long start; // 0 until the first request starts
+        final boolean first;
+        final long decidedLast;
+        final LongAdder decided;
+        final LongAdder sampledTrue;
+
+        Period(long start, boolean first, long decidedLast, LongAdder decided, LongAdder sampledTrue) {
+            this.start = start;
+            this.first = first;
+            this.decidedLast = decidedLast;
+            this.decided = decided;
+            this.sampledTrue = sampledTrue;
+        }
 
-    private volatile long lastStart = 0;
-    private volatile boolean firstPeriod = true;
+    }
+
+    AdaptiveSampling() {
+        this(parsePositive(System.getenv(NEW_RELIC_SAMPLING_TARGET), DEFAULT_TARGET),
+                parsePositive(System.getenv(NEW_RELIC_SAMPLING_TARGET_PERIOD_SECONDS), DEFAULT_PERIOD_SECONDS), TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param target root spans to sample per period
+     * @param period length of a period
+     */
+    public AdaptiveSampling(int target, long period, TimeUnit unit) {
+        if (target < 1 || unit.toMillis(period) < 1) {
+            throw new IllegalArgumentException("Sampling target and period must be positive.");
+        }
+        this.target = target;
+        this.samplingTargetPeriodInMilliSeconds = unit.toMillis(period);
+        this.thresholds = computeThresholds(target);
+    }
+
+    static int parsePositive(String value, int defaultValue) {
+        try {
+            return value == null ? defaultValue : Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public boolean computeSampled(LambdaSpan rootSpan) {
+        requestStarted();
+        return computeSampled();
+    }
+
+    static double[] computeThresholds(int target) {
+        final double[] thresholds = new double[target];
+        for (int i = 0; i < target; i++) {
+            thresholds[i] = Math.pow(target, (target * 1.0f / (target + i))) - Math.sqrt(target);
+        }
+        return thresholds;
+    }
 
     void reset() {
-        lastStart = System.currentTimeMillis();
-        firstPeriod = false;
-        sampledTrueCount.set(0);
-        decidedCountLast.set(decidedCount.get());
-        decidedCount.set(0);
+        final Period current = period.get();
+        rollOver(current, System.currentTimeMillis());
+    }
+
+    private void rollOver(Period current, long now) {
+        final Period next = new Period(now, false, current.decided.sum(), new LongAdder(), new LongAdder());
+        // If another thread got there first, its period is the one to use
+        period.compareAndSet(current, next);
     }
 
     /**
@@ -34,34 +109,41 @@ class AdaptiveSampling {
      * @return true if we should mark this request as sampled. False otherwise.
      */
     boolean computeSampled() {
+        final Period current = period.get();
+        final long sampledTrueCount = current.sampledTrue.sum();
         boolean sampled;
 
-        if (firstPeriod) {
-            sampled = sampledTrueCount.get() < target;
-        } else if (sampledTrueCount.get() < target) {
-            sampled = DistributedTraceUtil.random.nextLong(decidedCountLast.get()) < target;
+        if (current.first) {
+            sampled = sampledTrueCount < target;
+        } else if (sampledTrueCount < target) {
+            // nextLong(n) < target always holds for n <= target, and nextLong(0) would throw
+            sampled = current.decidedLast <= target || ThreadLocalRandom.current().nextLong(current.decidedLast) < target;
         } else {
-            final double expTarget = Math.pow(target, (target * 1.0f / sampledTrueCount.get())) - Math.sqrt(target);
-            sampled = DistributedTraceUtil.random.nextLong(decidedCount.get()) < expTarget;
+            final long index = sampledTrueCount - target;
+            sampled = index < thresholds.length
+                    && ThreadLocalRandom.current().nextLong(Math.max(1, current.decided.sum())) < thresholds[(int) index];
         }
 
-        decidedCount.incrementAndGet();
+        current.decided.increment();
 
         if (sampled) {
-            sampledTrueCount.incrementAndGet();
+            current.sampledTrue.increment();
         }
 
         return sampled;
     }
 
     void requestStarted() {
-        if (lastStart <= 0) {
-            lastStart = System.currentTimeMillis();
-        }
+        requestStarted(System.currentTimeMillis());
+    }
 
-        final long now = System.currentTimeMillis();
-        if (now >= lastStart + samplingTargetPeriodInMilliSeconds) {
-            reset();
+    void requestStarted(long now) {
+        final Period current = period.get();
+        if (current.start <= 0) {
+            // The first period starts with the first request, keeping any decisions made before it
+            period.compareAndSet(current, new Period(now, true, 0, current.decided, current.sampledTrue));
+        } else if (now >= current.start + samplingTargetPeriodInMilliSeconds) {
+            rollOver(current, now);
         }
     }
 
@@ -69,4 +151,8 @@ class AdaptiveSampling {
         return target;
     }
 
+    long getSamplingTargetPeriodInMilliSeconds() {
+        return samplingTargetPeriodInMilliSeconds;
+    }
+
 }
@@ -0,0 +1,128 @@
+package com.newrelic.opentracing;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Carries the active span over to the threads that run a handler's tasks, so spans started there are children of it.
+ * The span active when a task is wrapped is activated around the task, then the worker's previous scope is restored.
+ * Nothing is copied per task and the scopes are reused, and tasks wrapped when no span is active are left as they are.
+ *
+ * <pre>
+ * ExecutorService executor = ContextPropagation.wrap(Executors.newFixedThreadPool(8));
+ * CompletableFuture&lt;String&gt; result = ContextPropagation.supplyAsync(() -&gt; callDownstream());
+ * list.parallelStream().map(ContextPropagation.wrapFunction(item -&gt; process(item)))...
+ * </pre>
+ */
+public final class ContextPropagation {
+
+    private ContextPropagation() {
+    }
+
+    /**
+     * @return an executor service that runs every task with the span that was active when it was submitted. Also
+     * works for a ForkJoinPool such as {@link ForkJoinPool#commonPool()}, for tasks submitted through the wrapper.
+     */
+    public static ExecutorService wrap(ExecutorService executorService) {
+        return executorService instanceof TracingExecutorService ? executorService : new TracingExecutorService(executorService);
+    }
+
+    public static Executor wrap(Executor executor) {
+        if (executor instanceof ExecutorService) {
+            return wrap((ExecutorService) executor);
+        }
+        return command -> executor.execute(wrap(command));
+    }
+
+    public static Runnable wrap(Runnable task) {
+        final Span span = LambdaTracer.INSTANCE.activeSpan();
+        return span == null ? task : () -> {
+            final Scope scope = scopeManager().activateForTask(span);
+            try {
+                task.run();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        final Span span = LambdaTracer.INSTANCE.activeSpan();
+        return span == null ? task : () -> {
+            final Scope scope = scopeManager().activateForTask(span);
+            try {
+                return task.call();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    public static <T> Supplier<T> wrapSupplier(Supplier<T> task) {
+        final Span span = LambdaTracer.INSTANCE.activeSpan();
+        return span == null ? task : () -> {
+            final Scope scope = scopeManager().activateForTask(span);
+            try {
+                return task.get();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /**
+     * Wrap a function run on other threads, for example by a parallel stream.
+     */
+    public static <T, R> Function<T, R> wrapFunction(Function<T, R> task) {
+        final Span span = LambdaTracer.INSTANCE.activeSpan();
+        return span == null ? task : t -> {
+            final Scope scope = scopeManager().activateForTask(span);
+            try {
+                return task.apply(t);
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /**
+     * {@link CompletableFuture#supplyAsync(Supplier)} with the active span.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(wrapSupplier(supplier));
+    }
+
+    /**
+     * {@link CompletableFuture#supplyAsync(Supplier, Executor)} with the active span.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(wrapSupplier(supplier), executor);
+    }
+
+    /**
+     * {@link CompletableFuture#runAsync(Runnable)} with the active span.
+     */
+    public static CompletableFuture<Void> runAsync(Runnable runnable) {
+        return CompletableFuture.runAsync(wrap(runnable));
+    }
+
+    /**
+     * {@link CompletableFuture#runAsync(Runnable, Executor)} with the active span.
+     */
+    public static CompletableFuture<Void> runAsync(Runnable runnable, Executor executor) {
+        return CompletableFuture.runAsync(wrap(runnable), executor);
+    }
+
+    private static LambdaScopeManager scopeManager() {
+        return (LambdaScopeManager) LambdaTracer.INSTANCE.scopeManager();
+    }
+
+}
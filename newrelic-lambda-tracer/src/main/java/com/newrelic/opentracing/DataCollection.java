@@ -4,50 +4,115 @@ import com.newrelic.opentracing.events.ErrorEvent;
 import com.newrelic.opentracing.events.TransactionEvent;
 import com.newrelic.opentracing.logging.Log;
 import com.newrelic.opentracing.traces.ErrorTrace;
-import com.newrelic.opentracing.util.ProtocolUtil;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
+import com.newrelic.opentracing.util.ChunkedBuffer;
+import com.newrelic.opentracing.util.CodecSelector;
+import com.newrelic.opentracing.util.PayloadCodec;
+import com.newrelic.opentracing.util.PayloadSink;
+import com.newrelic.opentracing.util.PayloadWriter;
 
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
 
 class DataCollection {
 
-    private final AtomicReference<LinkedList<LambdaSpan>> spanReservoir = new AtomicReference<>(new LinkedList<>());
+    static final String NEW_RELIC_MAX_PAYLOAD_BYTES = "NEW_RELIC_MAX_PAYLOAD_BYTES";
+    // CloudWatch Logs accepts events up to 256 KB, including 26 bytes of overhead and the Lambda log prefix
+    static final long DEFAULT_MAX_PAYLOAD_BYTES = 240_000;
+    private static final long MIN_MAX_PAYLOAD_BYTES = 4096;
+
+    private static final PayloadSink LOG_SINK = (bytes, offset, length) -> Log.getInstance().out(bytes, offset, length);
+
+    private final SpanReservoir spanReservoir;
+    // Errored spans the reservoir dropped, their errors are still reported
+    private final ChunkedBuffer<LambdaSpan> droppedWithErrors = new ChunkedBuffer<>();
     private final Errors errors = new Errors();
     private final String executionEnv = System.getenv("AWS_EXECUTION_ENV");
+    private final long maxPayloadBytes = parseMaxPayloadBytes(System.getenv(NEW_RELIC_MAX_PAYLOAD_BYTES));
+    private final TailSampling tailSampling;
+
+    DataCollection() {
+        this(TailSampling.fromEnvironment());
+    }
+
+    DataCollection(TailSampling tailSampling) {
+        this(tailSampling, parseReservoirSize(System.getenv(SpanReservoir.NEW_RELIC_SPAN_RESERVOIR_SIZE)));
+    }
+
+    DataCollection(TailSampling tailSampling, int reservoirSize) {
+        this.tailSampling = tailSampling;
+        this.spanReservoir = new SpanReservoir(reservoirSize);
+    }
 
     /**
      * Push finished spans into the reservoir. When the root span finishes, log them only if they're sampled.
+     *
+     * Called by the thread that owns this data collection, and by whichever thread finishes the root span of one of its
+     * invocations. Locking the data collection orders the owner's earlier spans before that root span, and keeps a
+     * root span that finishes on another thread from running alongside the owner. The lock is uncontended otherwise.
      */
-    void spanFinished(LambdaSpan span) {
-        spanReservoir.get().addFirst(span);
+    synchronized void spanFinished(LambdaSpan span) {
+        collect(span);
 
         if (span.isRootSpan()) {
+            // Spans that finished on other threads are only handed over now, see InvocationContext
+            span.getLambdaSpanContext().getInvocation().drainFinishedElsewhere(this::collect);
+
+            // Decide first, tail sampling may raise the priority errors and events are recorded with
+            final boolean keepSpans = tailSampling.keepSpans(span);
+
+            final List<LambdaSpan> finished = spanReservoir.getSpans();
             // Record errors after root span has finished. By now, txn name has been set
-            for (LambdaSpan lambdaSpan : spanReservoir.get()) {
+            for (LambdaSpan lambdaSpan : finished) {
+                errors.recordErrors(lambdaSpan);
+            }
+            for (LambdaSpan lambdaSpan : droppedWithErrors) {
                 errors.recordErrors(lambdaSpan);
             }
             Object arnTag = span.getTag("aws.lambda.arn");
             final String arn = arnTag instanceof String ? (String) arnTag : "";
 
-            final List<LambdaSpan> spans;
-            // Do not collect Spans if sampled=false, clear reservoir and set spans to empty list
-            if (!span.getPrioritySamplingState().isSampled()) {
-                spans = new LinkedList<>();
-            } else {
-                spans = spanReservoir.get();
-            }
-            spanReservoir.set(new LinkedList<>());
+            // Do not collect Spans if sampled=false, set spans to empty list
+            final List<LambdaSpan> spans = keepSpans ? finished : Collections.<LambdaSpan>emptyList();
 
             final TransactionEvent txnEvent = new TransactionEvent(span);
-            final List<ErrorEvent> errorEvents = errors.getAndClearEvents();
-            final List<ErrorTrace> errorTraces = errors.getAndClearTraces();
+            final List<ErrorEvent> errorEvents = errors.getEvents();
+            final List<ErrorTrace> errorTraces = errors.getTraces();
             writeData(arn, executionEnv, spans, txnEvent, errorEvents, errorTraces);
+
+            if (SpanPool.isEnabled()) {
+                // Everything the payload needs has been written, the invocation's spans can be started again
+                for (LambdaSpan lambdaSpan : finished) {
+                    SpanPool.release(lambdaSpan);
+                }
+            }
+            spanReservoir.clear();
+            droppedWithErrors.clear();
+            errors.clear();
+        }
+    }
+
+    private void collect(LambdaSpan span) {
+        if (span.isLightweight() && !SpanReservoir.isErrored(span)) {
+            // Its invocation is not sampled, so only its errors are reported
+            return;
         }
+        final LambdaSpan dropped = spanReservoir.add(span);
+        if (dropped != null && Errors.hasError(dropped)) {
+            droppedWithErrors.add(dropped);
+        }
+    }
+
+    /**
+     * @return true if whether to keep spans is only known once the root span finishes, see {@link TailSampling}
+     */
+    boolean decidesSamplingAtFinish() {
+        return tailSampling.isEnabled();
+    }
+
+    SpanReservoir getSpanReservoir() {
+        return spanReservoir;
     }
 
     /**
@@ -55,14 +120,41 @@ class DataCollection {
      */
     private void writeData(String arn, String executionEnv, List<LambdaSpan> spans, TransactionEvent txnEvent, List<ErrorEvent> errorEvents,
             List<ErrorTrace> errorTraces) {
-        final Map<String, Object> metadata = ProtocolUtil.getMetadata(arn, executionEnv);
-        final Map<String, Object> data = ProtocolUtil.getData(spans, txnEvent, errorEvents, errorTraces);
+        final CodecSelector codecSelector = CodecSelector.getInstance();
+        final int eventCount = spans.size() + errorEvents.size() + 1;
+        final PayloadCodec codec = codecSelector.select(eventCount);
+        try {
+            final long start = System.nanoTime();
+            final long uncompressedBytes = PayloadWriter.writePayloads(LOG_SINK, codec, maxPayloadBytes, arn, executionEnv, spans,
+                    spanReservoir.getSeen(), spanReservoir.getCapacity(), txnEvent, errorEvents, errorTraces);
+            codecSelector.record(codec, eventCount, uncompressedBytes, System.nanoTime() - start);
+
+            // Only serialize the uncompressed payload when the logger is going to write it
+            if (Log.getInstance().isDebugEnabled()) {
+                final StringWriter debugPayload = new StringWriter();
+                PayloadWriter.writeDebugPayload(debugPayload, codec, arn, executionEnv, spans, spanReservoir.getSeen(), spanReservoir.getCapacity(),
+                        txnEvent, errorEvents, errorTraces);
+                Log.getInstance().debug(debugPayload.toString());
+            }
+        } catch (IOException e) {
+            Log.getInstance().debug("Unable to write payload: {0}", e.getMessage());
+        }
+    }
 
-        final List<Object> payload = Arrays.asList(2, "NR_LAMBDA_MONITORING", metadata, ProtocolUtil.compressAndEncode(JSONObject.toJSONString(data)));
-        Log.getInstance().out(JSONArray.toJSONString(payload));
+    static int parseReservoirSize(String reservoirSize) {
+        try {
+            return reservoirSize == null ? SpanReservoir.DEFAULT_CAPACITY : Math.max(1, Integer.parseInt(reservoirSize.trim()));
+        } catch (NumberFormatException e) {
+            return SpanReservoir.DEFAULT_CAPACITY;
+        }
+    }
 
-        final List<Object> debugPayload = Arrays.asList(2, "DEBUG", metadata, data);
-        Log.getInstance().debug(JSONArray.toJSONString(debugPayload));
+    static long parseMaxPayloadBytes(String maxPayloadBytes) {
+        try {
+            return maxPayloadBytes == null ? DEFAULT_MAX_PAYLOAD_BYTES : Math.max(MIN_MAX_PAYLOAD_BYTES, Long.parseLong(maxPayloadBytes.trim()));
+        } catch (NumberFormatException e) {
+            return DEFAULT_MAX_PAYLOAD_BYTES;
+        }
     }
 
 }
@@ -8,22 +8,30 @@ import com.newrelic.opentracing.state.PrioritySamplingState;
 import com.newrelic.opentracing.state.TransactionState;
 import com.newrelic.opentracing.traces.ErrorTrace;
 import com.newrelic.opentracing.traces.ErrorTraceBuilder;
+import com.newrelic.opentracing.util.ChunkedBuffer;
 import com.newrelic.opentracing.util.Stacktraces;
 
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
 
 class Errors {
 
-    private final AtomicReference<List<ErrorEvent>> errorEvents = new AtomicReference<>(new LinkedList<>());
-    private final AtomicReference<List<ErrorTrace>> errorTraces = new AtomicReference<>(new LinkedList<>());
+    // Reused across invocations, see clear()
+    private final ChunkedBuffer<ErrorEvent> errorEvents = new ChunkedBuffer<>();
+    private final ChunkedBuffer<ErrorTrace> errorTraces = new ChunkedBuffer<>();
 
-    void recordErrors(LambdaSpan span) {
+    /**
+     * @return true if the span logged an error event
+     */
+    static boolean hasError(LambdaSpan span) {
         final LogEntry event = span.getLog("event");
-        if (event == null || !"error".equals(event.getValue())) {
+        return event != null && "error".equals(event.getValue());
+    }
+
+    void recordErrors(LambdaSpan span) {
+        if (!hasError(span)) {
             return;
         }
 
@@ -58,7 +66,7 @@ class Errors {
                 .setTransactionName(txnState.getTransactionName())
                 .setTransactionGuid(txnState.getTransactionId())
                 .createError();
-        errorEvents.get().add(error);
+        errorEvents.add(error);
 
         // Need a stack trace to record a traced error
         LogEntry errorStack = span.getLog("stack");
@@ -77,7 +85,7 @@ class Errors {
                 .setTimestamp(errorObject.getTimestampInMillis())
                 .setStackTrace(stackTrace)
                 .createErrorTrace();
-        errorTraces.get().add(errorTrace);
+        errorTraces.add(errorTrace);
     }
 
     private Map<String, Object> additionalAttributes(LambdaSpan span) {
@@ -117,12 +125,23 @@ class Errors {
         return null;
     }
 
-    List<ErrorTrace> getAndClearTraces() {
-        return errorTraces.getAndSet(new LinkedList<>());
+    /**
+     * @return the traces recorded since the last {@link #clear()}, valid until then
+     */
+    List<ErrorTrace> getTraces() {
+        return errorTraces;
+    }
+
+    /**
+     * @return the events recorded since the last {@link #clear()}, valid until then
+     */
+    List<ErrorEvent> getEvents() {
+        return errorEvents;
     }
 
-    List<ErrorEvent> getAndClearEvents() {
-        return errorEvents.getAndSet(new LinkedList<>());
+    void clear() {
+        errorEvents.clear();
+        errorTraces.clear();
     }
 
 }
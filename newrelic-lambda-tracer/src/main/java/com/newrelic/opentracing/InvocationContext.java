@@ -0,0 +1,97 @@
+package com.newrelic.opentracing;
+
+import com.newrelic.opentracing.state.DistributedTracingState;
+import com.newrelic.opentracing.state.PrioritySamplingState;
+import com.newrelic.opentracing.state.TransactionState;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * The state of one invocation, shared by every span in it whichever thread the span runs on. A root span starts a
+ * new invocation and child spans join the invocation of their parent.
+ *
+ * Spans that finish on the thread that started the invocation go straight into that thread's
+ * {@link DataCollection}. Spans that finish on other threads, such as the workers of an executor the handler fans
+ * out to, are pushed onto a lock-free stack that the root span drains when it finishes, so the handler thread never
+ * contends with them. The root span reports the invocation from whichever thread finishes it, through the starting
+ * thread's data collection, whose lock hands over the spans that thread collected. Spans that finish after their root
+ * span are dropped along with the invocation.
+ */
+class InvocationContext {
+
+    private final DistributedTracingState distributedTracingState = new DistributedTracingState();
+    private final PrioritySamplingState prioritySamplingState = new PrioritySamplingState();
+    private final TransactionState transactionState = new TransactionState();
+
+    private final DataCollection dataCollection;
+    private final Thread owner;
+    private final AtomicReference<FinishedSpan> finishedElsewhere = new AtomicReference<>();
+
+    /**
+     * @param dataCollection the data collection of the thread starting the invocation, which reports it
+     */
+    InvocationContext(DataCollection dataCollection) {
+        this.dataCollection = dataCollection;
+        this.owner = Thread.currentThread();
+    }
+
+    DistributedTracingState getDistributedTracingState() {
+        return distributedTracingState;
+    }
+
+    PrioritySamplingState getPrioritySamplingState() {
+        return prioritySamplingState;
+    }
+
+    TransactionState getTransactionState() {
+        return transactionState;
+    }
+
+    DataCollection getDataCollection() {
+        return dataCollection;
+    }
+
+    void spanFinished(LambdaSpan span) {
+        if (span.isRootSpan() || Thread.currentThread() == owner) {
+            dataCollection.spanFinished(span);
+            return;
+        }
+        final FinishedSpan finished = new FinishedSpan(span);
+        FinishedSpan head;
+        do {
+            head = finishedElsewhere.get();
+            finished.next = head;
+        } while (!finishedElsewhere.compareAndSet(head, finished));
+    }
+
+    /**
+     * Hand the spans that finished on other threads to the collector, in the order they finished, and forget them.
+     */
+    void drainFinishedElsewhere(Consumer<LambdaSpan> collector) {
+        FinishedSpan finished = finishedElsewhere.getAndSet(null);
+        // The stack is newest first, reverse it
+        FinishedSpan reversed = null;
+        while (finished != null) {
+            final FinishedSpan next = finished.next;
+            finished.next = reversed;
+            reversed = finished;
+            finished = next;
+        }
+        for (; reversed != null; reversed = reversed.next) {
+            collector.accept(reversed.span);
+        }
+    }
+
+    private static final class FinishedSpan {
+
+        final LambdaSpan span;
+        FinishedSpan next;
+
+        FinishedSpan(LambdaSpan span) {
+            this.span = span;
+        }
+
+    }
+
+}
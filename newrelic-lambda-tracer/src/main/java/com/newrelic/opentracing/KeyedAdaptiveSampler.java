@@ -0,0 +1,95 @@
+package com.newrelic.opentracing;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Adaptive sampling with an independent target per key, such as the operation name of the root span or the event
+ * source that triggered the invocation, so a busy route cannot use up the samples of rare ones.
+ *
+ * Up to maxKeys keys get their own {@link AdaptiveSampling}. Keys seen after that, and root spans without a key,
+ * share one more, which keeps memory bounded when keys are unexpectedly high-cardinality.
+ */
+public class KeyedAdaptiveSampler implements Sampler {
+
+    static final String EVENT_SOURCE_ARN = "aws.lambda.eventSource.arn";
+
+    /**
+     * Keys root spans by their operation name.
+     */
+    public static final Function<LambdaSpan, String> BY_OPERATION_NAME = LambdaSpan::getOperationName;
+
+    /**
+     * Keys root spans by the aws.lambda.eventSource.arn tag, which has to be set on the span builder.
+     */
+    public static final Function<LambdaSpan, String> BY_EVENT_SOURCE = rootSpan -> {
+        final Object eventSourceArn = rootSpan.getTag(EVENT_SOURCE_ARN);
+        return eventSourceArn instanceof String ? (String) eventSourceArn : null;
+    };
+
+    private final int target;
+    private final long periodInMillis;
+    private final int maxKeys;
+    private final Function<LambdaSpan, String> keyFunction;
+
+    private final ConcurrentHashMap<String, AdaptiveSampling> samplers = new ConcurrentHashMap<>();
+    private final AtomicInteger keys = new AtomicInteger();
+    private final AdaptiveSampling overflow;
+
+    /**
+     * @param target root spans to sample per period for each key
+     * @param period length of a period
+     * @param maxKeys keys with their own target
+     * @param keyFunction the key of a root span, null if it has none
+     */
+    public KeyedAdaptiveSampler(int target, long period, TimeUnit unit, int maxKeys, Function<LambdaSpan, String> keyFunction) {
+        if (maxKeys < 0 || keyFunction == null) {
+            throw new IllegalArgumentException("A key function and a non-negative number of keys are required.");
+        }
+        this.target = target;
+        this.periodInMillis = unit.toMillis(period);
+        this.maxKeys = maxKeys;
+        this.keyFunction = keyFunction;
+        this.overflow = new AdaptiveSampling(target, periodInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean computeSampled(LambdaSpan rootSpan) {
+        return samplerFor(keyFunction.apply(rootSpan)).computeSampled(rootSpan);
+    }
+
+    AdaptiveSampling samplerFor(String key) {
+        if (key == null) {
+            return overflow;
+        }
+        final AdaptiveSampling sampler = samplers.get(key);
+        if (sampler != null) {
+            return sampler;
+        }
+
+        // Reserve a slot first, so concurrent new keys cannot take the map past maxKeys
+        int count;
+        do {
+            count = keys.get();
+            if (count >= maxKeys) {
+                return overflow;
+            }
+        } while (!keys.compareAndSet(count, count + 1));
+
+        final AdaptiveSampling created = new AdaptiveSampling(target, periodInMillis, TimeUnit.MILLISECONDS);
+        final AdaptiveSampling existing = samplers.putIfAbsent(key, created);
+        if (existing != null) {
+            // Another thread added the key in the meantime
+            keys.decrementAndGet();
+            return existing;
+        }
+        return created;
+    }
+
+    int size() {
+        return samplers.size();
+    }
+
+}
@@ -13,11 +13,18 @@ public class LambdaPayloadContext implements SpanContext {
     private final DistributedTracePayloadImpl payload;
     private final long transportDurationInMillis;
     private final Map<String, String> baggage;
+    private final String traceStateOtherVendors;
 
     LambdaPayloadContext(DistributedTracePayloadImpl distributedTracePayload, long transportDurationInMillis, Map<String, String> baggage) {
+        this(distributedTracePayload, transportDurationInMillis, baggage, null);
+    }
+
+    LambdaPayloadContext(DistributedTracePayloadImpl distributedTracePayload, long transportDurationInMillis, Map<String, String> baggage,
+            String traceStateOtherVendors) {
         this.payload = distributedTracePayload;
         this.transportDurationInMillis = transportDurationInMillis;
         this.baggage = baggage;
+        this.traceStateOtherVendors = traceStateOtherVendors;
     }
 
     DistributedTracePayloadImpl getPayload() {
@@ -32,6 +39,10 @@ public class LambdaPayloadContext implements SpanContext {
         return baggage;
     }
 
+    String getTraceStateOtherVendors() {
+        return traceStateOtherVendors;
+    }
+
     @Override
     public Iterable<Map.Entry<String, String>> baggageItems() {
         return baggage.entrySet();
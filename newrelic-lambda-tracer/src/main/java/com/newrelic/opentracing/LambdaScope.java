@@ -0,0 +1,61 @@
+package com.newrelic.opentracing;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+
+/**
+ * A scope of {@link LambdaScopeManager}. Closing it restores the scope that was active when it was opened. Scopes
+ * opened for propagated tasks are reused, so they must not be used after closing. Closing a scope again does nothing,
+ * which lets a task close its own scope before the wrapper does.
+ */
+final class LambdaScope implements Scope {
+
+    private final LambdaScopeManager scopeManager;
+    private final LambdaScopeManager.TaskScopes taskScopes; // null unless reused for tasks
+
+    private Span span;
+    private boolean finishSpanOnClose;
+    private LambdaScope previous;
+
+    LambdaScope(LambdaScopeManager scopeManager, LambdaScopeManager.TaskScopes taskScopes) {
+        this.scopeManager = scopeManager;
+        this.taskScopes = taskScopes;
+    }
+
+    void open(Span span, boolean finishSpanOnClose) {
+        this.span = span;
+        this.finishSpanOnClose = finishSpanOnClose;
+        this.previous = scopeManager.activeScope.get();
+        scopeManager.activeScope.set(this);
+    }
+
+    @Override
+    public void close() {
+        if (taskScopes == null && scopeManager.activeScope.get() != this) {
+            // This shouldn't happen if users call methods in the expected order. Bail out.
+            return;
+        }
+        if (taskScopes != null && span == null) {
+            // A task scope the task already closed
+            return;
+        }
+        // A task scope is closed by the wrapper when the task returns, which drops any scope the task left open
+
+        if (finishSpanOnClose) {
+            span.finish();
+        }
+
+        scopeManager.activeScope.set(previous);
+        if (taskScopes != null) {
+            span = null;
+            previous = null;
+            taskScopes.release();
+        }
+    }
+
+    @Override
+    public Span span() {
+        return span;
+    }
+
+}
@@ -1,24 +1,73 @@
 package com.newrelic.opentracing;
 
-import com.newrelic.opentracing.state.DistributedTracingState;
-import com.newrelic.opentracing.state.PrioritySamplingState;
-import com.newrelic.opentracing.state.TransactionState;
-import io.opentracing.util.ThreadLocalScopeManager;
+import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
 
-class LambdaScopeManager extends ThreadLocalScopeManager {
+import java.util.Arrays;
 
+/**
+ * Thread local scopes, with the same semantics as opentracing's ThreadLocalScopeManager. Also activates the spans
+ * that {@link ContextPropagation} carries over to other threads, using scopes reused per thread.
+ */
+class LambdaScopeManager implements ScopeManager {
+
+    // Reports the invocations started on each thread, the rest of their state is in InvocationContext
     ThreadLocal<DataCollection> dataCollection = ThreadLocal.withInitial(DataCollection::new);
-    ThreadLocal<DistributedTracingState> dtState = ThreadLocal.withInitial(DistributedTracingState::new);
-    ThreadLocal<PrioritySamplingState> priorityState = ThreadLocal.withInitial(PrioritySamplingState::new);
-    ThreadLocal<TransactionState> txnState = ThreadLocal.withInitial(TransactionState::new);
+
+    final ThreadLocal<LambdaScope> activeScope = new ThreadLocal<>();
+    private final ThreadLocal<TaskScopes> taskScopes = ThreadLocal.withInitial(TaskScopes::new);
+
+    @Override
+    public Scope activate(Span span, boolean finishSpanOnClose) {
+        final LambdaScope scope = new LambdaScope(this, null);
+        scope.open(span, finishSpanOnClose);
+        return scope;
+    }
+
+    @Override
+    public Scope active() {
+        return activeScope.get();
+    }
+
+    /**
+     * Activate a span around a task that runs on this thread. Close the scope on the same thread before the task
+     * returns, which hands it back for the next task.
+     */
+    Scope activateForTask(Span span) {
+        final LambdaScope scope = taskScopes.get().acquire(this);
+        scope.open(span, false);
+        return scope;
+    }
 
     /**
-     * Called when the last span finishes.
+     * Task scopes of one thread. Tasks can nest, for example when a ForkJoinPool worker runs another task while
+     * joining, so there is one scope per nesting depth.
      */
-    void resetState() {
-        dtState.set(new DistributedTracingState());
-        priorityState.set(new PrioritySamplingState());
-        txnState.set(new TransactionState());
+    static final class TaskScopes {
+
+        private LambdaScope[] scopes = new LambdaScope[2];
+        private int depth;
+
+        LambdaScope acquire(LambdaScopeManager scopeManager) {
+            if (depth == scopes.length) {
+                scopes = Arrays.copyOf(scopes, depth * 2);
+            }
+            LambdaScope scope = scopes[depth];
+            if (scope == null) {
+                scope = new LambdaScope(scopeManager, this);
+                scopes[depth] = scope;
+            }
+            depth++;
+            return scope;
+        }
+
+        void release() {
+            if (depth > 0) {
+                depth--;
+            }
+        }
+
     }
 
 }
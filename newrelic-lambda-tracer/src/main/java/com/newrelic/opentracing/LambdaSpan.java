@@ -5,17 +5,22 @@ import com.newrelic.opentracing.events.Event;
 import com.newrelic.opentracing.state.DistributedTracingState;
 import com.newrelic.opentracing.state.PrioritySamplingState;
 import com.newrelic.opentracing.state.TransactionState;
+import com.newrelic.opentracing.util.ContainerMetadata;
+import com.newrelic.opentracing.util.DistributedTraceUtil;
+import com.newrelic.opentracing.util.JsonWriter;
+import com.newrelic.opentracing.util.SpanCategory;
 import com.newrelic.opentracing.util.SpanCategoryDetection;
 import com.newrelic.opentracing.util.Stacktraces;
+import com.newrelic.opentracing.util.TagStore;
 import com.newrelic.opentracing.util.TimeUtil;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class LambdaSpan extends Event implements Span {
 
@@ -24,29 +29,114 @@ public class LambdaSpan extends Event implements Span {
     private String operationName;
 
     private final String type;
-    private final long startTimeInNanos; // used to compute accurate duration
-    private final long timestamp; // start (epoch) time in milli-seconds
-    private final String guid;
-    private final String transactionId;
-    private final String parentId;
-    private final boolean isRootSpan;
-
-    private final AtomicReference<Map<String, Object>> tags = new AtomicReference<>(new HashMap<>());
-    private final AtomicReference<Map<String, LogEntry>> logs = new AtomicReference<>(new HashMap<>());
-    private final AtomicReference<Map<String, String>> baggage = new AtomicReference<>(new HashMap<>());
+    // Not final so that a pooled span can be started again, see SpanPool
+    private long startTimeInNanos; // used to compute accurate duration
+    private long timestamp; // start (epoch) time in milli-seconds
+    // Generated ids are kept as bits and only rendered as hex when a String is asked for, ids given as Strings are
+    // kept as they are with 0 bits
+    private long guidBits;
+    private String guid;
+    private String transactionId;
+    private long parentIdBits;
+    private String parentId;
+    private boolean isRootSpan;
+
+    private TagStore tags;
+    // Most spans never log or carry baggage, so these are created on first use
+    private Map<String, LogEntry> logs;
+    private Map<String, String> baggage;
     private final AtomicBoolean isFinished = new AtomicBoolean(false);
+    private boolean recycled;
+    private int categoryBits; // see SpanCategoryDetection
+    private boolean lightweight;
 
     public LambdaSpan(String operationName, long timestamp, long startTimeInNanos, Map<String, Object> tags, LambdaSpan parentSpan, String guid,
             String transactionId) {
+        this(operationName, timestamp, startTimeInNanos, TagStore.of(tags), parentSpan, guid, transactionId);
+    }
+
+    LambdaSpan(String operationName, long timestamp, long startTimeInNanos, TagStore tags, LambdaSpan parentSpan, String guid,
+            String transactionId) {
+        this(operationName, timestamp, startTimeInNanos, tags, parentSpan, 0, guid, transactionId);
+    }
+
+    LambdaSpan(String operationName, long timestamp, long startTimeInNanos, TagStore tags, LambdaSpan parentSpan, long guid,
+            String transactionId) {
+        this(operationName, timestamp, startTimeInNanos, tags, parentSpan, guid, null, transactionId);
+    }
+
+    private LambdaSpan(String operationName, long timestamp, long startTimeInNanos, TagStore tags, LambdaSpan parentSpan, long guidBits,
+            String guid, String transactionId) {
         this.type = "Span";
+        this.tags = tags;
+        this.categoryBits = SpanCategoryDetection.categoryBits(tags);
+        start(operationName, timestamp, startTimeInNanos, parentSpan, guidBits, guid, transactionId);
+    }
+
+    /**
+     * Start a span taken from the pool. Its tag store is kept, the builder's tags, if any, are copied in. The builder
+     * gives it a new context.
+     */
+    void restart(String operationName, long timestamp, long startTimeInNanos, TagStore tags, LambdaSpan parentSpan, long guid,
+            String transactionId) {
+        assert recycled : "Only recycled spans can be restarted";
+        recycled = false;
+        if (tags != null) {
+            this.tags.putAll(tags);
+            categoryBits = SpanCategoryDetection.categoryBits(this.tags);
+        }
+        start(operationName, timestamp, startTimeInNanos, parentSpan, guid, null, transactionId);
+    }
+
+    private void start(String operationName, long timestamp, long startTimeInNanos, LambdaSpan parentSpan, long guidBits, String guid,
+            String transactionId) {
         this.operationName = operationName;
         this.timestamp = timestamp;
         this.startTimeInNanos = startTimeInNanos;
-        this.tags.set(tags);
+        this.guidBits = guidBits;
         this.guid = guid;
         this.transactionId = transactionId;
         this.isRootSpan = parentSpan == null;
-        this.parentId = parentSpan == null ? null : parentSpan.guid();
+        if (parentSpan == null) {
+            this.parentIdBits = 0;
+            this.parentId = null;
+        } else {
+            this.parentIdBits = parentSpan.guidBits;
+            this.parentId = parentSpan.guidBits == 0 ? parentSpan.guid : null;
+        }
+    }
+
+    /**
+     * Clear the span so it can go back to the pool. Must only be called once it has been written out.
+     */
+    void recycle() {
+        recycled = true;
+        // Left to whoever still holds it, such as an injected carrier or a child span
+        context = null;
+        durationInMicros = 0;
+        operationName = null;
+        guidBits = 0;
+        guid = null;
+        transactionId = null;
+        parentIdBits = 0;
+        parentId = null;
+        tags.clear();
+        categoryBits = 0;
+        lightweight = false;
+        if (logs != null) {
+            logs.clear();
+        }
+        if (baggage != null) {
+            baggage.clear();
+        }
+        isFinished.set(false);
+    }
+
+    /**
+     * For assertions: a recycled span may already be in use as a different span.
+     */
+    private boolean live() {
+        return !recycled;
     }
 
     public float priority() {
@@ -54,10 +144,20 @@ public class LambdaSpan extends Event implements Span {
     }
 
     public String guid() {
+        if (guid == null && guidBits != 0) {
+            guid = DistributedTraceUtil.toHex(guidBits);
+        }
         return guid;
     }
 
-    String getOperationName() {
+    private String parentId() {
+        if (parentId == null && parentIdBits != 0) {
+            parentId = DistributedTraceUtil.toHex(parentIdBits);
+        }
+        return parentId;
+    }
+
+    public String getOperationName() {
         return operationName;
     }
 
@@ -77,6 +177,33 @@ public class LambdaSpan extends Event implements Span {
         this.context = context;
     }
 
+    /**
+     * A lightweight span belongs to an invocation that will not be sampled. It ignores tags other than the error tag,
+     * though it still tracks its category, and is only collected if it has an error.
+     */
+    void setLightweight(boolean lightweight) {
+        this.lightweight = lightweight;
+    }
+
+    boolean isLightweight() {
+        return lightweight;
+    }
+
+    /**
+     * Keep what a lightweight span needs of the tags it was built with: the error tag and the category.
+     */
+    void setLightweightTags(TagStore builderTags) {
+        final Object error = builderTags.get("error");
+        if (error != null) {
+            tags.putObject("error", error);
+        }
+        categoryBits = SpanCategoryDetection.categoryBits(builderTags);
+    }
+
+    LambdaSpanContext getLambdaSpanContext() {
+        return context;
+    }
+
     public boolean isRootSpan() {
         return isRootSpan;
     }
@@ -87,6 +214,7 @@ public class LambdaSpan extends Event implements Span {
 
     @Override
     public SpanContext context() {
+        assert live() : "Span used after it was recycled";
         return context;
     }
 
@@ -94,33 +222,51 @@ public class LambdaSpan extends Event implements Span {
         if (key == null) {
             return null;
         }
-        return tags.get().get(key);
+        return tags.get(key);
     }
 
     public LogEntry getLog(String eventName) {
-        return logs.get().get(eventName);
+        return logs == null ? null : logs.get(eventName);
     }
 
     @Override
     public Span setTag(String key, String value) {
-        tags.get().put(key, value);
+        assert live() : "Span used after it was recycled";
+        if (keepsTag(key)) {
+            tags.put(key, value);
+        }
+        categoryBits = SpanCategoryDetection.categoryBits(categoryBits, key, value);
         return this;
     }
 
     @Override
     public Span setTag(String key, boolean value) {
-        tags.get().put(key, value);
+        assert live() : "Span used after it was recycled";
+        if (keepsTag(key)) {
+            tags.put(key, value);
+        }
+        categoryBits = SpanCategoryDetection.categoryBits(categoryBits, key, null);
         return this;
     }
 
     @Override
     public Span setTag(String key, Number value) {
-        tags.get().put(key, value);
+        assert live() : "Span used after it was recycled";
+        if (keepsTag(key)) {
+            tags.put(key, value);
+        }
+        categoryBits = SpanCategoryDetection.categoryBits(categoryBits, key, null);
         return this;
     }
 
+    private boolean keepsTag(String key) {
+        // What errors need is kept, see SpanReservoir#isErrored
+        return !lightweight || "error".equals(key);
+    }
+
     @Override
     public Span setOperationName(String operationName) {
+        assert live() : "Span used after it was recycled";
         this.operationName = operationName;
         return this;
     }
@@ -150,6 +296,7 @@ public class LambdaSpan extends Event implements Span {
     }
 
     private Span log(long timestampInMillis, String eventName, Object value) {
+        assert live() : "Span used after it was recycled";
         if (value instanceof StackTraceElement[]) {
             value = Stacktraces.stackTracesToStrings((StackTraceElement[]) value);
         }
@@ -158,7 +305,10 @@ public class LambdaSpan extends Event implements Span {
             if ("event".equals(eventName) && "error".equals(value)) {
                 getTransactionState().setError();
             }
-            logs.get().put(eventName, new LogEntry(timestampInMillis, value));
+            if (logs == null) {
+                logs = new HashMap<>();
+            }
+            logs.put(eventName, new LogEntry(timestampInMillis, value));
         }
 
         return this;
@@ -174,13 +324,17 @@ public class LambdaSpan extends Event implements Span {
 
     @Override
     public Span setBaggageItem(String key, String value) {
-        baggage.get().put(key, value);
+        assert live() : "Span used after it was recycled";
+        if (baggage == null) {
+            baggage = new HashMap<>();
+        }
+        baggage.put(key, value);
         return this;
     }
 
     @Override
     public String getBaggageItem(String key) {
-        return baggage.get() == null ? null : baggage.get().get(key);
+        return baggage == null ? null : baggage.get(key);
     }
 
     @Override
@@ -190,11 +344,11 @@ public class LambdaSpan extends Event implements Span {
 
     @Override
     public void finish(long finishMicros) {
+        assert live() : "Span used after it was recycled";
         if (isFinished.compareAndSet(false, true)) {
             durationInMicros = finishMicros - TimeUnit.NANOSECONDS.toMicros(startTimeInNanos);
             recordTransactionInfo();
             context.spanFinished(this);
-            resetContext();
         }
     }
 
@@ -205,36 +359,37 @@ public class LambdaSpan extends Event implements Span {
         if (isRootSpan) {
             context.getTransactionState().setTransactionDuration(getDurationInSeconds());
 
-            String transactionType = "Other";
-
             Object eventSourceArnTag = getTag("aws.lambda.eventSource.arn");
             final String eventSourceArn = eventSourceArnTag instanceof String ? (String) eventSourceArnTag : "";
-            if (eventSourceArn.startsWith("arn:aws:iam") || eventSourceArn.startsWith("arn:aws:elasticloadbalancing")) {
-                transactionType = "WebTransaction";
-            }
+            final boolean webTransaction = eventSourceArn.startsWith("arn:aws:iam") || eventSourceArn.startsWith("arn:aws:elasticloadbalancing");
 
-            final String arn = (String) getTag("aws.lambda.arn");
-            if (arn != null && arn.contains(":")) {
-                context.getTransactionState().setTransactionName(transactionType, arn.substring(arn.lastIndexOf(":") + 1));
+            final String transactionName = ContainerMetadata.getTransactionName((String) getTag("aws.lambda.arn"), webTransaction);
+            if (transactionName != null) {
+                context.getTransactionState().setTransactionName(transactionName);
             }
         }
     }
 
+    public String traceId() {
+        return context.getDistributedTracingState().getTraceId();
+    }
+
     /**
-     * Must be called after spanFinished.
+     * @return a read-only view of the tags, values are boxed as they are read
      */
-    private void resetContext() {
-        if (isRootSpan) {
-            context.getScopeManager().resetState();
-        }
+    public Map<String, Object> getTags() {
+        return tags.asMap();
     }
 
-    public String traceId() {
-        return context.getDistributedTracingState().getTraceId();
+    /**
+     * @return the tags, for reading without copying or boxing. Tags must be set through the span.
+     */
+    public TagStore getTagStore() {
+        return tags;
     }
 
-    public Map<String, Object> getTags() {
-        return tags.get();
+    public SpanCategory getCategory() {
+        return SpanCategoryDetection.fromBits(categoryBits);
     }
 
     DistributedTracingState getDistributedTracingState() {
@@ -249,6 +404,9 @@ public class LambdaSpan extends Event implements Span {
         return context.getTransactionState();
     }
 
+    /**
+     * A map of the intrinsics for callers that need one. Serialization writes them with {@link #writeIntrinsics}.
+     */
     @Override
     public Map<String, Object> getIntrinsics() {
         final Map<String, Object> intrinsics = new HashMap<>();
@@ -256,12 +414,13 @@ public class LambdaSpan extends Event implements Span {
         intrinsics.put("name", operationName);
         intrinsics.put("timestamp", timestamp);
         intrinsics.put("duration", getDurationInSeconds()); // duration as float in seconds
-        intrinsics.put("category", SpanCategoryDetection.detectSpanCategory(this).toString());
+        intrinsics.put("category", getCategory().toString());
 
         if (isRootSpan) {
             intrinsics.put("nr.entryPoint", true);
         }
 
+        final String parentId = parentId();
         if (parentId != null && !parentId.isEmpty()) {
             intrinsics.put("parentId", parentId);
         }
@@ -280,19 +439,55 @@ public class LambdaSpan extends Event implements Span {
     }
 
     @Override
-    public Map<String, Object> getUserAttributes() {
-        Map<String, Object> userAtts = new HashMap<>();
+    protected void writeIntrinsics(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("type").value(type);
+        writer.name("name").value(operationName);
+        writer.name("timestamp").value(timestamp);
+        writer.name("duration").value(getDurationInSeconds());
+        writer.name("category").value(getCategory().toString());
 
-        final Map<String, Object> tags = this.tags.get();
-        if (tags != null) {
-            userAtts.putAll(tags);
+        if (isRootSpan) {
+            writer.name("nr.entryPoint").value(true);
+        }
+
+        if (parentIdBits != 0) {
+            writer.name("parentId").hexValue(parentIdBits);
+        } else if (parentId != null && !parentId.isEmpty()) {
+            writer.name("parentId").value(parentId);
+        }
+
+        if (transactionId != null && !transactionId.isEmpty()) {
+            writer.name("transactionId").value(transactionId);
+        }
+
+        if (context != null) {
+            writer.name("guid");
+            if (guidBits != 0) {
+                writer.hexValue(guidBits);
+            } else {
+                writer.value(guid);
+            }
+            DistributedTracing.INSTANCE.writeDistributedTracingAttributes(writer, context.getDistributedTracingState(), priority());
         }
+        writer.endObject();
+    }
+
+    @Override
+    public Map<String, Object> getUserAttributes() {
+        Map<String, Object> userAtts = new HashMap<>();
+        tags.copyInto(userAtts);
 
         // Remove error:true. This causes issues for DT
         userAtts.remove("error");
         return userAtts;
     }
 
+    @Override
+    protected void writeUserAttributes(JsonWriter writer) throws IOException {
+        tags.writeTo(writer, "error");
+    }
+
     @Override
     public Map<String, Object> getAgentAttributes() {
         return new HashMap<>();
@@ -1,15 +1,15 @@
 package com.newrelic.opentracing;
 
+import com.newrelic.opentracing.dt.DistributedTracePayloadImpl;
 import com.newrelic.opentracing.state.PrioritySamplingState;
 import com.newrelic.opentracing.util.DistributedTraceUtil;
+import com.newrelic.opentracing.util.TagStore;
 import io.opentracing.References;
 import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 public class LambdaSpanBuilder implements Tracer.SpanBuilder {
@@ -19,7 +19,8 @@ public class LambdaSpanBuilder implements Tracer.SpanBuilder {
     private SpanContext parent;
 
     private final String operationName;
-    private final Map<String, Object> tags = new HashMap<>();
+    private TagStore tags;
+    private boolean tagsUsed;
 
     LambdaSpanBuilder(String operationName) {
         this.operationName = operationName;
@@ -51,19 +52,19 @@ public class LambdaSpanBuilder implements Tracer.SpanBuilder {
 
     @Override
     public Tracer.SpanBuilder withTag(String key, String value) {
-        tags.put(key, value);
+        tags().put(key, value);
         return this;
     }
 
     @Override
     public Tracer.SpanBuilder withTag(String key, boolean value) {
-        tags.put(key, value);
+        tags().put(key, value);
         return this;
     }
 
     @Override
     public Tracer.SpanBuilder withTag(String key, Number value) {
-        tags.put(key, value);
+        tags().put(key, value);
         return this;
     }
 
@@ -102,30 +103,80 @@ public class LambdaSpanBuilder implements Tracer.SpanBuilder {
         LambdaScopeManager scopeManager = (LambdaScopeManager) tracer.scopeManager();
 
         LambdaSpan parentSpan = null;
+        if (parentSpanContext instanceof LambdaSpanContext) {
+            parentSpan = ((LambdaSpanContext) parentSpanContext).getSpan();
+        }
+
+        // Child spans join their parent's invocation, whichever thread they are started on. Root spans start one.
+        final InvocationContext invocation = parentSpan != null
+                ? ((LambdaSpanContext) parentSpanContext).getInvocation()
+                : new InvocationContext(scopeManager.dataCollection.get());
         if (parentSpanContext instanceof LambdaPayloadContext) {
             final LambdaPayloadContext payloadContext = (LambdaPayloadContext) parentSpanContext;
-            scopeManager.dtState.get().setInboundPayloadAndTransportTime(payloadContext.getPayload(), payloadContext.getTransportDurationInMillis());
-            scopeManager.dtState.get().setBaggage(payloadContext.getBaggage());
-        } else if (parentSpanContext instanceof LambdaSpanContext) {
-            parentSpan = ((LambdaSpanContext) parentSpanContext).getSpan();
+            invocation.getDistributedTracingState().setInboundPayloadAndTransportTime(payloadContext.getPayload(),
+                    payloadContext.getTransportDurationInMillis());
+            invocation.getDistributedTracingState().setBaggage(payloadContext.getBaggage());
+            invocation.getDistributedTracingState().setTraceStateOtherVendors(payloadContext.getTraceStateOtherVendors());
         }
 
-        LambdaSpan newSpan = new LambdaSpan(operationName, timestamp, startTimeInNanos, tags, parentSpan, DistributedTraceUtil.generateGuid(),
-                scopeManager.txnState.get().getTransactionId());
-        LambdaSpanContext spanContext = new LambdaSpanContext(newSpan, scopeManager);
+        // Spans of an invocation that will not be sampled only need what errors and the transaction event use. They are
+        // always lightweight when the caller decided not to sample the trace, so nothing downstream collects its spans.
+        final PrioritySamplingState samplingState = invocation.getPrioritySamplingState();
+        final boolean lightweight = parentSpan != null && !samplingState.isSampled() && !invocation.getDataCollection().decidesSamplingAtFinish()
+                && (tracer.lightweightUnsampledSpans() || samplingState.isDecidedUpstream());
+
+        final long guid = DistributedTraceUtil.nextId();
+        final String transactionId = invocation.getTransactionState().getTransactionId();
+        LambdaSpan newSpan = SpanPool.acquire();
+        if (newSpan != null) {
+            newSpan.restart(operationName, timestamp, startTimeInNanos, lightweight ? null : tags, parentSpan, guid, transactionId);
+        } else {
+            newSpan = new LambdaSpan(operationName, timestamp, startTimeInNanos, lightweight ? new TagStore() : takeTags(), parentSpan, guid,
+                    transactionId);
+        }
+        // A pooled span gets a fresh context too, its previous one may still be held by a carrier or a child span
+        final LambdaSpanContext spanContext = new LambdaSpanContext(newSpan, scopeManager, invocation);
         newSpan.setContext(spanContext);
+        newSpan.setLightweight(lightweight);
+        if (lightweight && tags != null) {
+            newSpan.setLightweightTags(tags);
+        }
 
         if (newSpan.isRootSpan()) {
-            final AdaptiveSampling adaptiveSampling = LambdaTracer.INSTANCE.adaptiveSampling();
-            adaptiveSampling.requestStarted();
-
-            // First span, make a sampling decision and get a traceId
-            final PrioritySamplingState pss = spanContext.getPrioritySamplingState();
-            pss.setSampledAndGeneratePriority(adaptiveSampling.computeSampled());
+            // First span, adopt the caller's sampling decision or make one, and get a traceId
+            final DistributedTracePayloadImpl inboundPayload = invocation.getDistributedTracingState().getInboundPayload();
+            if (inboundPayload == null || !samplingState.setInboundSampledAndPriority(inboundPayload.sampled, inboundPayload.priority)) {
+                samplingState.setSampledAndGeneratePriority(tracer.sampler().computeSampled(newSpan));
+            }
             spanContext.getDistributedTracingState().generateAndStoreTraceId();
         }
 
         return newSpan;
     }
 
+    private TagStore tags() {
+        if (tags == null) {
+            tags = new TagStore();
+        } else if (tagsUsed) {
+            // Already handed to a span started from this builder
+            tags = tags.copy();
+            tagsUsed = false;
+        }
+        return tags;
+    }
+
+    /**
+     * Hand the tags to the span without copying them. Starting another span from this builder gets its own copy.
+     */
+    private TagStore takeTags() {
+        if (tags == null) {
+            return new TagStore();
+        }
+        if (tagsUsed) {
+            return tags.copy();
+        }
+        tagsUsed = true;
+        return tags;
+    }
+
 }
@@ -11,22 +11,35 @@ public class LambdaSpanContext implements SpanContext {
 
     private final LambdaSpan span;
     private final LambdaScopeManager scopeManager;
+    private final InvocationContext invocation;
 
+    /**
+     * A context that starts a new invocation, reported by the data collection of the current thread.
+     */
     LambdaSpanContext(LambdaSpan span, LambdaScopeManager scopeManager) {
+        this(span, scopeManager, new InvocationContext(scopeManager.dataCollection.get()));
+    }
+
+    LambdaSpanContext(LambdaSpan span, LambdaScopeManager scopeManager, InvocationContext invocation) {
         this.span = span;
         this.scopeManager = scopeManager;
+        this.invocation = invocation;
     }
 
     public DistributedTracingState getDistributedTracingState() {
-        return scopeManager.dtState.get();
+        return invocation.getDistributedTracingState();
     }
 
     PrioritySamplingState getPrioritySamplingState() {
-        return scopeManager.priorityState.get();
+        return invocation.getPrioritySamplingState();
     }
 
     public TransactionState getTransactionState() {
-        return scopeManager.txnState.get();
+        return invocation.getTransactionState();
+    }
+
+    InvocationContext getInvocation() {
+        return invocation;
     }
 
     LambdaScopeManager getScopeManager() {
@@ -43,7 +56,7 @@ public class LambdaSpanContext implements SpanContext {
     }
 
     void spanFinished(LambdaSpan lambdaSpan) {
-        scopeManager.dataCollection.get().spanFinished(lambdaSpan);
+        invocation.spanFinished(lambdaSpan);
     }
 
 }
@@ -1,7 +1,8 @@
 package com.newrelic.opentracing;
 
-import com.newrelic.opentracing.dt.DistributedTracePayload;
 import com.newrelic.opentracing.dt.DistributedTracePayloadImpl;
+import com.newrelic.opentracing.dt.OutboundPayload;
+import com.newrelic.opentracing.dt.W3CTraceContext;
 import com.newrelic.opentracing.logging.Log;
 import com.newrelic.opentracing.util.Base64;
 import io.opentracing.Scope;
@@ -26,7 +27,8 @@ public class LambdaTracer implements Tracer {
     public static final LambdaTracer INSTANCE = new LambdaTracer();
 
     private final LambdaScopeManager scopeManager = new LambdaScopeManager();
-    private final AdaptiveSampling adaptiveSampling = new AdaptiveSampling();
+    private volatile Sampler sampler = new AdaptiveSampling();
+    private volatile boolean lightweightUnsampledSpans = Boolean.parseBoolean(System.getenv("NEW_RELIC_LIGHTWEIGHT_UNSAMPLED_SPANS"));
 
     private LambdaTracer() {
     }
@@ -55,7 +57,7 @@ public class LambdaTracer implements Tracer {
 
         LambdaSpanContext lambdaSpanContext = (LambdaSpanContext) spanContext;
         final LambdaSpan span = lambdaSpanContext.getSpan();
-        DistributedTracePayload distributedTracePayload = lambdaSpanContext.getDistributedTracingState().createDistributedTracingPayload(span);
+        OutboundPayload distributedTracePayload = lambdaSpanContext.getDistributedTracingState().createDistributedTracingPayload(span);
 
         if (distributedTracePayload == null) {
             return;
@@ -63,8 +65,10 @@ public class LambdaTracer implements Tracer {
 
         if (format.equals(Format.Builtin.TEXT_MAP)) {
             ((TextMap) carrier).put(NEWRELIC_TRACE_HEADER, distributedTracePayload.text());
+            injectTraceContext((TextMap) carrier, distributedTracePayload);
         } else if (format.equals(Format.Builtin.HTTP_HEADERS)) {
             ((TextMap) carrier).put(NEWRELIC_TRACE_HEADER, distributedTracePayload.httpSafe());
+            injectTraceContext((TextMap) carrier, distributedTracePayload);
         } else if (format.equals(Format.Builtin.BINARY)) {
             // First, specify length of distributed trace payload as an index.
             byte[] payloadBytes = distributedTracePayload.text().getBytes(UTF_8_CHARSET);
@@ -73,11 +77,26 @@ public class LambdaTracer implements Tracer {
         }
     }
 
+    private static void injectTraceContext(TextMap carrier, OutboundPayload distributedTracePayload) {
+        final String traceParent = distributedTracePayload.traceParent();
+        if (traceParent != null) {
+            carrier.put(W3CTraceContext.TRACE_PARENT, traceParent);
+            carrier.put(W3CTraceContext.TRACE_STATE, distributedTracePayload.traceState());
+        }
+    }
+
     @Override
     public <C> SpanContext extract(Format<C> format, C carrier) {
         String payload = getPayloadString(format, carrier);
         if (payload == null) {
-            return null;
+            // Callers that only send W3C Trace Context headers
+            final SpanContext traceContext = format.equals(Format.Builtin.TEXT_MAP) || format.equals(Format.Builtin.HTTP_HEADERS)
+                    ? extractTraceContext((TextMap) carrier)
+                    : null;
+            if (traceContext == null) {
+                Log.getInstance().debug("Unable to extract payload from carrier: {0}.", carrier);
+            }
+            return traceContext;
         }
 
         DistributedTracePayloadImpl distributedTracePayload = DistributedTracePayloadImpl.parseDistributedTracePayload(payload);
@@ -91,6 +110,36 @@ public class LambdaTracer implements Tracer {
         return new LambdaPayloadContext(distributedTracePayload, transportDurationInMillis, Collections.emptyMap());
     }
 
+    /**
+     * @return the context of the traceparent and tracestate headers, or null if there is no valid traceparent
+     */
+    private static SpanContext extractTraceContext(TextMap carrier) {
+        String traceParent = null;
+        String traceState = null;
+        for (Map.Entry<String, String> entry : carrier) {
+            if (entry.getKey().equalsIgnoreCase(W3CTraceContext.TRACE_PARENT)) {
+                traceParent = entry.getValue();
+            } else if (entry.getKey().equalsIgnoreCase(W3CTraceContext.TRACE_STATE)) {
+                // Repeated tracestate headers make up one list
+                traceState = traceState == null ? entry.getValue() : traceState + ',' + entry.getValue();
+            }
+        }
+        if (traceParent == null) {
+            return null;
+        }
+
+        final DistributedTracePayloadImpl distributedTracePayload = W3CTraceContext.parse(traceParent, traceState);
+        if (distributedTracePayload == null) {
+            return null;
+        }
+        // Without our tracestate entry there is no timestamp to measure the transport duration with
+        final long transportDurationInMillis = distributedTracePayload.timestamp != DistributedTracePayloadImpl.NO_TIMESTAMP
+                ? Math.max(0, System.currentTimeMillis() - distributedTracePayload.timestamp)
+                : Long.MIN_VALUE;
+        return new LambdaPayloadContext(distributedTracePayload, transportDurationInMillis, Collections.emptyMap(),
+                W3CTraceContext.otherVendors(traceState));
+    }
+
     private <C> String getPayloadString(Format<C> format, C carrier) {
         String payload = null;
         if (format.equals(Format.Builtin.TEXT_MAP)) {
@@ -125,15 +174,43 @@ public class LambdaTracer implements Tracer {
             throw new IllegalArgumentException(msg);
         }
 
-        if (payload == null) {
-            Log.getInstance().debug(MessageFormat.format("Unable to extract payload from carrier: {0}.", carrier));
-            return null;
-        }
         return payload;
     }
 
-    AdaptiveSampling adaptiveSampling() {
-        return adaptiveSampling;
+    /**
+     * Keep up to this many finished spans per thread and start new spans from them, overriding NEW_RELIC_SPAN_POOL_SIZE.
+     * Only safe when spans are not used after the invocation that created them has finished. 0 turns pooling off.
+     */
+    public void setSpanPoolSize(int spansPerThread) {
+        SpanPool.setCapacity(spansPerThread);
+    }
+
+    /**
+     * Start the child spans of invocations that are not sampled as lightweight spans, which drop their tags and are
+     * only collected if they log an error, overriding NEW_RELIC_LIGHTWEIGHT_UNSAMPLED_SPANS. Has no effect with tail
+     * sampling, which needs every span until the root span finishes.
+     */
+    public void setLightweightUnsampledSpans(boolean lightweightUnsampledSpans) {
+        this.lightweightUnsampledSpans = lightweightUnsampledSpans;
+    }
+
+    boolean lightweightUnsampledSpans() {
+        return lightweightUnsampledSpans;
+    }
+
+    /**
+     * Decide which invocations are sampled with this sampler instead of the default {@link AdaptiveSampling}, for
+     * example a {@link KeyedAdaptiveSampler} that samples each route separately.
+     */
+    public void setSampler(Sampler sampler) {
+        if (sampler == null) {
+            throw new IllegalArgumentException("Sampler must not be null.");
+        }
+        this.sampler = sampler;
+    }
+
+    Sampler sampler() {
+        return sampler;
     }
 
 }
@@ -0,0 +1,17 @@
+package com.newrelic.opentracing;
+
+/**
+ * Decides which invocations are sampled, which is when their spans are reported. Set with
+ * {@link LambdaTracer#setSampler(Sampler)}, the default is an {@link AdaptiveSampling} configured from the environment.
+ */
+public interface Sampler {
+
+    /**
+     * Called once for each root span as it starts, from whichever thread starts it, so implementations must be thread
+     * safe. Only the tags set on the span builder are on the span yet.
+     *
+     * @return true if the invocation the root span starts should be sampled
+     */
+    boolean computeSampled(LambdaSpan rootSpan);
+
+}
@@ -0,0 +1,90 @@
+package com.newrelic.opentracing;
+
+/**
+ * Opt-in, per-thread pool of spans for warm containers, which run the same span shapes on every invocation.
+ * Once the root span finishes and {@link DataCollection} has written the payload, the spans of the invocation go
+ * back to the pool of the thread that finished it, and the next invocation starts from them instead of allocating.
+ * Their contexts are not reused, since a carrier or a child span may still refer to them.
+ *
+ * Pooling is off unless NEW_RELIC_SPAN_POOL_SIZE is set to the number of spans to keep per thread. Only enable it
+ * when the function does not hold on to spans after their invocation: a span from an earlier invocation may have
+ * become a span of the current one. With assertions enabled, using a recycled span fails fast.
+ */
+final class SpanPool {
+
+    static final String NEW_RELIC_SPAN_POOL_SIZE = "NEW_RELIC_SPAN_POOL_SIZE";
+
+    private static volatile int capacity = parseCapacity(System.getenv(NEW_RELIC_SPAN_POOL_SIZE));
+
+    private static final ThreadLocal<SpanPool> POOL = ThreadLocal.withInitial(SpanPool::new);
+
+    private LambdaSpan[] spans = new LambdaSpan[0];
+    private int size;
+
+    private SpanPool() {
+    }
+
+    static boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    static int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param capacity spans kept per thread, 0 disables pooling
+     */
+    static void setCapacity(int capacity) {
+        SpanPool.capacity = Math.max(0, capacity);
+        if (capacity <= 0) {
+            POOL.remove();
+        }
+    }
+
+    /**
+     * @return a recycled span of the current thread, or null if there is none
+     */
+    static LambdaSpan acquire() {
+        if (capacity <= 0) {
+            return null;
+        }
+        final SpanPool pool = POOL.get();
+        if (pool.size == 0) {
+            return null;
+        }
+        final LambdaSpan span = pool.spans[--pool.size];
+        pool.spans[pool.size] = null;
+        return span;
+    }
+
+    /**
+     * Clear the span and keep it if the pool of the current thread has room.
+     */
+    static void release(LambdaSpan span) {
+        final int capacity = SpanPool.capacity;
+        if (capacity <= 0) {
+            return;
+        }
+        final SpanPool pool = POOL.get();
+        if (pool.size >= capacity) {
+            return;
+        }
+        span.recycle();
+        if (pool.size == pool.spans.length) {
+            final LambdaSpan[] grown = new LambdaSpan[Math.min(capacity, Math.max(16, pool.size * 2))];
+            System.arraycopy(pool.spans, 0, grown, 0, pool.size);
+            pool.spans = grown;
+        }
+        pool.spans[pool.size++] = span;
+    }
+
+    private static int parseCapacity(String capacity) {
+        try {
+            return capacity == null ? 0 : Math.max(0, Integer.parseInt(capacity.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
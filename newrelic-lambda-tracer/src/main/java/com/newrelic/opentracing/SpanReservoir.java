@@ -0,0 +1,165 @@
+package com.newrelic.opentracing;
+
+import com.newrelic.opentracing.util.SpanCategory;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds the finished spans of an invocation until the root span finishes, keeping at most a fixed number of them.
+ * A handler that creates a span per record of a large batch would otherwise keep every one of them on the heap.
+ *
+ * When the reservoir is full, the span with the lowest score is dropped: errored spans score highest, then http and
+ * datastore spans, and spans of the same kind by duration. The root span is always kept. The spans are kept in a
+ * min-heap on their score, so adding a span is O(log n) and iteration order is not the order they finished in.
+ *
+ * Like the rest of the {@link DataCollection} that owns it, a reservoir is only used under the data collection's lock.
+ */
+class SpanReservoir {
+
+    static final String NEW_RELIC_SPAN_RESERVOIR_SIZE = "NEW_RELIC_SPAN_RESERVOIR_SIZE";
+    static final int DEFAULT_CAPACITY = 2000;
+
+    private static final long ERRORED = 1L << 62;
+    private static final long EXTERNAL_OR_DATASTORE = 1L << 61;
+    private static final long MAX_DURATION = EXTERNAL_OR_DATASTORE - 1;
+    private static final int INITIAL_SIZE = 16;
+
+    private final int capacity;
+    private LambdaSpan[] spans = new LambdaSpan[0];
+    private long[] scores = new long[0];
+    private int size;
+    private int seen;
+
+    private final List<LambdaSpan> view = new AbstractList<LambdaSpan>() {
+        @Override
+        public LambdaSpan get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return spans[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+
+    SpanReservoir(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Add a finished span, dropping the lowest scoring span if the reservoir is full.
+     *
+     * @return the span that was dropped, which may be the one being added, or null
+     */
+    LambdaSpan add(LambdaSpan span) {
+        seen++;
+        final long score = score(span);
+        if (size < capacity) {
+            if (size == spans.length) {
+                final int length = Math.min(capacity, Math.max(INITIAL_SIZE, size * 2));
+                spans = Arrays.copyOf(spans, length);
+                scores = Arrays.copyOf(scores, length);
+            }
+            spans[size] = span;
+            scores[size] = score;
+            siftUp(size++);
+            return null;
+        }
+        if (score <= scores[0]) {
+            return span;
+        }
+        final LambdaSpan dropped = spans[0];
+        spans[0] = span;
+        scores[0] = score;
+        siftDown(0);
+        return dropped;
+    }
+
+    /**
+     * @return the spans kept, a view that is only valid until the reservoir changes
+     */
+    List<LambdaSpan> getSpans() {
+        return view;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of spans added since the reservoir was last cleared, including those that were dropped
+     */
+    int getSeen() {
+        return seen;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    void clear() {
+        Arrays.fill(spans, 0, size, null);
+        size = 0;
+        seen = 0;
+    }
+
+    static long score(LambdaSpan span) {
+        if (span.isRootSpan()) {
+            return Long.MAX_VALUE;
+        }
+        long score = Math.max(0, Math.min(MAX_DURATION, span.getDurationInMicros()));
+        if (span.getCategory() != SpanCategory.GENERIC) {
+            score |= EXTERNAL_OR_DATASTORE;
+        }
+        if (isErrored(span)) {
+            score |= ERRORED;
+        }
+        return score;
+    }
+
+    static boolean isErrored(LambdaSpan span) {
+        return Errors.hasError(span) || Boolean.TRUE.equals(span.getTag("error"));
+    }
+
+    private void siftUp(int index) {
+        final LambdaSpan span = spans[index];
+        final long score = scores[index];
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (scores[parent] <= score) {
+                break;
+            }
+            spans[index] = spans[parent];
+            scores[index] = scores[parent];
+            index = parent;
+        }
+        spans[index] = span;
+        scores[index] = score;
+    }
+
+    private void siftDown(int index) {
+        final LambdaSpan span = spans[index];
+        final long score = scores[index];
+        final int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && scores[child + 1] < scores[child]) {
+                child++;
+            }
+            if (score <= scores[child]) {
+                break;
+            }
+            spans[index] = spans[child];
+            scores[index] = scores[child];
+            index = child;
+        }
+        spans[index] = span;
+        scores[index] = score;
+    }
+
+}
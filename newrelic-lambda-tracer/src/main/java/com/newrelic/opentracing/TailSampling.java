@@ -0,0 +1,63 @@
+package com.newrelic.opentracing;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether to keep the spans of an invocation once its root span has finished, when it is known how long the
+ * invocation took and whether it failed.
+ *
+ * Disabled by default, in which case the decision {@link AdaptiveSampling} made when the root span started stands.
+ * With NEW_RELIC_TAIL_SAMPLING set to true, spans are also kept for invocations that took at least
+ * NEW_RELIC_TAIL_SAMPLING_THRESHOLD_MILLIS or recorded an error, with the adaptive decision as a baseline for the
+ * rest. Invocations that are not kept only report their transaction event and errors.
+ */
+class TailSampling {
+
+    static final String NEW_RELIC_TAIL_SAMPLING = "NEW_RELIC_TAIL_SAMPLING";
+    static final String NEW_RELIC_TAIL_SAMPLING_THRESHOLD_MILLIS = "NEW_RELIC_TAIL_SAMPLING_THRESHOLD_MILLIS";
+    static final long DEFAULT_THRESHOLD_MILLIS = 1000;
+
+    private final boolean enabled;
+    private final long thresholdMicros;
+
+    TailSampling(boolean enabled, long thresholdMillis) {
+        this.enabled = enabled;
+        this.thresholdMicros = TimeUnit.MILLISECONDS.toMicros(Math.max(0, thresholdMillis));
+    }
+
+    static TailSampling fromEnvironment() {
+        return new TailSampling(Boolean.parseBoolean(System.getenv(NEW_RELIC_TAIL_SAMPLING)),
+                parseThresholdMillis(System.getenv(NEW_RELIC_TAIL_SAMPLING_THRESHOLD_MILLIS)));
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Decide whether to keep the spans of the invocation. Invocations kept only because they were slow or failed are
+     * marked sampled, so their spans and transaction event carry a sampled priority.
+     *
+     * @param rootSpan the finished root span
+     */
+    boolean keepSpans(LambdaSpan rootSpan) {
+        final boolean sampled = rootSpan.getPrioritySamplingState().isSampled();
+        if (!enabled || sampled) {
+            return sampled;
+        }
+        if (rootSpan.getDurationInMicros() >= thresholdMicros || rootSpan.getTransactionState().hasError()) {
+            rootSpan.getPrioritySamplingState().promoteToSampled();
+            return true;
+        }
+        return false;
+    }
+
+    static long parseThresholdMillis(String thresholdMillis) {
+        try {
+            return thresholdMillis == null ? DEFAULT_THRESHOLD_MILLIS : Math.max(0, Long.parseLong(thresholdMillis.trim()));
+        } catch (NumberFormatException e) {
+            return DEFAULT_THRESHOLD_MILLIS;
+        }
+    }
+
+}
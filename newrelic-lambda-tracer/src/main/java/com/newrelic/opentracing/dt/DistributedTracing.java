@@ -4,8 +4,10 @@ import com.newrelic.opentracing.LambdaSpan;
 import com.newrelic.opentracing.TransportType;
 import com.newrelic.opentracing.state.DistributedTracingState;
 import com.newrelic.opentracing.util.DistributedTraceUtil;
+import com.newrelic.opentracing.util.JsonWriter;
 import com.newrelic.opentracing.util.TimeUtil;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -79,6 +81,35 @@ public class DistributedTracing {
         return attributes;
     }
 
+    /**
+     * Write the attributes of {@link #getDistributedTracingAttributes}, except for the guid, as members of the object
+     * the writer is in, without building a map. Callers write the guid themselves.
+     */
+    public void writeDistributedTracingAttributes(JsonWriter writer, DistributedTracingState dtState, float priority) throws IOException {
+        final DistributedTracePayloadImpl inboundPayload = dtState.getInboundPayload();
+        if (inboundPayload != null) {
+            if (inboundPayload.parentType != null) {
+                writer.name("parent.type").value(inboundPayload.parentType);
+            }
+            if (inboundPayload.applicationId != null) {
+                writer.name("parent.app").value(inboundPayload.applicationId);
+            }
+            if (inboundPayload.accountId != null) {
+                writer.name("parent.account").value(inboundPayload.accountId);
+            }
+            writer.name("parent.transportType").value(TransportType.Unknown.name());
+
+            final long transportDurationInMillis = dtState.getTransportTimeMillis();
+            if (transportDurationInMillis >= 0) {
+                writer.name("parent.transportDuration").value(transportDurationInMillis / TimeUtil.MILLISECONDS_PER_SECOND);
+            }
+        }
+
+        writer.name("traceId").value(dtState.getTraceId());
+        writer.name("priority").value(priority);
+        writer.name("sampled").value(DistributedTraceUtil.isSampledPriority(priority));
+    }
+
     String getTrustKey() {
         return trustKey;
     }
@@ -0,0 +1,41 @@
+package com.newrelic.opentracing.dt;
+
+/**
+ * An outbound payload rendered from a {@link PayloadTemplate} as of a point in time, in the newrelic header's formats
+ * and as W3C Trace Context headers.
+ */
+public final class OutboundPayload implements DistributedTracePayload {
+
+    private final PayloadTemplate template;
+    private final long timestamp;
+
+    OutboundPayload(PayloadTemplate template, long timestamp) {
+        this.template = template;
+        this.timestamp = timestamp;
+    }
+
+    @Override
+    public String text() {
+        return template.text(timestamp);
+    }
+
+    @Override
+    public String httpSafe() {
+        return template.httpSafe(timestamp);
+    }
+
+    /**
+     * @return the traceparent header, or null if the trace or span id cannot be written as one
+     */
+    public String traceParent() {
+        return template.traceParent();
+    }
+
+    /**
+     * @return the tracestate header, or null if there is no traceparent
+     */
+    public String traceState() {
+        return template.traceState(timestamp);
+    }
+
+}
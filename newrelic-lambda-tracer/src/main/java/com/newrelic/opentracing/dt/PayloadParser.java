@@ -0,0 +1,792 @@
+package com.newrelic.opentracing.dt;
+
+import com.newrelic.opentracing.logging.Log;
+import com.newrelic.opentracing.util.Base64;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Single pass parser for inbound distributed trace payloads, which reads the fields of the fixed v/d schema straight
+ * from the decoded bytes. Only the field values that end up in the payload are turned into Strings, and the account,
+ * trust key, application and parent type of the last payload are reused when they repeat.
+ *
+ * Input must be well formed JSON, unlike with json-simple, which skipped stray commas and colons and read an
+ * unterminated string as the end of the input. Integers must fit in a long, and the last of duplicate keys wins,
+ * as with json-simple. Malformed input returns null, nothing is thrown.
+ */
+final class PayloadParser {
+
+    private static final int EOF = 0;
+    private static final int LEFT_BRACE = 1;
+    private static final int RIGHT_BRACE = 2;
+    private static final int LEFT_SQUARE = 3;
+    private static final int RIGHT_SQUARE = 4;
+    private static final int COMMA = 5;
+    private static final int COLON = 6;
+    private static final int STRING = 7;
+    private static final int NUMBER = 8;
+    private static final int TRUE = 9;
+    private static final int FALSE = 10;
+    private static final int NULL = 11;
+
+    // Returned instead of a key at the end of an object
+    private static final int END_OF_OBJECT = -1;
+
+    // Keys of the payload
+    private static final int OTHER = 0;
+    private static final int VERSION = 1;
+    private static final int DATA = 2;
+    private static final int PARENT_TYPE = 3;
+    private static final int ACCOUNT_ID = 4;
+    private static final int TRUSTED_ACCOUNT_KEY = 5;
+    private static final int APPLICATION_ID = 6;
+    private static final int TIMESTAMP = 7;
+    private static final int GUID = 8;
+    private static final int TRACE_ID = 9;
+    private static final int TX = 10;
+    private static final int PRIORITY = 11;
+    private static final int SAMPLED = 12;
+
+    // States of the optional priority and sampled fields
+    private static final int ABSENT = 0;
+    private static final int PRESENT = 1;
+    private static final int WRONG_TYPE = 2;
+
+    // Held by a String field whose value had another type
+    private static final Object WRONG_TYPE_VALUE = new Object();
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // The last decoded value of the account, trust key, application and parent type fields. Racy, Strings are immutable.
+    private static final String[] RECENT_VALUES = new String[APPLICATION_ID - PARENT_TYPE + 1];
+
+    private static final Malformed MALFORMED = new Malformed();
+
+    private final byte[] in;
+    private final int end;
+    private int pos;
+
+    // The last token
+    private int tokenStart;
+    private int tokenEnd;
+    private boolean tokenEscaped;
+    private boolean tokenAscii;
+    private boolean tokenInteger;
+
+    private byte[] stack = new byte[8];
+
+    private boolean versionValid;
+    private long majorVersion;
+    private boolean dataValid;
+    // String fields, a String, null or WRONG_TYPE_VALUE
+    private Object parentTypeValue;
+    private Object accountIdValue;
+    private Object trustKeyValue;
+    private Object applicationIdValue;
+    private boolean timestampValid;
+    private long timestamp;
+    private Object guidValue;
+    private Object traceIdValue;
+    private Object txnIdValue;
+    private int priorityState;
+    private float priority;
+    private int sampledState;
+    private boolean sampled;
+
+    private PayloadParser(byte[] in, int offset, int length) {
+        this.in = in;
+        this.pos = offset;
+        this.end = offset + length;
+    }
+
+    /**
+     * @param payload JSON text, or Base64 encoded JSON text
+     * @return the payload, or null if it is malformed, untrusted or from a newer major version
+     */
+    static DistributedTracePayloadImpl parse(String payload) {
+        if (payload == null) {
+            Log.getInstance().debug("Incoming distributed trace payload is null.");
+            return null;
+        }
+
+        final String trimmed = payload.trim();
+        final byte[] bytes;
+        if (!trimmed.isEmpty() && trimmed.charAt(0) != '{' && trimmed.charAt(0) != '[') {
+            // This must be base64 encoded, decode it
+            bytes = Base64.decode(trimmed);
+        } else {
+            bytes = trimmed.getBytes(StandardCharsets.UTF_8);
+        }
+        return parse(bytes, 0, bytes.length);
+    }
+
+    static DistributedTracePayloadImpl parse(byte[] json, int offset, int length) {
+        try {
+            return new PayloadParser(json, offset, length).parsePayload();
+        } catch (Malformed | RuntimeException e) {
+            Log.getInstance().debug("Failed to parse distributed trace payload.");
+            return null;
+        }
+    }
+
+    private DistributedTracePayloadImpl parsePayload() throws Malformed {
+        if (next() != LEFT_BRACE) {
+            // Not an object, whatever else it is
+            return null;
+        }
+        int key;
+        for (boolean first = true; (key = nextKey(first)) != END_OF_OBJECT; first = false) {
+            final int token = next();
+            if (key == VERSION) {
+                version(token);
+            } else if (key == DATA) {
+                data(token);
+            } else {
+                skipValue(token);
+            }
+        }
+        if (next() != EOF) {
+            throw MALFORMED;
+        }
+        return payload();
+    }
+
+    private DistributedTracePayloadImpl payload() {
+        final DistributedTracing distributedTraceService = DistributedTracing.INSTANCE;
+        if (!versionValid || !dataValid) {
+            return fail("Invalid distributed trace payload, version or data missing.");
+        }
+        if (majorVersion > distributedTraceService.getMajorSupportedCatVersion()) {
+            Log.getInstance().debug(() -> "Incoming distributed trace payload major version: " + majorVersion + " is newer than supported agent"
+                    + " version: " + distributedTraceService.getMajorSupportedCatVersion() + ". Ignoring payload.");
+            return null;
+        }
+        if (parentTypeValue == WRONG_TYPE_VALUE || accountIdValue == WRONG_TYPE_VALUE || trustKeyValue == WRONG_TYPE_VALUE
+                || applicationIdValue == WRONG_TYPE_VALUE || guidValue == WRONG_TYPE_VALUE || traceIdValue == WRONG_TYPE_VALUE
+                || txnIdValue == WRONG_TYPE_VALUE || priorityState == WRONG_TYPE || sampledState == WRONG_TYPE) {
+            return fail("Invalid distributed trace payload, a field has the wrong type.");
+        }
+        final String parentType = (String) parentTypeValue;
+        final String accountId = (String) accountIdValue;
+        final String trustKey = (String) trustKeyValue;
+        final String applicationId = (String) applicationIdValue;
+        final String guid = (String) guidValue;
+        final String traceId = (String) traceIdValue;
+        final String txnId = (String) txnIdValue;
+        if (accountId == null) {
+            return fail("Invalid distributed trace payload, missing accountId.");
+        }
+        if (applicationId == null) {
+            return fail("Incoming distributed trace payload is missing application id.");
+        }
+
+        // If payload doesn't have a tk, use accountId
+        final String trustedAccountKey = distributedTraceService.getTrustKey();
+        if (trustedAccountKey == null || !trustedAccountKey.equals(trustKey == null ? accountId : trustKey)) {
+            Log.getInstance().debug(() -> "Incoming distributed trace payload trustKey: " + trustKey + " does not match trusted account key: "
+                    + trustedAccountKey + ". Ignoring payload.");
+            return null;
+        }
+
+        if (!timestampValid || timestamp <= 0) {
+            return fail("Invalid distributed trace payload, missing timestamp.");
+        }
+        if (parentType == null) {
+            return fail("Incoming distributed trace payload is missing type.");
+        }
+        if (traceId == null) {
+            return fail("Incoming distributed trace payload is missing traceId.");
+        }
+        if (guid == null && txnId == null) {
+            // caller has span events disabled and there's no transaction? they must be using txn-less api, but no spans?
+            return fail("Incoming distributed trace payload is missing guid and transaction id.");
+        }
+
+        return new DistributedTracePayloadImpl(timestamp, parentType, accountId, trustKey, applicationId, guid, traceId, txnId,
+                priorityState == PRESENT ? priority : null, sampledState == PRESENT ? sampled : null);
+    }
+
+    private static DistributedTracePayloadImpl fail(String message) {
+        Log.getInstance().debug(message);
+        return null;
+    }
+
+    /**
+     * The major version is the first element of the v array.
+     */
+    private void version(int token) throws Malformed {
+        versionValid = false;
+        if (token != LEFT_SQUARE) {
+            skipValue(token);
+            return;
+        }
+        token = next();
+        if (token == RIGHT_SQUARE) {
+            return;
+        }
+        if (token == NUMBER && tokenInteger) {
+            majorVersion = parseLong();
+            versionValid = true;
+        }
+        skipValue(token);
+        while ((token = next()) != RIGHT_SQUARE) {
+            if (token != COMMA) {
+                throw MALFORMED;
+            }
+            skipValue(next());
+        }
+    }
+
+    private void data(int token) throws Malformed {
+        parentTypeValue = accountIdValue = trustKeyValue = applicationIdValue = guidValue = traceIdValue = txnIdValue = null;
+        timestampValid = false;
+        priorityState = sampledState = ABSENT;
+        dataValid = token == LEFT_BRACE;
+        if (!dataValid) {
+            skipValue(token);
+            return;
+        }
+        int key;
+        for (boolean first = true; (key = nextKey(first)) != END_OF_OBJECT; first = false) {
+            token = next();
+            switch (key) {
+                case PARENT_TYPE:
+                    parentTypeValue = stringValue(token, PARENT_TYPE);
+                    break;
+                case ACCOUNT_ID:
+                    accountIdValue = stringValue(token, ACCOUNT_ID);
+                    break;
+                case TRUSTED_ACCOUNT_KEY:
+                    trustKeyValue = stringValue(token, TRUSTED_ACCOUNT_KEY);
+                    break;
+                case APPLICATION_ID:
+                    applicationIdValue = stringValue(token, APPLICATION_ID);
+                    break;
+                case GUID:
+                    guidValue = stringValue(token, -1);
+                    break;
+                case TRACE_ID:
+                    traceIdValue = stringValue(token, -1);
+                    break;
+                case TX:
+                    txnIdValue = stringValue(token, -1);
+                    break;
+                case TIMESTAMP:
+                    timestampValid = token == NUMBER && tokenInteger;
+                    if (timestampValid) {
+                        timestamp = parseLong();
+                    }
+                    skipValue(token);
+                    break;
+                case PRIORITY:
+                    if (token == NUMBER) {
+                        priority = tokenInteger ? (float) parseLong() : (float) parseDouble();
+                        priorityState = PRESENT;
+                    } else {
+                        priorityState = token == NULL ? ABSENT : WRONG_TYPE;
+                    }
+                    skipValue(token);
+                    break;
+                case SAMPLED:
+                    if (token == TRUE || token == FALSE) {
+                        sampled = token == TRUE;
+                        sampledState = PRESENT;
+                    } else {
+                        sampledState = token == NULL ? ABSENT : WRONG_TYPE;
+                    }
+                    skipValue(token);
+                    break;
+                default:
+                    skipValue(token);
+            }
+        }
+    }
+
+    private Object stringValue(int token, int slot) throws Malformed {
+        if (token == STRING) {
+            return slot < 0 ? decodeString() : recentOrDecode(slot);
+        }
+        skipValue(token);
+        return token == NULL ? null : WRONG_TYPE_VALUE;
+    }
+
+    /**
+     * Read the key of the next member of an object, up to its value.
+     *
+     * @param first true right after the opening brace, false after a value
+     * @return the key, or END_OF_OBJECT after the closing brace
+     */
+    private int nextKey(boolean first) throws Malformed {
+        int token = next();
+        if (token == RIGHT_BRACE) {
+            return END_OF_OBJECT;
+        }
+        if (!first) {
+            if (token != COMMA) {
+                throw MALFORMED;
+            }
+            token = next();
+        }
+        if (token != STRING) {
+            throw MALFORMED;
+        }
+        final int key = key();
+        if (next() != COLON) {
+            throw MALFORMED;
+        }
+        return key;
+    }
+
+    /**
+     * Skip the value that starts with the token, checking it is well formed. Integers must fit in a long.
+     */
+    private void skipValue(int token) throws Malformed {
+        switch (token) {
+            case NUMBER:
+                if (tokenInteger) {
+                    parseLong();
+                }
+                return;
+            case STRING:
+            case TRUE:
+            case FALSE:
+            case NULL:
+                return;
+            case LEFT_BRACE:
+            case LEFT_SQUARE:
+                skipContainer(token);
+                return;
+            default:
+                throw MALFORMED;
+        }
+    }
+
+    private void skipContainer(int open) throws Malformed {
+        int depth = 0;
+        stack[depth++] = (byte) open;
+        // Right after an opening bracket, where neither a comma nor a value came yet
+        boolean first = true;
+        while (depth > 0) {
+            final boolean object = stack[depth - 1] == LEFT_BRACE;
+            int token = next();
+            if (token == (object ? RIGHT_BRACE : RIGHT_SQUARE)) {
+                depth--;
+                first = false;
+                continue;
+            }
+            if (!first) {
+                if (token != COMMA) {
+                    throw MALFORMED;
+                }
+                token = next();
+            }
+            if (object) {
+                if (token != STRING || next() != COLON) {
+                    throw MALFORMED;
+                }
+                token = next();
+            }
+            if (token == LEFT_BRACE || token == LEFT_SQUARE) {
+                depth = push(depth, token);
+                first = true;
+            } else {
+                skipValue(token);
+                first = false;
+            }
+        }
+    }
+
+    private int push(int depth, int token) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth] = (byte) token;
+        return depth + 1;
+    }
+
+    /**
+     * Read the next token. Whitespace is space, tab, CR and LF, strings may hold any character but an unescaped quote,
+     * a backslash or a control character, and numbers have no leading zeros.
+     */
+    private int next() throws Malformed {
+        while (pos < end) {
+            final byte b = in[pos];
+            if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        if (pos == end) {
+            return EOF;
+        }
+        final byte b = in[pos];
+        switch (b) {
+            case '{':
+                pos++;
+                return LEFT_BRACE;
+            case '}':
+                pos++;
+                return RIGHT_BRACE;
+            case '[':
+                pos++;
+                return LEFT_SQUARE;
+            case ']':
+                pos++;
+                return RIGHT_SQUARE;
+            case ',':
+                pos++;
+                return COMMA;
+            case ':':
+                pos++;
+                return COLON;
+            case '"':
+                return string();
+            case 't':
+                return literal("true", TRUE);
+            case 'f':
+                return literal("false", FALSE);
+            case 'n':
+                return literal("null", NULL);
+            default:
+                if (b == '-' || (b >= '0' && b <= '9')) {
+                    return number();
+                }
+                throw MALFORMED;
+        }
+    }
+
+    private int literal(String literal, int token) throws Malformed {
+        if (end - pos < literal.length()) {
+            throw MALFORMED;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (in[pos + i] != literal.charAt(i)) {
+                throw MALFORMED;
+            }
+        }
+        pos += literal.length();
+        return token;
+    }
+
+    private int string() throws Malformed {
+        tokenStart = ++pos;
+        tokenEscaped = false;
+        tokenAscii = true;
+        while (pos < end) {
+            final byte b = in[pos];
+            if (b == '"') {
+                tokenEnd = pos++;
+                return STRING;
+            } else if (b == '\\') {
+                tokenEscaped = true;
+                pos += escapeLength(pos);
+            } else if (b >= 0 && b < 0x20) {
+                throw MALFORMED;
+            } else {
+                if (b < 0) {
+                    tokenAscii = false;
+                }
+                pos++;
+            }
+        }
+        // Unterminated
+        throw MALFORMED;
+    }
+
+    private int number() throws Malformed {
+        tokenStart = pos;
+        if (in[pos] == '-') {
+            pos++;
+        }
+        final int integerStart = pos;
+        final int integerDigits = digits();
+        if (integerDigits == 0 || (integerDigits > 1 && in[integerStart] == '0')) {
+            throw MALFORMED;
+        }
+        tokenInteger = true;
+        if (pos + 1 < end && in[pos] == '.' && isDigit(in[pos + 1])) {
+            pos++;
+            digits();
+            tokenInteger = false;
+        }
+        if (pos < end && (in[pos] == 'e' || in[pos] == 'E')) {
+            int exponent = pos + 1;
+            if (exponent < end && (in[exponent] == '+' || in[exponent] == '-')) {
+                exponent++;
+            }
+            if (exponent < end && isDigit(in[exponent])) {
+                pos = exponent;
+                digits();
+                tokenInteger = false;
+            }
+        }
+        tokenEnd = pos;
+        return NUMBER;
+    }
+
+    private int digits() {
+        final int start = pos;
+        while (pos < end && isDigit(in[pos])) {
+            pos++;
+        }
+        return pos - start;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Same as Long.valueOf on the integer token, which json-simple fails the whole parse on when it overflows.
+     */
+    private long parseLong() throws Malformed {
+        int i = tokenStart;
+        final boolean negative = in[i] == '-';
+        if (negative) {
+            i++;
+        }
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multiplyLimit = limit / 10;
+        long result = 0;
+        // Accumulate negatively, like Long.parseLong, so Long.MIN_VALUE fits
+        for (; i < tokenEnd; i++) {
+            final int digit = in[i] - '0';
+            if (result < multiplyLimit) {
+                throw MALFORMED;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw MALFORMED;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Same as Double.valueOf on the double token. Plain decimals with up to 15 or so significant digits, like
+     * priorities, are exact in a double and divided by an exact power of ten, which rounds the same way.
+     */
+    private double parseDouble() {
+        int i = tokenStart;
+        final boolean negative = in[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        for (; i < tokenEnd; i++) {
+            final byte b = in[i];
+            if (b == '.') {
+                fraction = true;
+                continue;
+            }
+            if (b < '0' || b > '9' || mantissa >= MAX_EXACT_MANTISSA / 10) {
+                // An exponent or too many digits
+                return Double.parseDouble(new String(in, tokenStart, tokenEnd - tokenStart, StandardCharsets.ISO_8859_1));
+            }
+            mantissa = mantissa * 10 + (b - '0');
+            if (fraction) {
+                fractionDigits++;
+            }
+        }
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(in, tokenStart, tokenEnd - tokenStart, StandardCharsets.ISO_8859_1));
+        }
+        final double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private int key() throws Malformed {
+        if (tokenEscaped) {
+            return key(decodeString());
+        }
+        final int length = tokenEnd - tokenStart;
+        if (length == 1) {
+            return in[tokenStart] == 'v' ? VERSION : in[tokenStart] == 'd' ? DATA : OTHER;
+        }
+        if (length != 2) {
+            return OTHER;
+        }
+        final byte first = in[tokenStart];
+        final byte second = in[tokenStart + 1];
+        switch (first) {
+            case 't':
+                return second == 'y' ? PARENT_TYPE : second == 'k' ? TRUSTED_ACCOUNT_KEY : second == 'i' ? TIMESTAMP : second == 'r' ? TRACE_ID
+                        : second == 'x' ? TX : OTHER;
+            case 'a':
+                return second == 'c' ? ACCOUNT_ID : second == 'p' ? APPLICATION_ID : OTHER;
+            case 'i':
+                return second == 'd' ? GUID : OTHER;
+            case 'p':
+                return second == 'r' ? PRIORITY : OTHER;
+            case 's':
+                return second == 'a' ? SAMPLED : OTHER;
+            default:
+                return OTHER;
+        }
+    }
+
+    private static int key(String key) {
+        switch (key) {
+            case "v":
+                return VERSION;
+            case "d":
+                return DATA;
+            case "ty":
+                return PARENT_TYPE;
+            case "ac":
+                return ACCOUNT_ID;
+            case "tk":
+                return TRUSTED_ACCOUNT_KEY;
+            case "ap":
+                return APPLICATION_ID;
+            case "ti":
+                return TIMESTAMP;
+            case "id":
+                return GUID;
+            case "tr":
+                return TRACE_ID;
+            case "tx":
+                return TX;
+            case "pr":
+                return PRIORITY;
+            case "sa":
+                return SAMPLED;
+            default:
+                return OTHER;
+        }
+    }
+
+    /**
+     * Reuse the value this field had in the last payload if it is the same, it usually is.
+     */
+    private String recentOrDecode(int field) {
+        final int slot = field - PARENT_TYPE;
+        if (tokenEscaped || !tokenAscii) {
+            return decodeString();
+        }
+        final String recent = RECENT_VALUES[slot];
+        final int length = tokenEnd - tokenStart;
+        if (recent != null && recent.length() == length) {
+            int i = 0;
+            while (i < length && recent.charAt(i) == in[tokenStart + i]) {
+                i++;
+            }
+            if (i == length) {
+                return recent;
+            }
+        }
+        final String value = decodeString();
+        RECENT_VALUES[slot] = value;
+        return value;
+    }
+
+    private String decodeString() {
+        if (!tokenEscaped) {
+            return new String(in, tokenStart, tokenEnd - tokenStart, tokenAscii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        }
+        final StringBuilder value = new StringBuilder(tokenEnd - tokenStart);
+        int segmentStart = tokenStart;
+        int i = tokenStart;
+        while (i < tokenEnd) {
+            if (in[i] != '\\') {
+                i++;
+                continue;
+            }
+            value.append(new String(in, segmentStart, i - segmentStart, StandardCharsets.UTF_8));
+            // Checked by the lexer
+            final int length = in[i + 1] == 'u' ? 6 : 2;
+            switch (in[i + 1]) {
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    value.append((char) (hexValue(in[i + 2]) << 12 | hexValue(in[i + 3]) << 8 | hexValue(in[i + 4]) << 4 | hexValue(in[i + 5])));
+                    break;
+                default:
+                    value.append((char) in[i + 1]);
+            }
+            i += length;
+            segmentStart = i;
+        }
+        value.append(new String(in, segmentStart, tokenEnd - segmentStart, StandardCharsets.UTF_8));
+        return value.toString();
+    }
+
+    /**
+     * @return the length of the escape sequence starting with the backslash at the index, which must start one
+     */
+    private int escapeLength(int backslash) throws Malformed {
+        if (backslash + 1 < end) {
+            switch (in[backslash + 1]) {
+                case '"':
+                case '\\':
+                case '/':
+                case 'b':
+                case 'f':
+                case 'n':
+                case 'r':
+                case 't':
+                    return 2;
+                case 'u':
+                    if (end - backslash >= 6 && hexValue(in[backslash + 2]) >= 0 && hexValue(in[backslash + 3]) >= 0 && hexValue(in[backslash + 4]) >= 0
+                            && hexValue(in[backslash + 5]) >= 0) {
+                        return 6;
+                    }
+                    throw MALFORMED;
+                default:
+                    throw MALFORMED;
+            }
+        }
+        throw MALFORMED;
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        } else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        } else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Thrown to stop parsing, preallocated and without a stack trace.
+     */
+    private static final class Malformed extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        Malformed() {
+            super("Malformed distributed trace payload", null, false, false);
+        }
+
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.newrelic.opentracing.dt;
+
+import com.newrelic.opentracing.util.Base64;
+import com.newrelic.opentracing.util.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static com.newrelic.opentracing.util.DistributedTraceUtil.ACCOUNT_ID;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.APPLICATION_ID;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.DATA;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.GUID;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.PARENT_TYPE;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.PRIORITY;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.SAMPLED;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.TIMESTAMP;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.TRACE_ID;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.TRUSTED_ACCOUNT_KEY;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.TX;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.VERSION;
+
+/**
+ * An outbound payload serialized once, with the timestamp spliced in per use. The timestamp is the last member, and
+ * the text before it is padded with spaces to a multiple of 3 bytes so its base64 encoding can be cached too: only
+ * the timestamp and the closing braces are encoded for each payload. The last rendering is kept, so payloads
+ * created within the same millisecond share their Strings. The W3C headers are templated the same way, the timestamp
+ * also ends our tracestate entry.
+ */
+public final class PayloadTemplate {
+
+    private static final byte[] SUFFIX = { '}', '}' };
+
+    private final DistributedTracePayloadImpl payload;
+    private final String textPrefix;
+    private final String httpSafePrefix;
+    private final String traceParent;
+    private final String traceStatePrefix;
+    private final String otherVendors;
+
+    private volatile Rendered lastText = new Rendered(Long.MIN_VALUE, null);
+    private volatile Rendered lastHttpSafe = new Rendered(Long.MIN_VALUE, null);
+    private volatile Rendered lastTraceState = new Rendered(Long.MIN_VALUE, null);
+
+    private static final class Rendered {
+
+        final long timestamp;
+        final String value;
+
+        Rendered(long timestamp, String value) {
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+
+    }
+
+    /**
+     * @param payload an outbound payload, its timestamp is ignored
+     * @param otherVendors other vendors' tracestate entries to pass on, or null
+     */
+    public PayloadTemplate(DistributedTracePayloadImpl payload, String otherVendors) {
+        this.payload = payload;
+        this.traceParent = W3CTraceContext.traceParent(payload.traceId, payload.guid, payload.sampled);
+        this.traceStatePrefix = traceParent == null ? null : W3CTraceContext.traceStatePrefix(payload);
+        this.otherVendors = otherVendors;
+        final StringBuilder prefix = new StringBuilder(writePrefix(payload));
+        // Members may hold non-ASCII characters, so pad by the length of the encoded bytes
+        final int length = prefix.toString().getBytes(Base64.UTF_8).length;
+        for (int padding = (3 - length % 3) % 3; padding > 0; padding--) {
+            // Before the quote opening the timestamp's name
+            prefix.insert(prefix.length() - TIMESTAMP.length() - 3, ' ');
+        }
+        this.textPrefix = prefix.toString();
+        this.httpSafePrefix = Base64.encode(textPrefix.getBytes(Base64.UTF_8));
+    }
+
+    private static String writePrefix(DistributedTracePayloadImpl payload) {
+        final DistributedTracing distributedTraceService = DistributedTracing.INSTANCE;
+        final StringWriter out = new StringWriter(256);
+        final JsonWriter writer = new JsonWriter(out);
+        try {
+            writer.beginObject();
+            writer.name(VERSION).beginArray()
+                    .value((long) distributedTraceService.getMajorSupportedCatVersion())
+                    .value((long) distributedTraceService.getMinorSupportedCatVersion())
+                    .endArray();
+            writer.name(DATA).beginObject();
+            writer.name(PARENT_TYPE).value(payload.parentType);
+            writer.name(ACCOUNT_ID).value(payload.accountId);
+            if (!payload.accountId.equals(payload.trustKey)) {
+                writer.name(TRUSTED_ACCOUNT_KEY).value(payload.trustKey);
+            }
+            writer.name(APPLICATION_ID).value(payload.applicationId);
+            if (payload.guid != null) {
+                writer.name(GUID).value(payload.guid);
+            }
+            writer.name(TRACE_ID).value(payload.traceId);
+            writer.name(PRIORITY).value(payload.priority.floatValue());
+            writer.name(SAMPLED).value(payload.sampled.booleanValue());
+            if (payload.txnId != null) {
+                writer.name(TX).value(payload.txnId);
+            }
+            // Everything up to the timestamp's value
+            writer.name(TIMESTAMP);
+            writer.flush();
+        } catch (IOException e) {
+            // A StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return true if the template renders the payload for these values
+     */
+    public boolean isFor(String traceId, String guid, String txnId, float priority) {
+        return payload.priority == priority && equals(payload.guid, guid) && equals(payload.traceId, traceId) && equals(payload.txnId, txnId);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * @return the payload as of the timestamp
+     */
+    public OutboundPayload at(long timestamp) {
+        return new OutboundPayload(this, timestamp);
+    }
+
+    String text(long timestamp) {
+        final Rendered last = lastText;
+        if (last.timestamp == timestamp) {
+            return last.value;
+        }
+        final String text = textPrefix + timestamp + "}}";
+        lastText = new Rendered(timestamp, text);
+        return text;
+    }
+
+    String httpSafe(long timestamp) {
+        final Rendered last = lastHttpSafe;
+        if (last.timestamp == timestamp) {
+            return last.value;
+        }
+        // The prefix ends on a 3 byte boundary, so the suffix encodes on its own
+        final String httpSafe = httpSafePrefix + Base64.encode(suffixBytes(timestamp));
+        lastHttpSafe = new Rendered(timestamp, httpSafe);
+        return httpSafe;
+    }
+
+    String traceParent() {
+        return traceParent;
+    }
+
+    String traceState(long timestamp) {
+        if (traceStatePrefix == null) {
+            return null;
+        }
+        final Rendered last = lastTraceState;
+        if (last.timestamp == timestamp) {
+            return last.value;
+        }
+        final String traceState = otherVendors == null ? traceStatePrefix + timestamp : traceStatePrefix + timestamp + ',' + otherVendors;
+        lastTraceState = new Rendered(timestamp, traceState);
+        return traceState;
+    }
+
+    private static byte[] suffixBytes(long timestamp) {
+        final String digits = Long.toString(timestamp);
+        final byte[] bytes = new byte[digits.length() + SUFFIX.length];
+        for (int i = 0; i < digits.length(); i++) {
+            bytes[i] = (byte) digits.charAt(i);
+        }
+        System.arraycopy(SUFFIX, 0, bytes, digits.length(), SUFFIX.length);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,348 @@
+package com.newrelic.opentracing.dt;
+
+import com.newrelic.opentracing.logging.Log;
+
+import java.math.BigDecimal;
+
+/**
+ * Reads and writes the W3C Trace Context headers. A traceparent is version-traceId-parentId-flags with fixed widths,
+ * so it is checked character by character. The tracestate is a list of vendor entries, of which only the New Relic
+ * entry under our trust key, or our account id when there is none, is read:
+ * version-parentType-account-application-spanId-transactionId-sampled-priority-timestamp.
+ * Other vendors' entries are passed on untouched.
+ */
+public final class W3CTraceContext {
+
+    public static final String TRACE_PARENT = "traceparent";
+    public static final String TRACE_STATE = "tracestate";
+
+    private static final int TRACE_PARENT_LENGTH = 55;
+    private static final int TRACE_ID_START = 3;
+    private static final int PARENT_ID_START = 36;
+    private static final int FLAGS_START = 53;
+    private static final int SAMPLED_FLAG = 1;
+    private static final String VERSION = "00";
+    private static final String NEW_RELIC_VENDOR = "@nr=";
+    // A tracestate holds up to 32 entries, ours first
+    private static final int MAX_OTHER_ENTRIES = 31;
+    private static final String[] PARENT_TYPES = { "App", "Browser", "Mobile" };
+
+    private W3CTraceContext() {
+    }
+
+    /**
+     * @param traceParent the traceparent header
+     * @param traceState the tracestate header, or null
+     * @return the payload, with only the trace and parent ids and the traceparent's sampled flag if there is no New Relic
+     * entry for our trust key, or null if the traceparent is malformed
+     */
+    public static DistributedTracePayloadImpl parse(String traceParent, String traceState) {
+        if (!isValidTraceParent(traceParent)) {
+            Log.getInstance().debug(() -> "Incoming traceparent is malformed: " + traceParent + ". Ignoring it.");
+            return null;
+        }
+        final String header = trim(traceParent);
+        // Ids we padded to 128 bits are used as they were generated
+        final String traceId = header.startsWith("0000000000000000", TRACE_ID_START)
+                ? header.substring(TRACE_ID_START + 16, PARENT_ID_START - 1)
+                : header.substring(TRACE_ID_START, PARENT_ID_START - 1);
+        final String parentId = header.substring(PARENT_ID_START, FLAGS_START - 1);
+
+        final String key = traceStateKey();
+        final int entry = findEntry(traceState, key);
+        if (entry >= 0) {
+            final DistributedTracePayloadImpl payload = parseEntry(traceState, entry + key.length() + NEW_RELIC_VENDOR.length(),
+                    entryEnd(traceState, entry), key, traceId, parentId);
+            if (payload != null) {
+                return payload;
+            }
+            Log.getInstance().debug(() -> "Incoming tracestate entry for " + key + " is malformed: " + traceState + ". Ignoring it.");
+        }
+        // Only the traceparent's sampled flag to go on, and no timestamp to measure the transport duration with
+        final boolean sampled = (Character.digit(header.charAt(FLAGS_START + 1), 16) & SAMPLED_FLAG) != 0;
+        return new DistributedTracePayloadImpl(DistributedTracePayloadImpl.NO_TIMESTAMP, null, null, null, null, parentId, traceId, null, null,
+                sampled);
+    }
+
+    /**
+     * @return the entries of other vendors, to pass on after ours, or null if there are none
+     */
+    public static String otherVendors(String traceState) {
+        if (traceState == null) {
+            return null;
+        }
+        final String key = traceStateKey();
+        // Every entry under our key is replaced by the one we write
+        final String others = trimList(traceState, key == null ? null : key + NEW_RELIC_VENDOR, MAX_OTHER_ENTRIES);
+        return others.isEmpty() ? null : others;
+    }
+
+    /**
+     * @return the key of our tracestate entry
+     */
+    static String traceStateKey() {
+        final DistributedTracing distributedTracing = DistributedTracing.INSTANCE;
+        return traceStateKey(distributedTracing.getTrustKey(), distributedTracing.getAccountId());
+    }
+
+    static String traceStateKey(String trustKey, String accountId) {
+        return trustKey == null ? accountId : trustKey;
+    }
+
+    static boolean isValidTraceParent(String traceParent) {
+        if (traceParent == null) {
+            return false;
+        }
+        traceParent = trim(traceParent);
+        final int length = traceParent.length();
+        if (length < TRACE_PARENT_LENGTH || traceParent.charAt(2) != '-' || traceParent.charAt(PARENT_ID_START - 1) != '-'
+                || traceParent.charAt(FLAGS_START - 1) != '-') {
+            return false;
+        }
+        if (!isLowerHex(traceParent, 0, 2) || traceParent.startsWith("ff")) {
+            return false;
+        }
+        // Later versions may add fields after a dash
+        if (traceParent.startsWith(VERSION)
+                ? length != TRACE_PARENT_LENGTH
+                : length > TRACE_PARENT_LENGTH && traceParent.charAt(TRACE_PARENT_LENGTH) != '-') {
+            return false;
+        }
+        return isLowerHex(traceParent, TRACE_ID_START, PARENT_ID_START - 1) && !isZero(traceParent, TRACE_ID_START, PARENT_ID_START - 1)
+                && isLowerHex(traceParent, PARENT_ID_START, FLAGS_START - 1) && !isZero(traceParent, PARENT_ID_START, FLAGS_START - 1)
+                && isLowerHex(traceParent, FLAGS_START, TRACE_PARENT_LENGTH);
+    }
+
+    /**
+     * @return the traceparent for the ids, or null if they are not 64 or 128 bit lower case hex ids
+     */
+    static String traceParent(String traceId, String guid, boolean sampled) {
+        if (traceId == null || guid == null || (traceId.length() != 16 && traceId.length() != 32) || guid.length() != 16
+                || !isLowerHex(traceId, 0, traceId.length()) || !isLowerHex(guid, 0, 16)) {
+            return null;
+        }
+        final char[] header = new char[TRACE_PARENT_LENGTH];
+        VERSION.getChars(0, 2, header, 0);
+        header[2] = '-';
+        final int padding = 32 - traceId.length();
+        for (int i = 0; i < padding; i++) {
+            header[TRACE_ID_START + i] = '0';
+        }
+        traceId.getChars(0, traceId.length(), header, TRACE_ID_START + padding);
+        header[PARENT_ID_START - 1] = '-';
+        guid.getChars(0, 16, header, PARENT_ID_START);
+        header[FLAGS_START - 1] = '-';
+        header[FLAGS_START] = '0';
+        header[FLAGS_START + 1] = sampled ? '1' : '0';
+        return new String(header);
+    }
+
+    /**
+     * @return our tracestate entry up to the timestamp, which comes last
+     */
+    static String traceStatePrefix(DistributedTracePayloadImpl payload) {
+        final StringBuilder entry = new StringBuilder(96).append(traceStateKey(payload.trustKey, payload.accountId))
+                .append(NEW_RELIC_VENDOR).append("0-0-")
+                .append(payload.accountId).append('-')
+                .append(payload.applicationId).append('-')
+                .append(payload.guid == null ? "" : payload.guid).append('-')
+                .append(payload.txnId == null ? "" : payload.txnId).append('-')
+                .append(payload.sampled ? '1' : '0').append('-');
+        // No exponent, whatever the priority
+        entry.append(new BigDecimal(payload.priority.toString()).toPlainString()).append('-');
+        return entry.toString();
+    }
+
+    /**
+     * @return the start of our entry in the list, or -1
+     */
+    private static int findEntry(String traceState, String key) {
+        if (traceState == null || key == null) {
+            return -1;
+        }
+        final int length = traceState.length();
+        int start = 0;
+        while (start < length) {
+            while (start < length && isWhitespace(traceState.charAt(start))) {
+                start++;
+            }
+            if (traceState.startsWith(key, start) && traceState.startsWith(NEW_RELIC_VENDOR, start + key.length())) {
+                return start;
+            }
+            final int comma = traceState.indexOf(',', start);
+            if (comma < 0) {
+                return -1;
+            }
+            start = comma + 1;
+        }
+        return -1;
+    }
+
+    private static int entryEnd(String traceState, int entry) {
+        final int comma = traceState.indexOf(',', entry);
+        return comma < 0 ? traceState.length() : comma;
+    }
+
+    private static DistributedTracePayloadImpl parseEntry(String traceState, int start, int end, String trustKey, String traceId,
+            String parentId) {
+        while (end > start && isWhitespace(traceState.charAt(end - 1))) {
+            end--;
+        }
+        // The fields, which may be followed by more in later versions
+        final int[] dashes = new int[8];
+        int fieldStart = start;
+        for (int i = 0; i < dashes.length; i++) {
+            final int dash = traceState.indexOf('-', fieldStart);
+            if (dash < 0 || dash >= end) {
+                return null;
+            }
+            dashes[i] = dash;
+            fieldStart = dash + 1;
+        }
+        int timestampEnd = traceState.indexOf('-', fieldStart);
+        if (timestampEnd < 0 || timestampEnd > end) {
+            timestampEnd = end;
+        }
+
+        if (!isDigits(traceState, start, dashes[0]) || dashes[1] - dashes[0] != 2) {
+            return null;
+        }
+        final int parentType = traceState.charAt(dashes[0] + 1) - '0';
+        if (parentType < 0 || parentType >= PARENT_TYPES.length) {
+            return null;
+        }
+        final String accountId = field(traceState, dashes[1] + 1, dashes[2]);
+        final String applicationId = field(traceState, dashes[2] + 1, dashes[3]);
+        final String txnId = field(traceState, dashes[4] + 1, dashes[5]);
+        if (accountId == null || applicationId == null || !isDigits(traceState, dashes[7] + 1, timestampEnd)) {
+            return null;
+        }
+
+        final Boolean sampled;
+        final int sampledLength = dashes[6] - dashes[5] - 1;
+        if (sampledLength == 0) {
+            sampled = null;
+        } else if (traceState.regionMatches(dashes[5] + 1, "1", 0, sampledLength)
+                || traceState.regionMatches(dashes[5] + 1, "true", 0, sampledLength)) {
+            sampled = Boolean.TRUE;
+        } else if (traceState.regionMatches(dashes[5] + 1, "0", 0, sampledLength)
+                || traceState.regionMatches(dashes[5] + 1, "false", 0, sampledLength)) {
+            sampled = Boolean.FALSE;
+        } else {
+            return null;
+        }
+
+        Float priority = null;
+        if (dashes[7] > dashes[6] + 1) {
+            // Written as a plain decimal, parseFloat alone would also take "NaN", "Infinity" and hex floats
+            if (!isDecimal(traceState, dashes[6] + 1, dashes[7])) {
+                return null;
+            }
+            priority = Float.parseFloat(traceState.substring(dashes[6] + 1, dashes[7]));
+            if (Float.isInfinite(priority)) {
+                return null;
+            }
+        }
+
+        final long timestamp;
+        try {
+            timestamp = Long.parseLong(traceState.substring(dashes[7] + 1, timestampEnd));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        // The parent is the span the traceparent names: the entry's span id is of the last New Relic span, which may not
+        // have made the call
+        return new DistributedTracePayloadImpl(timestamp, PARENT_TYPES[parentType], accountId, trustKey, applicationId, parentId, traceId,
+                txnId, priority, sampled);
+    }
+
+    private static String field(String s, int start, int end) {
+        return start == end ? null : s.substring(start, end);
+    }
+
+    private static boolean isDigits(String s, int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true for digits with at most one decimal point among them
+     */
+    private static boolean isDecimal(String s, int start, int end) {
+        final int point = s.indexOf('.', start);
+        if (point < 0 || point >= end) {
+            return isDigits(s, start, end);
+        }
+        return point > start && point < end - 1 && isDigits(s, start, point) && isDigits(s, point + 1, end);
+    }
+
+    private static boolean isLowerHex(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            final char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static String trim(String header) {
+        int start = 0;
+        int end = header.length();
+        while (start < end && isWhitespace(header.charAt(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(header.charAt(end - 1))) {
+            end--;
+        }
+        return start == 0 && end == header.length() ? header : header.substring(start, end);
+    }
+
+    /**
+     * @param excludedPrefix entries starting with it are left out, or null
+     * @return the first entries of the list, without empty entries and the whitespace around entries
+     */
+    private static String trimList(String list, String excludedPrefix, int maxEntries) {
+        final StringBuilder trimmed = new StringBuilder(list.length());
+        int entries = 0;
+        int start = 0;
+        while (start <= list.length() && entries < maxEntries) {
+            int comma = list.indexOf(',', start);
+            if (comma < 0) {
+                comma = list.length();
+            }
+            final String entry = trim(list.substring(start, comma));
+            if (!entry.isEmpty() && (excludedPrefix == null || !entry.startsWith(excludedPrefix))) {
+                if (trimmed.length() > 0) {
+                    trimmed.append(',');
+                }
+                trimmed.append(entry);
+                entries++;
+            }
+            start = comma + 1;
+        }
+        return trimmed.toString();
+    }
+
+}
@@ -1,8 +1,10 @@
 package com.newrelic.opentracing.events;
 
+import com.newrelic.opentracing.util.JsonWriter;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONAware;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
 
@@ -28,4 +30,30 @@ public abstract class Event implements JSONAware {
         return JSONArray.toJSONString(Arrays.asList(getIntrinsics(), getUserAttributes(), getAgentAttributes()));
     }
 
+    /**
+     * Stream the same P16 representation as {@link #toJSONString()} without building it as a String first.
+     */
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginArray();
+        writeIntrinsics(writer);
+        writeUserAttributes(writer);
+        writeAgentAttributes(writer);
+        writer.endArray();
+    }
+
+    /**
+     * Subclasses that keep their attributes in something other than a map can write them directly.
+     */
+    protected void writeIntrinsics(JsonWriter writer) throws IOException {
+        writer.map(getIntrinsics());
+    }
+
+    protected void writeUserAttributes(JsonWriter writer) throws IOException {
+        writer.map(getUserAttributes());
+    }
+
+    protected void writeAgentAttributes(JsonWriter writer) throws IOException {
+        writer.map(getAgentAttributes());
+    }
+
 }
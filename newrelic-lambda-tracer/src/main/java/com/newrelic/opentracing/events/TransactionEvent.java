@@ -4,14 +4,17 @@ import com.newrelic.opentracing.LambdaSpan;
 import com.newrelic.opentracing.LambdaSpanContext;
 import com.newrelic.opentracing.dt.DistributedTracing;
 import com.newrelic.opentracing.state.DistributedTracingState;
+import com.newrelic.opentracing.util.JsonWriter;
+import com.newrelic.opentracing.util.TagStore;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
 public class TransactionEvent extends Event {
 
     private final Map<String, Object> intrinsics = new HashMap<>();
-    private final Map<String, Object> userAttributes = new HashMap<>();
+    private final TagStore userAttributes;
     private final Map<String, Object> agentAttributes = new HashMap<>();
 
     public TransactionEvent(LambdaSpan span) {
@@ -31,7 +34,7 @@ public class TransactionEvent extends Event {
             }
         }
 
-        userAttributes.putAll(span.getTags());
+        userAttributes = span.getTagStore().copy();
         userAttributes.remove("http.status_code");
 
         String status = parseStatusCode(span.getTag("http.status_code"));
@@ -60,7 +63,12 @@ public class TransactionEvent extends Event {
 
     @Override
     public Map<String, Object> getUserAttributes() {
-        return userAttributes;
+        return userAttributes.asMap();
+    }
+
+    @Override
+    protected void writeUserAttributes(JsonWriter writer) throws IOException {
+        userAttributes.writeTo(writer, null);
     }
 
     @Override
@@ -0,0 +1,147 @@
+package com.newrelic.opentracing.logging;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Writes payload lines straight to standard out's file descriptor instead of going through System.out, which
+ * re-encodes every line and flushes it through a synchronized PrintStream. Each line, newline included, is copied
+ * into a reused direct buffer and handed to the channel in a single write whenever it fits.
+ *
+ * Enabled by setting NEW_RELIC_DIRECT_OUTPUT to true. If the channel fails, the rest of the line is written with System.out
+ * instead, starting where the channel left off.
+ */
+public class ChannelLogger implements Logger {
+
+    private static final byte[] DEBUG_PREFIX = "nr_debug: ".getBytes(StandardCharsets.US_ASCII);
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    // Payload lines are capped well below this by NEW_RELIC_MAX_PAYLOAD_BYTES, anything longer is written in pieces
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
+    private final WritableByteChannel channel;
+    private final boolean debugEnabled;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+    // Bytes of the current line that reached the channel
+    private int written;
+
+    /**
+     * Write to standard out.
+     */
+    public ChannelLogger(boolean debugEnabled) {
+        this(new FileOutputStream(FileDescriptor.out).getChannel(), debugEnabled);
+    }
+
+    public ChannelLogger(WritableByteChannel channel, boolean debugEnabled) {
+        this.channel = channel;
+        this.debugEnabled = debugEnabled;
+    }
+
+    @Override
+    public void out(String message) {
+        final byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        out(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public synchronized void out(byte[] ascii, int offset, int length) {
+        try {
+            writeLine(null, ascii, offset, length);
+        } catch (IOException e) {
+            finishLine(null, ascii, offset, length);
+        }
+    }
+
+    @Override
+    public synchronized void debug(String message) {
+        if (!debugEnabled) {
+            return;
+        }
+        final byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        try {
+            writeLine(DEBUG_PREFIX, bytes, 0, bytes.length);
+        } catch (IOException e) {
+            finishLine(DEBUG_PREFIX, bytes, 0, bytes.length);
+        }
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return debugEnabled;
+    }
+
+    @Override
+    public List<String> getLogs() {
+        return new LinkedList<>();
+    }
+
+    private void writeLine(byte[] prefix, byte[] bytes, int offset, int length) throws IOException {
+        final int prefixLength = prefix == null ? 0 : prefix.length;
+        ensureCapacity(prefixLength + length + 1);
+
+        written = 0;
+        buffer.clear();
+        if (prefix != null) {
+            buffer.put(prefix);
+        }
+        while (length > buffer.remaining()) {
+            final int chunk = buffer.remaining();
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+            drain();
+        }
+        buffer.put(bytes, offset, length);
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) '\n');
+        drain();
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write what the channel did not, so a line that was partly written is completed rather than repeated.
+     */
+    private void finishLine(byte[] prefix, byte[] bytes, int offset, int length) {
+        final PrintStream out = System.out;
+        int skip = written;
+        if (prefix != null) {
+            if (skip < prefix.length) {
+                out.write(prefix, skip, prefix.length - skip);
+            }
+            skip = Math.max(0, skip - prefix.length);
+        }
+        if (skip < length) {
+            out.write(bytes, offset + skip, length - skip);
+        }
+        if (skip <= length) {
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > buffer.capacity() && buffer.capacity() < MAX_BUFFER_SIZE) {
+            int capacity = buffer.capacity();
+            while (capacity < size && capacity < MAX_BUFFER_SIZE) {
+                capacity *= 2;
+            }
+            buffer = ByteBuffer.allocateDirect(capacity);
+        }
+    }
+
+}
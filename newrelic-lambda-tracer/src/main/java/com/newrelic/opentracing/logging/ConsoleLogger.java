@@ -18,6 +18,11 @@ public class ConsoleLogger implements Logger {
     public void debug(String message) {
     }
 
+    @Override
+    public boolean isDebugEnabled() {
+        return false;
+    }
+
     @Override
     public List<String> getLogs() {
         return new LinkedList<>();
@@ -19,6 +19,11 @@ public class DebugLogger implements Logger {
         System.out.println("nr_debug: " + message);
     }
 
+    @Override
+    public boolean isDebugEnabled() {
+        return true;
+    }
+
     @Override
     public List<String> getLogs() {
         return new LinkedList<>();
@@ -21,6 +21,11 @@ public class InMemoryLogger implements Logger {
         logs.add(message);
     }
 
+    @Override
+    public boolean isDebugEnabled() {
+        return true;
+    }
+
     @Override
     public List<String> getLogs() {
         return logs;
@@ -8,13 +8,18 @@ public class Log {
     /**
      * Defaults to a console logger, which only logs payload data to the console, unless a special environment
      * variable has been set, which will instead use a debug logger to also log debug messages to the console.
+     * NEW_RELIC_DIRECT_OUTPUT switches either one to a logger that writes straight to the standard out file descriptor.
      */
     private static class InstanceHolder {
         public static Logger instance;
 
         static {
             String debug = System.getenv("NEW_RELIC_DEBUG");
-            if (debug != null && debug.toLowerCase().equals("true")) {
+            boolean debugEnabled = debug != null && debug.toLowerCase().equals("true");
+            String directOutput = System.getenv("NEW_RELIC_DIRECT_OUTPUT");
+            if (directOutput != null && directOutput.toLowerCase().equals("true")) {
+                instance = new ChannelLogger(debugEnabled);
+            } else if (debugEnabled) {
                 instance = new DebugLogger();
             } else {
                 instance = new ConsoleLogger();
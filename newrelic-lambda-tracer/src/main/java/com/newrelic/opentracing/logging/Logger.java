@@ -1,6 +1,9 @@
 package com.newrelic.opentracing.logging;
 
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
 import java.util.List;
+import java.util.function.Supplier;
 
 public interface Logger {
 
@@ -9,11 +12,44 @@ public interface Logger {
      */
     void out(String message);
 
+    /**
+     * Writes an already encoded ASCII line to standard out. Loggers that write bytes can avoid decoding and
+     * re-encoding the payload.
+     */
+    default void out(byte[] ascii, int offset, int length) {
+        out(new String(ascii, offset, length, StandardCharsets.US_ASCII));
+    }
+
     /**
      * Writes to standard out. Can be used to also write debug messages for trouble-shooting.
      */
     void debug(String message);
 
+    /**
+     * Whether debug messages are written anywhere. Callers should check this before building expensive messages.
+     */
+    default boolean isDebugEnabled() {
+        return true;
+    }
+
+    /**
+     * Writes a debug message that is only built when debug logging is enabled.
+     */
+    default void debug(Supplier<String> message) {
+        if (isDebugEnabled()) {
+            debug(message.get());
+        }
+    }
+
+    /**
+     * Writes a {@link MessageFormat} debug message that is only formatted when debug logging is enabled.
+     */
+    default void debug(String pattern, Object... arguments) {
+        if (isDebugEnabled()) {
+            debug(MessageFormat.format(pattern, arguments));
+        }
+    }
+
     /**
      * Return a list of all logged messages. In most implementations this will be a no-op.
      */
@@ -1,9 +1,10 @@
 package com.newrelic.opentracing.state;
 
 import com.newrelic.opentracing.LambdaSpan;
-import com.newrelic.opentracing.dt.DistributedTracePayload;
 import com.newrelic.opentracing.dt.DistributedTracePayloadImpl;
 import com.newrelic.opentracing.dt.DistributedTracing;
+import com.newrelic.opentracing.dt.OutboundPayload;
+import com.newrelic.opentracing.dt.PayloadTemplate;
 import com.newrelic.opentracing.util.DistributedTraceUtil;
 
 import java.util.Map;
@@ -17,8 +18,15 @@ public class DistributedTracingState {
     private AtomicLong transportTimeMillis = new AtomicLong(Long.MIN_VALUE);
     private AtomicBoolean hasOutboundPayload = new AtomicBoolean(false);
     private AtomicReference<DistributedTracePayloadImpl> firstOutboundPayload = new AtomicReference<>();
-    private AtomicReference<String> traceId = new AtomicReference<>(null);
+    // Generated trace id, 0 until the request starts. The high bits are only set for 128 bit trace ids.
+    private volatile long traceIdHigh;
+    private volatile long traceIdLow;
+    private volatile String traceIdHex; // rendered on first use
     private Map<String, String> baggage;
+    // Other vendors' entries of the inbound tracestate, passed on after ours
+    private volatile String traceStateOtherVendors;
+    // The last outbound payload, reused while the span and priority it was created for inject again
+    private volatile PayloadTemplate outboundTemplate;
 
     public DistributedTracePayloadImpl getInboundPayload() {
         return inboundPayload.get();
@@ -49,17 +57,40 @@ public class DistributedTracingState {
         }
 
         // Generated when request starts
-        return traceId.get();
+        String hex = traceIdHex;
+        if (hex == null && traceIdLow != 0) {
+            hex = traceIdHigh == 0 ? DistributedTraceUtil.toHex(traceIdLow) : DistributedTraceUtil.toHex(traceIdHigh, traceIdLow);
+            traceIdHex = hex;
+        }
+        return hex;
     }
 
     public void generateAndStoreTraceId() {
-        traceId.set(DistributedTraceUtil.generateGuid());
+        traceIdHigh = DistributedTraceUtil.use128BitTraceIds() ? DistributedTraceUtil.nextId() : 0;
+        traceIdLow = DistributedTraceUtil.nextId();
+        traceIdHex = null;
+    }
+
+    public void setTraceStateOtherVendors(String otherVendors) {
+        traceStateOtherVendors = otherVendors;
     }
 
-    public DistributedTracePayload createDistributedTracingPayload(LambdaSpan span) {
-        final DistributedTracePayloadImpl outboundPayload = DistributedTracing.INSTANCE.createDistributedTracePayload(span);
-        setOutboundPayload(outboundPayload);
-        return outboundPayload;
+    public String getTraceStateOtherVendors() {
+        return traceStateOtherVendors;
+    }
+
+    public OutboundPayload createDistributedTracingPayload(LambdaSpan span) {
+        PayloadTemplate template = outboundTemplate;
+        if (template == null || !template.isFor(span.traceId(), span.guid(), span.getTransactionId(), span.priority())) {
+            final DistributedTracePayloadImpl outboundPayload = DistributedTracing.INSTANCE.createDistributedTracePayload(span);
+            setOutboundPayload(outboundPayload);
+            if (outboundPayload == null) {
+                return null;
+            }
+            template = new PayloadTemplate(outboundPayload, traceStateOtherVendors);
+            outboundTemplate = template;
+        }
+        return template.at(System.currentTimeMillis());
     }
 
     public void setBaggage(Map<String, String> baggage) {
@@ -2,28 +2,70 @@ package com.newrelic.opentracing.state;
 
 import com.newrelic.opentracing.util.DistributedTraceUtil;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
-
 public class PrioritySamplingState {
 
-    private AtomicReference<Float> priority = new AtomicReference<>(0.0f);
-    private AtomicBoolean sampled = new AtomicBoolean(false);
+    private volatile float priority = 0.0f;
+    private volatile boolean sampled = false;
+    private volatile boolean decidedUpstream = false;
 
     private void updatePriority(float newPriority) {
-        priority.set(newPriority);
+        priority = newPriority;
     }
 
     public float getPriority() {
-        return priority.get();
+        return priority;
     }
 
     private void setSampled(boolean sampled) {
-        this.sampled.set(sampled);
+        this.sampled = sampled;
     }
 
     public boolean isSampled() {
-        return sampled.get();
+        return sampled;
+    }
+
+    /**
+     * Mark a request that was not sampled when it started as sampled, raising its priority to match.
+     */
+    public void promoteToSampled() {
+        if (!sampled) {
+            updatePriority(priority + 1.0f);
+            setSampled(true);
+        }
+    }
+
+    /**
+     * @return true if the sampling decision came with the inbound distributed trace payload
+     */
+    public boolean isDecidedUpstream() {
+        return decidedUpstream;
+    }
+
+    /**
+     * Adopt the decision of the service that called this one, so the trace is sampled the same way throughout. Either
+     * may be missing: the sampled flag then follows from the priority, and a missing priority is generated. Sampled
+     * is derived from the priority wherever it is reported, so a priority that contradicts the flag is moved to the
+     * side of 1.0 that matches it.
+     *
+     * @return false, leaving the state as it was, if neither was given so there is no decision to adopt
+     */
+    public boolean setInboundSampledAndPriority(Boolean inboundSampled, Float inboundPriority) {
+        if (inboundSampled == null && inboundPriority == null) {
+            return false;
+        }
+        if (inboundPriority == null) {
+            setSampledAndGeneratePriority(inboundSampled);
+        } else {
+            final boolean sampled = inboundSampled != null ? inboundSampled : DistributedTraceUtil.isSampledPriority(inboundPriority);
+            float priority = inboundPriority;
+            if (sampled != DistributedTraceUtil.isSampledPriority(priority)) {
+                priority += sampled ? 1.0f : -1.0f;
+            }
+            setSampled(sampled);
+            updatePriority(priority);
+        }
+        decidedUpstream = true;
+        return true;
     }
 
     public void setSampledAndGeneratePriority(boolean computeSampled) {
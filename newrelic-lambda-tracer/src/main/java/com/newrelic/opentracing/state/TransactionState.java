@@ -7,20 +7,33 @@ import java.util.concurrent.atomic.AtomicReference;
 
 public class TransactionState {
 
-    private final AtomicReference<String> transactionId = new AtomicReference<>(DistributedTraceUtil.generateGuid());
+    private final long transactionId = DistributedTraceUtil.nextId();
+    private volatile String transactionIdHex; // rendered on first use
     private final AtomicReference<Float> transactionDuration = new AtomicReference<>(0.0f);
     private final AtomicBoolean error = new AtomicBoolean(false);
 
     private String transactionName;
 
     public String getTransactionId() {
-        return transactionId.get();
+        String hex = transactionIdHex;
+        if (hex == null) {
+            hex = DistributedTraceUtil.toHex(transactionId);
+            transactionIdHex = hex;
+        }
+        return hex;
     }
 
     public void setTransactionName(String transactionType, String functionName) {
         transactionName = transactionType + "/Function/" + functionName;
     }
 
+    /**
+     * Set an already built transaction name, see {@link com.newrelic.opentracing.util.ContainerMetadata#getTransactionName}.
+     */
+    public void setTransactionName(String transactionName) {
+        this.transactionName = transactionName;
+    }
+
     public String getTransactionName() {
         return transactionName;
     }
@@ -19,261 +19,396 @@ package com.newrelic.opentracing.util;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
+ * Table driven base64 codec. Encoding writes the standard alphabet with padding, or the URL-safe alphabet without.
+ * Decoding accepts either alphabet with or without padding and skips characters outside of them such as line breaks.
+ * Padding ends a group and decoding goes on with the next one, so concatenated encodings decode in full. Bits are
+ * accumulated in an int, so nothing goes through scratch buffers.
+ *
  * @author TAMURA Kent &lt;kent@trl.ibm.co.jp&gt;
  */
 public class Base64 {
 
     public static final Charset UTF_8 = Charset.forName("UTF-8");
 
-    private static final char[] S_BASE64CHAR = { 'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N',
-            'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z', 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i',
-            'j', 'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z', '0', '1', '2', '3',
-            '4', '5', '6', '7', '8', '9', '+', '/' };
-    private static final char S_BASE64PAD = '=';
-    private static final byte[] S_DECODETABLE = new byte[128];
+    static final byte[] STANDARD_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(UTF_8);
+    static final byte[] URL_SAFE_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(UTF_8);
+    static final byte PAD = '=';
+
+    private static final char[] STANDARD_CHARS = new String(STANDARD_ALPHABET, UTF_8).toCharArray();
+    private static final char[] URL_SAFE_CHARS = new String(URL_SAFE_ALPHABET, UTF_8).toCharArray();
+
+    // The 6 bit value of each character of both alphabets, SKIP for any other character and END for the pad
+    private static final int SKIP = -1;
+    private static final int END = -2;
+    private static final int[] DECODE_TABLE = new int[256];
+
+    // The Writer variant breaks lines like MIME does
+    private static final int LINE_LENGTH = 76;
+    // Bytes written to an OutputStream at a time
+    private static final int CHUNK_SIZE = 1024;
 
     static {
-        for (int i = 0; i < S_DECODETABLE.length; i++) {
-            S_DECODETABLE[i] = Byte.MAX_VALUE; // 127
+        Arrays.fill(DECODE_TABLE, SKIP);
+        for (int i = 0; i < STANDARD_ALPHABET.length; i++) {
+            DECODE_TABLE[STANDARD_ALPHABET[i]] = i;
+            DECODE_TABLE[URL_SAFE_ALPHABET[i]] = i;
         }
-        for (int i = 0; i < S_BASE64CHAR.length; i++) {
-            // 0 to 63
-            S_DECODETABLE[S_BASE64CHAR[i]] = (byte) i;
+        DECODE_TABLE[PAD] = END;
+    }
+
+    /**
+     * @return the length of the encoding of len bytes
+     */
+    public static int encodedLength(int len, boolean padded) {
+        return padded ? (len + 2) / 3 * 4 : len / 3 * 4 + (len % 3 == 0 ? 0 : len % 3 + 1);
+    }
+
+    /**
+     * Returns base64 representation of specified byte array.
+     */
+    public static String encode(byte[] data) {
+        return encode(data, 0, data.length);
+    }
+
+    /**
+     * Returns base64 representation of specified byte array.
+     */
+    public static String encode(byte[] data, int off, int len) {
+        return encode(data, off, len, STANDARD_CHARS, true);
+    }
+
+    /**
+     * Returns the URL and filename safe base64 representation of specified byte array, without padding.
+     */
+    public static String encodeUrlSafe(byte[] data, int off, int len) {
+        return encode(data, off, len, URL_SAFE_CHARS, false);
+    }
+
+    private static String encode(byte[] data, int off, int len, char[] alphabet, boolean padded) {
+        if (len <= 0) {
+            return "";
         }
+        final char[] out = new char[encodedLength(len, padded)];
+        final int end = off + len - len % 3;
+        int windex = 0;
+        for (int rindex = off; rindex < end; rindex += 3) {
+            final int i = (data[rindex] & 0xff) << 16 | (data[rindex + 1] & 0xff) << 8 | (data[rindex + 2] & 0xff);
+            out[windex++] = alphabet[i >>> 18];
+            out[windex++] = alphabet[i >>> 12 & 0x3f];
+            out[windex++] = alphabet[i >>> 6 & 0x3f];
+            out[windex++] = alphabet[i & 0x3f];
+        }
+        final int rest = len % 3;
+        if (rest != 0) {
+            final int i = rest == 1 ? (data[end] & 0xff) << 16 : (data[end] & 0xff) << 16 | (data[end + 1] & 0xff) << 8;
+            out[windex++] = alphabet[i >>> 18];
+            out[windex++] = alphabet[i >>> 12 & 0x3f];
+            if (rest == 2) {
+                out[windex++] = alphabet[i >>> 6 & 0x3f];
+            }
+            if (padded) {
+                while (windex < out.length) {
+                    out[windex++] = (char) PAD;
+                }
+            }
+        }
+        return new String(out);
     }
 
-    private static int decode0(char[] ibuf, byte[] obuf, int wp) {
-        int outlen = 3;
-        if (ibuf[3] == S_BASE64PAD) {
-            outlen = 2;
+    /**
+     * Encode into ASCII bytes.
+     *
+     * @param urlSafe true for the URL-safe alphabet without padding, false for the standard alphabet with padding
+     * @return the number of bytes written, see {@link #encodedLength(int, boolean)}
+     */
+    public static int encode(byte[] src, int off, int len, byte[] dst, int dstOff, boolean urlSafe) {
+        if (len <= 0) {
+            return 0;
         }
-        if (ibuf[2] == S_BASE64PAD) {
-            outlen = 1;
+        final byte[] alphabet = urlSafe ? URL_SAFE_ALPHABET : STANDARD_ALPHABET;
+        final int end = off + len - len % 3;
+        int windex = dstOff;
+        for (int rindex = off; rindex < end; rindex += 3) {
+            final int i = (src[rindex] & 0xff) << 16 | (src[rindex + 1] & 0xff) << 8 | (src[rindex + 2] & 0xff);
+            dst[windex++] = alphabet[i >>> 18];
+            dst[windex++] = alphabet[i >>> 12 & 0x3f];
+            dst[windex++] = alphabet[i >>> 6 & 0x3f];
+            dst[windex++] = alphabet[i & 0x3f];
         }
-        int b0 = S_DECODETABLE[ibuf[0]];
-        int b1 = S_DECODETABLE[ibuf[1]];
-        int b2 = S_DECODETABLE[ibuf[2]];
-        int b3 = S_DECODETABLE[ibuf[3]];
-        switch (outlen) {
-            case 1:
-                obuf[wp] = (byte) (b0 << 2 & 0xfc | b1 >> 4 & 0x3);
-                return 1;
-            case 2:
-                obuf[wp++] = (byte) (b0 << 2 & 0xfc | b1 >> 4 & 0x3);
-                obuf[wp] = (byte) (b1 << 4 & 0xf0 | b2 >> 2 & 0xf);
-                return 2;
-            case 3:
-                obuf[wp++] = (byte) (b0 << 2 & 0xfc | b1 >> 4 & 0x3);
-                obuf[wp++] = (byte) (b1 << 4 & 0xf0 | b2 >> 2 & 0xf);
-                obuf[wp] = (byte) (b2 << 6 & 0xc0 | b3 & 0x3f);
-                return 3;
-            default:
-                throw new RuntimeException("Decoding error");
+        final int rest = len % 3;
+        if (rest != 0) {
+            windex = encodeTail(rest == 1 ? (src[end] & 0xff) << 16 : (src[end] & 0xff) << 16 | (src[end + 1] & 0xff) << 8, rest, alphabet,
+                    !urlSafe, dst, windex);
         }
+        return windex - dstOff;
     }
 
-    public static byte[] decode(char[] data, int off, int len) {
-        char[] ibuf = new char[4];
-        int ibufcount = 0;
-        byte[] obuf = new byte[len / 4 * 3 + 3];
-        int obufcount = 0;
-        for (int i = off; i < off + len; i++) {
-            char ch = data[i];
-            if (ch == S_BASE64PAD || ch < S_DECODETABLE.length && S_DECODETABLE[ch] != Byte.MAX_VALUE) {
-                ibuf[ibufcount++] = ch;
-                if (ibufcount == ibuf.length) {
-                    ibufcount = 0;
-                    obufcount += decode0(ibuf, obuf, obufcount);
-                }
+    private static int encodeTail(int i, int rest, byte[] alphabet, boolean padded, byte[] dst, int windex) {
+        dst[windex++] = alphabet[i >>> 18];
+        dst[windex++] = alphabet[i >>> 12 & 0x3f];
+        if (rest == 2) {
+            dst[windex++] = alphabet[i >>> 6 & 0x3f];
+        } else if (padded) {
+            dst[windex++] = PAD;
+        }
+        if (padded) {
+            dst[windex++] = PAD;
+        }
+        return windex;
+    }
+
+    /**
+     * Encode the remaining bytes of src into dst as ASCII, with the standard alphabet and padding. Both buffers'
+     * positions advance.
+     *
+     * @throws BufferOverflowException if dst has less than {@link #encodedLength(int, boolean)} bytes remaining
+     */
+    public static void encode(ByteBuffer src, ByteBuffer dst) {
+        if (src.hasArray() && dst.hasArray()) {
+            final int len = src.remaining();
+            if (dst.remaining() < encodedLength(len, true)) {
+                throw new BufferOverflowException();
             }
+            final int written = encode(src.array(), src.arrayOffset() + src.position(), len, dst.array(), dst.arrayOffset() + dst.position(),
+                    false);
+            src.position(src.limit());
+            dst.position(dst.position() + written);
+            return;
+        }
+        while (src.remaining() >= 3) {
+            final int i = (src.get() & 0xff) << 16 | (src.get() & 0xff) << 8 | (src.get() & 0xff);
+            dst.put(STANDARD_ALPHABET[i >>> 18]).put(STANDARD_ALPHABET[i >>> 12 & 0x3f]).put(STANDARD_ALPHABET[i >>> 6 & 0x3f])
+                    .put(STANDARD_ALPHABET[i & 0x3f]);
         }
-        if (obufcount == obuf.length) {
-            return obuf;
+        final int rest = src.remaining();
+        if (rest != 0) {
+            final int i = rest == 1 ? (src.get() & 0xff) << 16 : (src.get() & 0xff) << 16 | (src.get() & 0xff) << 8;
+            dst.put(STANDARD_ALPHABET[i >>> 18]).put(STANDARD_ALPHABET[i >>> 12 & 0x3f])
+                    .put(rest == 2 ? STANDARD_ALPHABET[i >>> 6 & 0x3f] : PAD).put(PAD);
         }
-        byte[] ret = new byte[obufcount];
-        System.arraycopy(obuf, 0, ret, 0, obufcount);
-        return ret;
     }
 
-    public static byte[] decode(String data) {
-        char[] ibuf = new char[4];
-        int ibufcount = 0;
-        byte[] obuf = new byte[data.length() / 4 * 3 + 3];
-        int obufcount = 0;
-        for (int i = 0; i < data.length(); i++) {
-            char ch = data.charAt(i);
-            if (ch == S_BASE64PAD || ch < S_DECODETABLE.length && S_DECODETABLE[ch] != Byte.MAX_VALUE) {
-                ibuf[ibufcount++] = ch;
-                if (ibufcount == ibuf.length) {
-                    ibufcount = 0;
-                    obufcount += decode0(ibuf, obuf, obufcount);
-                }
+    /**
+     * Outputs base64 representation of the specified byte array to a byte stream.
+     */
+    public static void encode(byte[] data, int off, int len, OutputStream ostream) throws IOException {
+        if (len <= 0) {
+            return;
+        }
+        final byte[] chunk = new byte[Math.min(CHUNK_SIZE, encodedLength(len, true))];
+        final int bytesPerChunk = chunk.length / 4 * 3;
+        final int end = off + len;
+        while (off < end) {
+            final int n = Math.min(bytesPerChunk, end - off);
+            ostream.write(chunk, 0, encode(data, off, n, chunk, 0, false));
+            off += n;
+        }
+    }
+
+    /**
+     * Outputs base64 representation of the specified byte array to a character stream, with a line break every 76
+     * characters.
+     */
+    public static void encode(byte[] data, int off, int len, Writer writer) throws IOException {
+        if (len <= 0) {
+            return;
+        }
+        // Whole lines at a time
+        final char[] line = new char[LINE_LENGTH + 1];
+        line[LINE_LENGTH] = '\n';
+        final int end = off + len;
+        while (end - off >= LINE_LENGTH / 4 * 3) {
+            int windex = 0;
+            for (int groups = 0; groups < LINE_LENGTH / 4; groups++, off += 3) {
+                final int i = (data[off] & 0xff) << 16 | (data[off + 1] & 0xff) << 8 | (data[off + 2] & 0xff);
+                line[windex++] = STANDARD_CHARS[i >>> 18];
+                line[windex++] = STANDARD_CHARS[i >>> 12 & 0x3f];
+                line[windex++] = STANDARD_CHARS[i >>> 6 & 0x3f];
+                line[windex++] = STANDARD_CHARS[i & 0x3f];
             }
+            writer.write(line, 0, LINE_LENGTH + 1);
         }
-        if (obufcount == obuf.length) {
-            return obuf;
+        if (off < end) {
+            writer.write(encode(data, off, end - off));
         }
-        byte[] ret = new byte[obufcount];
-        System.arraycopy(obuf, 0, ret, 0, obufcount);
-        return ret;
     }
 
-    public static void decode(char[] data, int off, int len, OutputStream ostream) throws IOException {
-        char[] ibuf = new char[4];
-        int ibufcount = 0;
-        byte[] obuf = new byte[3];
-        for (int i = off; i < off + len; i++) {
-            char ch = data[i];
-            if (ch == S_BASE64PAD || ch < S_DECODETABLE.length && S_DECODETABLE[ch] != Byte.MAX_VALUE) {
-                ibuf[ibufcount++] = ch;
-                if (ibufcount == ibuf.length) {
-                    ibufcount = 0;
-                    int obufcount = decode0(ibuf, obuf, 0);
-                    ostream.write(obuf, 0, obufcount);
+    public static byte[] decode(String data) {
+        return decode(data, 0, data.length());
+    }
+
+    public static byte[] decode(char[] data, int off, int len) {
+        return decode(CharBuffer.wrap(data), off, len);
+    }
+
+    private static byte[] decode(CharSequence data, int off, int len) {
+        final int end = off + len;
+        final byte[] out = new byte[decodedLength(len, len > 0 ? data.charAt(end - 1) : 0, len > 1 ? data.charAt(end - 2) : 0)];
+        int bits = 0;
+        int count = 0;
+        int windex = 0;
+        for (int i = off; i < end; i++) {
+            final char ch = data.charAt(i);
+            final int value = ch < DECODE_TABLE.length ? DECODE_TABLE[ch] : SKIP;
+            if (value >= 0) {
+                bits = bits << 6 | value;
+                if (++count == 4) {
+                    windex = put3(bits, out, windex);
+                    bits = 0;
+                    count = 0;
                 }
+            } else if (value == END) {
+                windex = putPartial(bits, count, out, windex);
+                bits = 0;
+                count = 0;
             }
         }
+        windex = putPartial(bits, count, out, windex);
+        return windex == out.length ? out : Arrays.copyOf(out, windex);
     }
 
-    public static void decode(String data, OutputStream ostream) throws IOException {
-        char[] ibuf = new char[4];
-        int ibufcount = 0;
-        byte[] obuf = new byte[3];
-        for (int i = 0; i < data.length(); i++) {
-            char ch = data.charAt(i);
-            if (ch == S_BASE64PAD || ch < S_DECODETABLE.length && S_DECODETABLE[ch] != Byte.MAX_VALUE) {
-                ibuf[ibufcount++] = ch;
-                if (ibufcount == ibuf.length) {
-                    ibufcount = 0;
-                    int obufcount = decode0(ibuf, obuf, 0);
-                    ostream.write(obuf, 0, obufcount);
+    /**
+     * Decode base64 held in ASCII bytes.
+     */
+    public static byte[] decode(byte[] data, int off, int len) {
+        final byte[] out = new byte[decodedLength(len, len > 0 ? data[off + len - 1] : 0, len > 1 ? data[off + len - 2] : 0)];
+        int bits = 0;
+        int count = 0;
+        int windex = 0;
+        for (int i = off; i < off + len; i++) {
+            final int value = DECODE_TABLE[data[i] & 0xff];
+            if (value >= 0) {
+                bits = bits << 6 | value;
+                if (++count == 4) {
+                    windex = put3(bits, out, windex);
+                    bits = 0;
+                    count = 0;
                 }
+            } else if (value == END) {
+                windex = putPartial(bits, count, out, windex);
+                bits = 0;
+                count = 0;
             }
         }
+        windex = putPartial(bits, count, out, windex);
+        return windex == out.length ? out : Arrays.copyOf(out, windex);
     }
 
     /**
-     * Returns base64 representation of specified byte array.
+     * Decode the remaining ASCII bytes of src into dst. Both buffers' positions advance.
+     *
+     * @throws BufferOverflowException if the decoded bytes do not fit in dst
      */
-    public static String encode(byte[] data) {
-        return encode(data, 0, data.length);
+    public static void decode(ByteBuffer src, ByteBuffer dst) {
+        int bits = 0;
+        int count = 0;
+        while (src.hasRemaining()) {
+            final int value = DECODE_TABLE[src.get() & 0xff];
+            if (value >= 0) {
+                bits = bits << 6 | value;
+                if (++count == 4) {
+                    dst.put((byte) (bits >> 16)).put((byte) (bits >> 8)).put((byte) bits);
+                    bits = 0;
+                    count = 0;
+                }
+            } else if (value == END) {
+                putPartial(bits, count, dst);
+                bits = 0;
+                count = 0;
+            }
+        }
+        putPartial(bits, count, dst);
+    }
+
+    public static void decode(char[] data, int off, int len, OutputStream ostream) throws IOException {
+        decode(CharBuffer.wrap(data), off, len, ostream);
+    }
+
+    public static void decode(String data, OutputStream ostream) throws IOException {
+        decode(data, 0, data.length(), ostream);
     }
 
     /**
-     * Returns base64 representation of specified byte array.
+     * Decode into a bounded buffer that is written out whenever it fills up.
      */
-    public static String encode(byte[] data, int off, int len) {
-        if (len <= 0) {
-            return "";
-        }
-        char[] out = new char[len / 3 * 4 + 4];
-        int rindex = off;
+    private static void decode(CharSequence data, int off, int len, OutputStream ostream) throws IOException {
+        final byte[] chunk = new byte[Math.min(CHUNK_SIZE, len / 4 * 3 + 3)];
+        final int end = off + len;
+        int bits = 0;
+        int count = 0;
         int windex = 0;
-        int rest = len - off;
-        while (rest >= 3) {
-            int i = ((data[rindex] & 0xff) << 16) + ((data[rindex + 1] & 0xff) << 8) + (data[rindex + 2] & 0xff);
-            out[windex++] = S_BASE64CHAR[i >> 18];
-            out[windex++] = S_BASE64CHAR[(i >> 12) & 0x3f];
-            out[windex++] = S_BASE64CHAR[(i >> 6) & 0x3f];
-            out[windex++] = S_BASE64CHAR[i & 0x3f];
-            rindex += 3;
-            rest -= 3;
+        for (int i = off; i < end; i++) {
+            final char ch = data.charAt(i);
+            final int value = ch < DECODE_TABLE.length ? DECODE_TABLE[ch] : SKIP;
+            if (value >= 0) {
+                bits = bits << 6 | value;
+                if (++count < 4) {
+                    continue;
+                }
+            } else if (value != END) {
+                continue;
+            }
+            // A full group, or one that padding ended
+            if (chunk.length - windex < 3) {
+                ostream.write(chunk, 0, windex);
+                windex = 0;
+            }
+            windex = count == 4 ? put3(bits, chunk, windex) : putPartial(bits, count, chunk, windex);
+            bits = 0;
+            count = 0;
         }
-        if (rest == 1) {
-            int i = data[rindex] & 0xff;
-            out[windex++] = S_BASE64CHAR[i >> 2];
-            out[windex++] = S_BASE64CHAR[(i << 4) & 0x3f];
-            out[windex++] = S_BASE64PAD;
-            out[windex++] = S_BASE64PAD;
-        } else if (rest == 2) {
-            int i = ((data[rindex] & 0xff) << 8) + (data[rindex + 1] & 0xff);
-            out[windex++] = S_BASE64CHAR[i >> 10];
-            out[windex++] = S_BASE64CHAR[(i >> 4) & 0x3f];
-            out[windex++] = S_BASE64CHAR[(i << 2) & 0x3f];
-            out[windex++] = S_BASE64PAD;
+        if (chunk.length - windex < 3) {
+            ostream.write(chunk, 0, windex);
+            windex = 0;
+        }
+        windex = putPartial(bits, count, chunk, windex);
+        if (windex > 0) {
+            ostream.write(chunk, 0, windex);
         }
-        return new String(out, 0, windex);
     }
 
     /**
-     * Outputs base64 representation of the specified byte array to a byte stream.
+     * @return the decoded length if every character but trailing padding is in the alphabet, the common case, so the
+     * output is not copied. Anything skipped makes the output shorter, never longer.
      */
-    public static void encode(byte[] data, int off, int len, OutputStream ostream) throws IOException {
-        if (len <= 0) {
-            return;
-        }
-        byte[] out = new byte[4];
-        int rindex = off;
-        int rest = len - off;
-        while (rest >= 3) {
-            int i = ((data[rindex] & 0xff) << 16) + ((data[rindex + 1] & 0xff) << 8) + (data[rindex + 2] & 0xff);
-            out[0] = (byte) S_BASE64CHAR[i >> 18];
-            out[1] = (byte) S_BASE64CHAR[(i >> 12) & 0x3f];
-            out[2] = (byte) S_BASE64CHAR[(i >> 6) & 0x3f];
-            out[3] = (byte) S_BASE64CHAR[i & 0x3f];
-            ostream.write(out, 0, 4);
-            rindex += 3;
-            rest -= 3;
-        }
-        if (rest == 1) {
-            int i = data[rindex] & 0xff;
-            out[0] = (byte) S_BASE64CHAR[i >> 2];
-            out[1] = (byte) S_BASE64CHAR[(i << 4) & 0x3f];
-            out[2] = (byte) S_BASE64PAD;
-            out[3] = (byte) S_BASE64PAD;
-            ostream.write(out, 0, 4);
-        } else if (rest == 2) {
-            int i = ((data[rindex] & 0xff) << 8) + (data[rindex + 1] & 0xff);
-            out[0] = (byte) S_BASE64CHAR[i >> 10];
-            out[1] = (byte) S_BASE64CHAR[(i >> 4) & 0x3f];
-            out[2] = (byte) S_BASE64CHAR[(i << 2) & 0x3f];
-            out[3] = (byte) S_BASE64PAD;
-            ostream.write(out, 0, 4);
-        }
+    private static int decodedLength(int len, int last, int secondLast) {
+        final int padding = last == PAD ? (secondLast == PAD ? 2 : 1) : 0;
+        final int chars = len - padding;
+        return chars / 4 * 3 + (chars % 4 == 0 ? 0 : chars % 4 - 1);
+    }
+
+    private static int put3(int bits, byte[] out, int windex) {
+        out[windex] = (byte) (bits >> 16);
+        out[windex + 1] = (byte) (bits >> 8);
+        out[windex + 2] = (byte) bits;
+        return windex + 3;
     }
 
     /**
-     * Outputs base64 representation of the specified byte array to a character stream.
+     * Write the bytes of a group that padding or the end of the input cut short, a lone character holds none.
      */
-    public static void encode(byte[] data, int off, int len, Writer writer) throws IOException {
-        if (len <= 0) {
-            return;
+    private static int putPartial(int bits, int count, byte[] out, int windex) {
+        if (count == 2) {
+            out[windex++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            out[windex++] = (byte) (bits >> 10);
+            out[windex++] = (byte) (bits >> 2);
         }
-        char[] out = new char[4];
-        int rindex = off;
-        int rest = len - off;
-        int output = 0;
-        while (rest >= 3) {
-            int i = ((data[rindex] & 0xff) << 16) + ((data[rindex + 1] & 0xff) << 8) + (data[rindex + 2] & 0xff);
-            out[0] = S_BASE64CHAR[i >> 18];
-            out[1] = S_BASE64CHAR[(i >> 12) & 0x3f];
-            out[2] = S_BASE64CHAR[(i >> 6) & 0x3f];
-            out[3] = S_BASE64CHAR[i & 0x3f];
-            writer.write(out, 0, 4);
-            rindex += 3;
-            rest -= 3;
-            output += 4;
-            if (output % 76 == 0) {
-                writer.write("\n");
-            }
-        }
-        if (rest == 1) {
-            int i = data[rindex] & 0xff;
-            out[0] = S_BASE64CHAR[i >> 2];
-            out[1] = S_BASE64CHAR[(i << 4) & 0x3f];
-            out[2] = S_BASE64PAD;
-            out[3] = S_BASE64PAD;
-            writer.write(out, 0, 4);
-        } else if (rest == 2) {
-            int i = ((data[rindex] & 0xff) << 8) + (data[rindex + 1] & 0xff);
-            out[0] = S_BASE64CHAR[i >> 10];
-            out[1] = S_BASE64CHAR[(i >> 4) & 0x3f];
-            out[2] = S_BASE64CHAR[(i << 2) & 0x3f];
-            out[3] = S_BASE64PAD;
-            writer.write(out, 0, 4);
+        return windex;
+    }
+
+    private static void putPartial(int bits, int count, ByteBuffer dst) {
+        if (count == 2) {
+            dst.put((byte) (bits >> 4));
+        } else if (count == 3) {
+            dst.put((byte) (bits >> 10)).put((byte) (bits >> 2));
         }
     }
 
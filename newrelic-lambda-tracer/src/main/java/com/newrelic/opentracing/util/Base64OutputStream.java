@@ -0,0 +1,108 @@
+package com.newrelic.opentracing.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Base64 encodes everything written to it into the wrapped stream. Up to two trailing bytes are held back
+ * until {@link #finish()} writes them out with padding. Closing this stream does not close the wrapped stream.
+ */
+class Base64OutputStream extends FilterOutputStream {
+
+    private static final int BUFFER_SIZE = 4096; // must be a multiple of 4
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    private int pending; // up to two bytes waiting for a full 3 byte group
+    private int pendingCount;
+    private long bytesWritten;
+
+    Base64OutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        pending = (pending << 8) | (b & 0xff);
+        if (++pendingCount == 3) {
+            encodeGroup(pending);
+            pending = 0;
+            pendingCount = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int off, int len) throws IOException {
+        final int end = off + len;
+        while (pendingCount != 0 && off < end) {
+            write(data[off++]);
+        }
+        while (end - off >= 3) {
+            encodeGroup(((data[off] & 0xff) << 16) | ((data[off + 1] & 0xff) << 8) | (data[off + 2] & 0xff));
+            off += 3;
+        }
+        while (off < end) {
+            write(data[off++]);
+        }
+    }
+
+    /**
+     * Encode any held back bytes with padding and push all buffered output to the wrapped stream.
+     */
+    void finish() throws IOException {
+        if (pendingCount == 1) {
+            final int i = pending & 0xff;
+            put(Base64.STANDARD_ALPHABET[i >> 2], Base64.STANDARD_ALPHABET[(i << 4) & 0x3f], Base64.PAD, Base64.PAD);
+        } else if (pendingCount == 2) {
+            final int i = pending & 0xffff;
+            put(Base64.STANDARD_ALPHABET[i >> 10], Base64.STANDARD_ALPHABET[(i >> 4) & 0x3f], Base64.STANDARD_ALPHABET[(i << 2) & 0x3f], Base64.PAD);
+        }
+        pending = 0;
+        pendingCount = 0;
+        flushBuffer();
+    }
+
+    /**
+     * @return the number of encoded bytes produced so far, including any still buffered
+     */
+    long getBytesWritten() {
+        return bytesWritten + position;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void encodeGroup(int i) throws IOException {
+        put(Base64.STANDARD_ALPHABET[i >> 18], Base64.STANDARD_ALPHABET[(i >> 12) & 0x3f], Base64.STANDARD_ALPHABET[(i >> 6) & 0x3f],
+                Base64.STANDARD_ALPHABET[i & 0x3f]);
+    }
+
+    private void put(byte c0, byte c1, byte c2, byte c3) throws IOException {
+        if (position == BUFFER_SIZE) {
+            flushBuffer();
+        }
+        buffer[position++] = c0;
+        buffer[position++] = c1;
+        buffer[position++] = c2;
+        buffer[position++] = c3;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            bytesWritten += position;
+            position = 0;
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.newrelic.opentracing.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An append-only list stored in fixed size arrays, meant to be cleared and refilled on every invocation.
+ *
+ * Adding never copies elements: when the last chunk is full, another one is added. Clearing keeps the chunks, so a
+ * warm container stops allocating for the list once it has seen its usual invocation size. Chunks beyond
+ * {@link #MAX_RETAINED} elements are let go on clear, so one unusually large invocation does not pin its memory for
+ * the life of the container. Iteration walks each chunk in order instead of chasing nodes.
+ *
+ * Not thread safe.
+ */
+public class ChunkedBuffer<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    static final int MAX_RETAINED = 64 * CHUNK_SIZE;
+
+    private static final Object[][] NO_CHUNKS = {};
+
+    private Object[][] chunks = NO_CHUNKS;
+    private int size;
+
+    @Override
+    public boolean add(T element) {
+        final int chunk = size >>> CHUNK_SHIFT;
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, Math.max(4, chunks.length * 2));
+        }
+        if (chunks[chunk] == null) {
+            chunks[chunk] = new Object[CHUNK_SIZE];
+        }
+        chunks[chunk][size & CHUNK_MASK] = element;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        checkIndex(index);
+        return (T) chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T set(int index, T element) {
+        checkIndex(index);
+        final Object[] chunk = chunks[index >>> CHUNK_SHIFT];
+        final T previous = (T) chunk[index & CHUNK_MASK];
+        chunk[index & CHUNK_MASK] = element;
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all elements, keeping up to {@link #MAX_RETAINED} elements worth of chunks for reuse.
+     */
+    @Override
+    public void clear() {
+        final int usedChunks = (size + CHUNK_MASK) >>> CHUNK_SHIFT;
+        for (int i = 0; i < usedChunks; i++) {
+            final int length = i == usedChunks - 1 && (size & CHUNK_MASK) != 0 ? size & CHUNK_MASK : CHUNK_SIZE;
+            Arrays.fill(chunks[i], 0, length, null);
+        }
+        final int retainedChunks = MAX_RETAINED >>> CHUNK_SHIFT;
+        if (chunks.length > retainedChunks) {
+            chunks = Arrays.copyOf(chunks, retainedChunks);
+        }
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new ChunkIterator();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private class ChunkIterator implements Iterator<T> {
+
+        private final int expectedModCount = modCount;
+        private int index;
+        private Object[] chunk;
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (index >= size) {
+                throw new NoSuchElementException();
+            }
+            final int offset = index & CHUNK_MASK;
+            if (offset == 0 || chunk == null) {
+                chunk = chunks[index >>> CHUNK_SHIFT];
+            }
+            index++;
+            return (T) chunk[offset];
+        }
+
+    }
+
+}
@@ -0,0 +1,229 @@
+package com.newrelic.opentracing.util;
+
+import com.newrelic.opentracing.events.ErrorEvent;
+import com.newrelic.opentracing.events.Event;
+import com.newrelic.opentracing.events.TransactionEvent;
+import com.newrelic.opentracing.traces.ErrorTrace;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a payload across as many NR_LAMBDA_MONITORING lines as it takes to keep each one under a byte ceiling.
+ * Every line is a complete payload with its own metadata and data hash, so lines decode independently.
+ *
+ * Events are serialized one at a time into a reusable buffer and then copied into the compressed stream of the
+ * current line, so only one line is held in memory. The size of a line is tracked with an upper bound on what
+ * deflate can still produce from the bytes it holds. Only when that bound nears the ceiling is the stream sync
+ * flushed to learn how much room is really left.
+ *
+ * The first line that carries events of a type reports events_seen for all of them. Continuation lines report
+ * events_seen 0, so the sum across lines stays correct. Every line reports the same reservoir_size.
+ */
+class ChunkedPayloadWriter {
+
+    // Upper bound for a section name, its info hash and the brackets that close the section and the data hash
+    private static final int SECTION_OVERHEAD = 128;
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private final PayloadSink sink;
+    private final PayloadCodec codec;
+    private final long maxLineBytes;
+    private final byte[] header;
+
+    private final LineBuffer line = new LineBuffer();
+    private final EventBuffer event = new EventBuffer();
+    private final JsonWriter eventWriter = new JsonWriter(event);
+
+    // State of the line being written, dataWriter is null between lines
+    private OutputStream codecStream;
+    private CountingOutputStream compressed;
+    private CountingOutputStream uncompressed;
+    private Writer data;
+    private JsonWriter dataWriter;
+    private String section;
+    private int eventsInLine;
+    private long pending; // upper bound of the bytes deflate has taken in since the last flush
+
+    private long totalUncompressed;
+
+    /**
+     * @param header the start of each line, see {@link ContainerMetadata#getPayloadHeader}
+     */
+    ChunkedPayloadWriter(PayloadSink sink, PayloadCodec codec, long maxLineBytes, byte[] header) {
+        this.sink = sink;
+        this.codec = codec;
+        this.maxLineBytes = maxLineBytes;
+        this.header = header;
+    }
+
+    /**
+     * @return the size of the data hashes before compression, in bytes
+     */
+    long write(List<? extends Event> spans, int spansSeen, int spanReservoirSize, TransactionEvent transactionEvent, List<ErrorEvent> errorEvents,
+            List<ErrorTrace> errorTraces) throws IOException {
+        try {
+            // Small sections first so they share the first line, spans are what gets split
+            if (transactionEvent != null) {
+                writeSection("analytic_event_data", true, 1, 1, Collections.singletonList(transactionEvent));
+            }
+            writeSection("error_event_data", true, errorEvents.size(), errorEvents.size(), errorEvents);
+            writeSection("error_data", false, 0, 0, errorTraces);
+            writeSection("span_event_data", true, spansSeen, spanReservoirSize, spans);
+
+            if (dataWriter == null) {
+                beginLine();
+            }
+            finishLine();
+        } catch (Throwable t) {
+            if (codecStream != null) {
+                PayloadWriter.abort(codecStream, t);
+            }
+            throw t;
+        }
+        return totalUncompressed;
+    }
+
+    private void writeSection(String name, boolean hasInfo, int eventsSeen, int reservoirSize, List<?> events) throws IOException {
+        boolean firstLine = true;
+        for (Object element : events) {
+            event.reset();
+            eventWriter.value(element);
+            eventWriter.flush();
+            final int size = event.utf8Length();
+
+            reserve(size + (name.equals(section) ? 0 : SECTION_OVERHEAD));
+            if (!name.equals(section)) {
+                beginSection(name, hasInfo, firstLine ? eventsSeen : 0, reservoirSize);
+                firstLine = false;
+            }
+            dataWriter.rawValue(event.buf(), 0, event.size());
+            pending += size;
+            eventsInLine++;
+        }
+    }
+
+    /**
+     * Make sure the current line has room for the given number of uncompressed bytes, starting a new line if it does not.
+     * A line always takes at least one event, even one that does not fit on its own.
+     */
+    private void reserve(long bytes) throws IOException {
+        if (dataWriter != null && projectedLineBytes(bytes) > maxLineBytes) {
+            if (pending > 0) {
+                dataWriter.flush();
+                data.flush();
+                pending = 0;
+            }
+            if (eventsInLine > 0 && projectedLineBytes(bytes) > maxLineBytes) {
+                finishLine();
+            }
+        }
+        if (dataWriter == null) {
+            beginLine();
+        }
+    }
+
+    private long projectedLineBytes(long additional) {
+        final long deflated = compressed.getCount() + deflateBound(pending + additional + SECTION_OVERHEAD) + GZIP_TRAILER_SIZE;
+        return header.length + (deflated + 2) / 3 * 4 + 2;
+    }
+
+    /**
+     * Same bound zlib's deflateBound gives, plus room for the empty block a sync flush adds.
+     */
+    private static long deflateBound(long length) {
+        return length + (length >> 12) + (length >> 14) + (length >> 25) + 13 + 5;
+    }
+
+    private void beginLine() throws IOException {
+        line.reset();
+        line.write(header);
+        compressed = new CountingOutputStream(new Base64OutputStream(line));
+        codecStream = codec.openStream(compressed);
+        uncompressed = new CountingOutputStream(codecStream);
+        data = new OutputStreamWriter(uncompressed, StandardCharsets.UTF_8);
+        dataWriter = new JsonWriter(data);
+        dataWriter.beginObject();
+        eventsInLine = 0;
+        pending = 0;
+    }
+
+    private void beginSection(String name, boolean hasInfo, int eventsSeen, int reservoirSize) throws IOException {
+        if (section != null) {
+            endSection();
+        }
+        dataWriter.name(name).beginArray().nullValue();
+        if (hasInfo) {
+            dataWriter.beginObject();
+            dataWriter.name("events_seen").value(eventsSeen);
+            dataWriter.name("reservoir_size").value(reservoirSize);
+            dataWriter.endObject();
+        }
+        dataWriter.beginArray();
+        section = name;
+    }
+
+    private void endSection() throws IOException {
+        dataWriter.endArray().endArray();
+        section = null;
+    }
+
+    private void finishLine() throws IOException {
+        if (section != null) {
+            endSection();
+        }
+        dataWriter.endObject();
+        dataWriter.flush();
+        // Finishes the gzip stream and the base64 encoding, but leaves the line open
+        data.close();
+        codecStream = null;
+        totalUncompressed += uncompressed.getCount();
+
+        line.write('"');
+        line.write(']');
+        sink.line(line.buf(), 0, line.size());
+
+        dataWriter = null;
+        data = null;
+        compressed = null;
+        uncompressed = null;
+    }
+
+    private static class LineBuffer extends ByteArrayOutputStream {
+
+        byte[] buf() {
+            return buf;
+        }
+
+    }
+
+    private static class EventBuffer extends CharArrayWriter {
+
+        char[] buf() {
+            return buf;
+        }
+
+        int utf8Length() {
+            int length = count;
+            for (int i = 0; i < count; i++) {
+                final char c = buf[i];
+                if (c >= 0x800) {
+                    // Surrogate pairs count 2 here for each half, 4 bytes in total
+                    length += 2;
+                } else if (c >= 0x80) {
+                    length += 1;
+                }
+            }
+            return length;
+        }
+
+    }
+
+}
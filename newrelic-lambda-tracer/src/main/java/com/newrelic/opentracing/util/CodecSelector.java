@@ -0,0 +1,141 @@
+package com.newrelic.opentracing.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Chooses the codec for each payload.
+ *
+ * By default every payload uses {@link PayloadCodec#defaultCodec()}. Setting NEW_RELIC_PAYLOAD_CODEC to a codec name
+ * pins that codec, and setting it to "adaptive" picks, per invocation, the smallest-output codec that is expected to
+ * write the payload within NEW_RELIC_COMPRESSION_BUDGET_MILLIS. The expectation comes from the number of events in the
+ * payload and the bytes per event and nanoseconds per byte measured on previous invocations of this container.
+ */
+public class CodecSelector {
+
+    static final String NEW_RELIC_PAYLOAD_CODEC = "NEW_RELIC_PAYLOAD_CODEC";
+    static final String NEW_RELIC_COMPRESSION_BUDGET_MILLIS = "NEW_RELIC_COMPRESSION_BUDGET_MILLIS";
+    static final String ADAPTIVE = "adaptive";
+    static final long DEFAULT_BUDGET_MILLIS = 10;
+
+    // Ordered from the smallest output to the fastest
+    private static final PayloadCodec[] CANDIDATES = {
+            PayloadCodec.gzip(9), PayloadCodec.gzip(6), PayloadCodec.gzip(1), PayloadCodec.huffmanOnly()
+    };
+    // Initial serialize and compress cost in nanoseconds per KB of uncompressed JSON, replaced by measurements as they come in
+    private static final long[] INITIAL_NANOS_PER_KB = { 60_000, 25_000, 10_000, 6_000 };
+    private static final long INITIAL_BYTES_PER_EVENT = 600;
+    // Below this the fixed cost of a payload dominates and the rate measurement is noise
+    private static final long MIN_MEASURED_BYTES = 1024;
+
+    private static volatile CodecSelector instance = fromEnvironment();
+
+    private final PayloadCodec fixed;
+    private final long budgetNanos;
+    private final AtomicLong bytesPerEvent = new AtomicLong(INITIAL_BYTES_PER_EVENT);
+    private final AtomicLongArray nanosPerKb = new AtomicLongArray(INITIAL_NANOS_PER_KB);
+
+    private CodecSelector(PayloadCodec fixed, long budgetNanos) {
+        this.fixed = fixed;
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Always use the given codec.
+     */
+    public static CodecSelector fixed(PayloadCodec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("codec is null");
+        }
+        return new CodecSelector(codec, 0);
+    }
+
+    /**
+     * Choose a codec per payload so that writing it is expected to take no longer than the budget.
+     */
+    public static CodecSelector adaptive(long budget, TimeUnit unit) {
+        return new CodecSelector(null, unit.toNanos(budget));
+    }
+
+    public static CodecSelector getInstance() {
+        return instance;
+    }
+
+    /**
+     * This setter can be used for testing, or to configure the selector in code instead of the environment.
+     */
+    public static void setInstance(CodecSelector selector) {
+        instance = selector;
+    }
+
+    static CodecSelector fromEnvironment() {
+        return fromConfig(System.getenv(NEW_RELIC_PAYLOAD_CODEC), System.getenv(NEW_RELIC_COMPRESSION_BUDGET_MILLIS));
+    }
+
+    static CodecSelector fromConfig(String codecName, String budgetMillis) {
+        if (codecName != null && ADAPTIVE.equalsIgnoreCase(codecName.trim())) {
+            return adaptive(parseBudget(budgetMillis), TimeUnit.MILLISECONDS);
+        }
+        final PayloadCodec codec = codecName == null ? null : PayloadCodec.forName(codecName.trim().toLowerCase());
+        return fixed(codec == null ? PayloadCodec.defaultCodec() : codec);
+    }
+
+    private static long parseBudget(String budgetMillis) {
+        try {
+            return budgetMillis == null ? DEFAULT_BUDGET_MILLIS : Math.max(0, Long.parseLong(budgetMillis.trim()));
+        } catch (NumberFormatException e) {
+            return DEFAULT_BUDGET_MILLIS;
+        }
+    }
+
+    public boolean isAdaptive() {
+        return fixed == null;
+    }
+
+    /**
+     * @param eventCount number of span, transaction and error events in the payload
+     */
+    public PayloadCodec select(int eventCount) {
+        if (fixed != null) {
+            return fixed;
+        }
+        final long estimatedBytes = eventCount * bytesPerEvent.get();
+        for (int i = 0; i < CANDIDATES.length - 1; i++) {
+            if (estimatedBytes * nanosPerKb.get(i) / 1024 <= budgetNanos) {
+                return CANDIDATES[i];
+            }
+        }
+        return CANDIDATES[CANDIDATES.length - 1];
+    }
+
+    /**
+     * Feed back how long the payload took to write, so later selections are based on this function's data.
+     */
+    public void record(PayloadCodec codec, int eventCount, long uncompressedBytes, long nanos) {
+        if (fixed != null) {
+            return;
+        }
+        if (eventCount > 0) {
+            bytesPerEvent.set(average(bytesPerEvent.get(), uncompressedBytes / eventCount));
+        }
+        if (uncompressedBytes < MIN_MEASURED_BYTES) {
+            return;
+        }
+        for (int i = 0; i < CANDIDATES.length; i++) {
+            if (CANDIDATES[i] == codec) {
+                nanosPerKb.set(i, average(nanosPerKb.get(i), nanos * 1024 / uncompressedBytes));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Exponential moving average weighted towards history, so one slow invocation (a GC pause, a cold JIT) does not
+     * swing the selection. Concurrent updates may lose a sample, which is fine for an estimate.
+     */
+    private static long average(long current, long sample) {
+        return Math.max(1, (current * 3 + sample) / 4);
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.newrelic.opentracing.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Values derived from the function ARN and execution environment, which are constant for the life of a Lambda
+ * container. Each is computed on the first invocation and reused for as long as its inputs do not change.
+ *
+ * Every cache holds immutable entries behind a volatile field, so reads take no lock and a change of inputs, which
+ * only happens in tests or when one JVM serves several functions, just replaces them. The metadata is kept per codec
+ * name, since an adaptive {@link CodecSelector} may switch codecs from one invocation to the next.
+ */
+public class ContainerMetadata {
+
+    private static final String OTHER_TRANSACTION = "Other";
+    private static final String WEB_TRANSACTION = "WebTransaction";
+
+    private static final MetadataEntry[] NO_METADATA = {};
+
+    // One entry per codec name
+    private static volatile MetadataEntry[] metadata = NO_METADATA;
+    private static volatile TransactionNames transactionNames;
+
+    private ContainerMetadata() {
+    }
+
+    /**
+     * @return the metadata hash of {@link ProtocolUtil#getMetadata(String, String, PayloadCodec)} serialized as JSON
+     */
+    public static String getMetadataJson(String arn, String executionEnv, PayloadCodec codec) {
+        return getMetadata(arn, executionEnv, codec).json;
+    }
+
+    /**
+     * @return the start of a NR_LAMBDA_MONITORING line as ASCII bytes, up to and including the quote that opens the
+     * compressed data. Callers must not modify the array.
+     */
+    static byte[] getPayloadHeader(String arn, String executionEnv, PayloadCodec codec) {
+        return getMetadata(arn, executionEnv, codec).payloadHeader;
+    }
+
+    /**
+     * The transaction name for a function, as set on {@link com.newrelic.opentracing.state.TransactionState}.
+     *
+     * @param webTransaction whether the invocation came through API Gateway or an ALB
+     * @return the name, or null if the ARN does not name a function
+     */
+    public static String getTransactionName(String arn, boolean webTransaction) {
+        if (arn == null) {
+            return null;
+        }
+        TransactionNames names = transactionNames;
+        if (names == null || !arn.equals(names.arn)) {
+            names = new TransactionNames(arn);
+            transactionNames = names;
+        }
+        return webTransaction ? names.web : names.other;
+    }
+
+    private static MetadataEntry getMetadata(String arn, String executionEnv, PayloadCodec codec) {
+        final MetadataEntry[] entries = metadata;
+        final String codecName = codec.getName();
+        int kept = 0;
+        for (MetadataEntry entry : entries) {
+            if (entry.matches(arn, executionEnv)) {
+                if (entry.codecName.equals(codecName)) {
+                    return entry;
+                }
+                kept++;
+            }
+        }
+        // Entries for other inputs are let go, a racing update may drop an entry, which is just computed again
+        final MetadataEntry[] updated = new MetadataEntry[kept + 1];
+        int index = 0;
+        for (MetadataEntry entry : entries) {
+            if (entry.matches(arn, executionEnv)) {
+                updated[index++] = entry;
+            }
+        }
+        final MetadataEntry entry = new MetadataEntry(arn, executionEnv, codec);
+        updated[index] = entry;
+        metadata = updated;
+        return entry;
+    }
+
+    private static final class MetadataEntry {
+
+        final String arn;
+        final String executionEnv;
+        final String codecName;
+        final String json;
+        final byte[] payloadHeader;
+
+        MetadataEntry(String arn, String executionEnv, PayloadCodec codec) {
+            this.arn = arn;
+            this.executionEnv = executionEnv;
+            this.codecName = codec.getName();
+
+            final StringWriter out = new StringWriter();
+            try {
+                final JsonWriter writer = new JsonWriter(out);
+                writer.map(ProtocolUtil.getMetadata(arn, executionEnv, codec));
+                writer.flush();
+            } catch (IOException e) {
+                // StringWriter does not throw
+            }
+            this.json = out.toString();
+            // The compressed data is the last element of the array, a JSON string
+            this.payloadHeader = ("[2,\"NR_LAMBDA_MONITORING\"," + json + ",\"").getBytes(StandardCharsets.UTF_8);
+        }
+
+        boolean matches(String arn, String executionEnv) {
+            return equals(this.arn, arn) && equals(this.executionEnv, executionEnv);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+    }
+
+    private static final class TransactionNames {
+
+        final String arn;
+        final String other;
+        final String web;
+
+        TransactionNames(String arn) {
+            this.arn = arn;
+            if (arn.contains(":")) {
+                final String functionName = arn.substring(arn.lastIndexOf(":") + 1);
+                this.other = OTHER_TRANSACTION + "/Function/" + functionName;
+                this.web = WEB_TRANSACTION + "/Function/" + functionName;
+            } else {
+                this.other = null;
+                this.web = null;
+            }
+        }
+
+    }
+
+}
@@ -1,17 +1,20 @@
 package com.newrelic.opentracing.util;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 
 public class DistributedTraceUtil {
 
     /**
-     * A thread local which holds a {@link Random} whose seed is the thread id.
+     * The ThreadLocalRandom of the thread that loaded this class. Using it from any other thread is unsafe, call
+     * {@link ThreadLocalRandom#current()} instead.
      */
+    @Deprecated
     public static final ThreadLocalRandom random = ThreadLocalRandom.current();
 
+    static final String NEW_RELIC_128_BIT_TRACE_IDS = "NEW_RELIC_128_BIT_TRACE_IDS";
+
+    private static volatile boolean use128BitTraceIds = Boolean.parseBoolean(System.getenv(NEW_RELIC_128_BIT_TRACE_IDS));
+
     // Payload constants
     public static final String VERSION = "v";
     public static final String DATA = "d";
@@ -27,47 +30,94 @@ public class DistributedTraceUtil {
     public static final String PRIORITY = "pr";
     public static final String SAMPLED = "sa";
 
-    // Instantiate a new DecimalFormat instance as it is not thread safe:
-    // http://jonamiller.com/2015/12/21/decimalformat-is-not-thread-safe/
-    private static final ThreadLocal<DecimalFormat> FORMATTER =
-            ThreadLocal.withInitial(() -> {
-                DecimalFormat format = new DecimalFormat();
-                DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
-                if (symbols.getDecimalSeparator() == ',') {
-                    format.applyLocalizedPattern("#,######");
-                } else {
-                    format.applyPattern("#.######");
-                }
-                return format;
-            });
-
     private static final char[] hexchars = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
 
     private DistributedTraceUtil() {
     }
 
-    // Note that the digits are generated in "reverse order", which is perfectly fine here.
     public static String generateGuid() {
-        long random = DistributedTraceUtil.random.nextLong();
-        char[] result = new char[16];
-        for (int i = 0; i < 16; ++i) {
-            result[i] = hexchars[(int) (random & 0xF)];
-            random >>= 4;
-        }
+        return toHex(nextId());
+    }
+
+    /**
+     * @return a random, non-zero id from the calling thread's generator. 0 is left to mean no id.
+     */
+    public static long nextId() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id;
+        do {
+            id = random.nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    /**
+     * @return the id as 16 lower case hex digits
+     */
+    public static String toHex(long id) {
+        final char[] result = new char[16];
+        writeHex(id, result, 0);
+        return new String(result);
+    }
+
+    /**
+     * @return the 128 bit id as 32 lower case hex digits, high bits first
+     */
+    public static String toHex(long high, long low) {
+        final char[] result = new char[32];
+        writeHex(high, result, 0);
+        writeHex(low, result, 16);
         return new String(result);
     }
 
+    /**
+     * Write the id as 16 lower case hex digits starting at the offset.
+     */
+    public static void writeHex(long id, char[] dst, int offset) {
+        for (int i = offset + 15; i >= offset; i--) {
+            dst[i] = hexchars[(int) (id & 0xF)];
+            id >>>= 4;
+        }
+    }
+
+    public static boolean use128BitTraceIds() {
+        return use128BitTraceIds;
+    }
+
+    /**
+     * Overrides NEW_RELIC_128_BIT_TRACE_IDS for trace ids generated from now on.
+     */
+    public static void setUse128BitTraceIds(boolean use128BitTraceIds) {
+        DistributedTraceUtil.use128BitTraceIds = use128BitTraceIds;
+    }
+
     public static boolean isSampledPriority(float priority) {
         return priority >= 1.0f;
     }
 
+    /**
+     * @return a random float in [0, 1) rounded to six decimal places
+     */
     public static float nextTruncatedFloat() {
-        float next = 0.0f;
-        try {
-            next = Float.parseFloat(FORMATTER.get().format(DistributedTraceUtil.random.nextFloat()).replace(',', '.'));
-        } catch (NumberFormatException e) {
+        // ThreadLocalRandom.nextFloat is the top 24 bits of nextInt scaled by 2^-24
+        return truncatedFloat(ThreadLocalRandom.current().nextInt() >>> 8);
+    }
+
+    /**
+     * Round k / 2^24 to six decimal places, half to even, which is what formatting it with a "#.######"
+     * DecimalFormat and parsing the result did. The scaled value fits a long, so no step allocates.
+     *
+     * @param k 24 random bits
+     */
+    static float truncatedFloat(int k) {
+        final long scaled = k * 1_000_000L;
+        long millionths = scaled >>> 24;
+        final long remainder = scaled & 0xFFFFFF;
+        if (remainder > 0x800000 || (remainder == 0x800000 && (millionths & 1) != 0)) {
+            millionths++;
         }
-        return next;
+        // Both operands are exact floats, so the division rounds like Float.parseFloat would
+        return millionths / 1_000_000f;
     }
 
 }
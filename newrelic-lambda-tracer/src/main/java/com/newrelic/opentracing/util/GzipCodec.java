@@ -0,0 +1,80 @@
+package com.newrelic.opentracing.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * gzip through the per-thread {@link PayloadCompressor}.
+ */
+final class GzipCodec implements PayloadCodec {
+
+    static final GzipCodec HUFFMAN_ONLY = new GzipCodec("huffman", Deflater.BEST_SPEED, Deflater.HUFFMAN_ONLY);
+
+    // Indexed by level + 1, so DEFAULT_COMPRESSION (-1) is the first entry
+    private static final GzipCodec[] LEVELS = new GzipCodec[Deflater.BEST_COMPRESSION + 2];
+
+    static {
+        LEVELS[0] = new GzipCodec("gzip", Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+        for (int level = Deflater.NO_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++) {
+            LEVELS[level + 1] = new GzipCodec("gzip-" + level, level, Deflater.DEFAULT_STRATEGY);
+        }
+    }
+
+    private final String name;
+    private final int level;
+    private final int strategy;
+
+    private GzipCodec(String name, int level, int strategy) {
+        this.name = name;
+        this.level = level;
+        this.strategy = strategy;
+    }
+
+    static GzipCodec forLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        return LEVELS[level + 1];
+    }
+
+    static GzipCodec forName(String name) {
+        if (name == null) {
+            return null;
+        }
+        if (HUFFMAN_ONLY.name.equals(name)) {
+            return HUFFMAN_ONLY;
+        }
+        for (GzipCodec codec : LEVELS) {
+            if (codec.name.equals(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public OutputStream openStream(OutputStream sink) throws IOException {
+        return PayloadCompressor.get().openStream(sink, level, strategy);
+    }
+
+    @Override
+    public String compressAndEncode(String source) {
+        return PayloadCompressor.get().compressAndEncode(source, level, strategy);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
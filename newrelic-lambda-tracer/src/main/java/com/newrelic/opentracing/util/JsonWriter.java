@@ -0,0 +1,304 @@
+package com.newrelic.opentracing.util;
+
+import com.newrelic.opentracing.events.Event;
+import org.json.simple.JSONAware;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming JSON writer. Output is identical to json-simple's toJSONString, but values are written straight to
+ * the underlying {@link Writer} instead of being built into intermediate Strings.
+ */
+public class JsonWriter {
+
+    private static final int BUFFER_SIZE = 1024;
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+
+    private final Writer out;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+
+    // One entry per open object or array, true until the first element has been written
+    private boolean[] first = new boolean[16];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        separator();
+        write('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        depth--;
+        write('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        separator();
+        write('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        depth--;
+        write(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        separator();
+        writeQuoted(name);
+        write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        separator();
+        if (value == null) {
+            write("null");
+        } else {
+            writeQuoted(value);
+        }
+        return this;
+    }
+
+    /**
+     * Write an id as a string of 16 hex digits, see {@link DistributedTraceUtil#toHex(long)}.
+     */
+    public JsonWriter hexValue(long id) throws IOException {
+        separator();
+        if (BUFFER_SIZE - position < 18) {
+            flush();
+        }
+        buffer[position++] = '"';
+        DistributedTraceUtil.writeHex(id, buffer, position);
+        position += 16;
+        buffer[position++] = '"';
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separator();
+        write(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(float value) throws IOException {
+        separator();
+        write(Float.isNaN(value) || Float.isInfinite(value) ? "null" : Float.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        separator();
+        write(Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separator();
+        write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separator();
+        write("null");
+        return this;
+    }
+
+    /**
+     * Write an already serialized JSON value.
+     */
+    public JsonWriter rawValue(String json) throws IOException {
+        separator();
+        write(json);
+        return this;
+    }
+
+    /**
+     * Write an already serialized JSON value held in a char array.
+     */
+    public JsonWriter rawValue(char[] json, int offset, int length) throws IOException {
+        separator();
+        if (length > BUFFER_SIZE - position) {
+            flush();
+            if (length > BUFFER_SIZE) {
+                out.write(json, offset, length);
+                return this;
+            }
+        }
+        System.arraycopy(json, offset, buffer, position, length);
+        position += length;
+        return this;
+    }
+
+    /**
+     * Write any value the same way json-simple's JSONValue.toJSONString would.
+     */
+    public JsonWriter value(Object value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        } else if (value instanceof String) {
+            return value((String) value);
+        } else if (value instanceof Double) {
+            return value(((Double) value).doubleValue());
+        } else if (value instanceof Float) {
+            return value(((Float) value).floatValue());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return rawValue(value.toString());
+        } else if (value instanceof Event) {
+            ((Event) value).writeJson(this);
+            return this;
+        } else if (value instanceof JSONAware) {
+            return rawValue(((JSONAware) value).toJSONString());
+        } else if (value instanceof Map) {
+            return map((Map<?, ?>) value);
+        } else if (value instanceof List) {
+            return list((List<?>) value);
+        }
+        return rawValue(value.toString());
+    }
+
+    public JsonWriter map(Map<?, ?> map) throws IOException {
+        if (map == null) {
+            return nullValue();
+        }
+        beginObject();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            name(String.valueOf(entry.getKey()));
+            value(entry.getValue());
+        }
+        return endObject();
+    }
+
+    public JsonWriter list(List<?> list) throws IOException {
+        if (list == null) {
+            return nullValue();
+        }
+        beginArray();
+        for (Object element : list) {
+            value(element);
+        }
+        return endArray();
+    }
+
+    /**
+     * Push any buffered characters to the underlying writer. Does not flush the writer itself.
+     */
+    public void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private void push() {
+        if (depth == first.length) {
+            first = Arrays.copyOf(first, depth * 2);
+        }
+        first[depth++] = true;
+    }
+
+    private void separator() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else if (depth > 0) {
+            if (first[depth - 1]) {
+                first[depth - 1] = false;
+            } else {
+                write(',');
+            }
+        }
+    }
+
+    private void write(char c) throws IOException {
+        if (position == BUFFER_SIZE) {
+            flush();
+        }
+        buffer[position++] = c;
+    }
+
+    private void write(String s) throws IOException {
+        final int length = s.length();
+        if (length > BUFFER_SIZE - position) {
+            flush();
+            if (length > BUFFER_SIZE) {
+                out.write(s);
+                return;
+            }
+        }
+        s.getChars(0, length, buffer, position);
+        position += length;
+    }
+
+    /**
+     * Same escaping rules as json-simple's JSONValue.escape.
+     */
+    private void writeQuoted(String s) throws IOException {
+        write('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char ch = s.charAt(i);
+            switch (ch) {
+                case '"':
+                    write('\\');
+                    write('"');
+                    break;
+                case '\\':
+                    write('\\');
+                    write('\\');
+                    break;
+                case '\b':
+                    write('\\');
+                    write('b');
+                    break;
+                case '\f':
+                    write('\\');
+                    write('f');
+                    break;
+                case '\n':
+                    write('\\');
+                    write('n');
+                    break;
+                case '\r':
+                    write('\\');
+                    write('r');
+                    break;
+                case '\t':
+                    write('\\');
+                    write('t');
+                    break;
+                case '/':
+                    write('\\');
+                    write('/');
+                    break;
+                default:
+                    if (ch <= '\u001F' || (ch >= '\u007F' && ch <= '\u009F') || (ch >= '\u2000' && ch <= '\u20FF')) {
+                        write('\\');
+                        write('u');
+                        write(HEX_UPPER[(ch >> 12) & 0xF]);
+                        write(HEX_UPPER[(ch >> 8) & 0xF]);
+                        write(HEX_UPPER[(ch >> 4) & 0xF]);
+                        write(HEX_UPPER[ch & 0xF]);
+                    } else {
+                        write(ch);
+                    }
+            }
+        }
+        write('"');
+    }
+
+}
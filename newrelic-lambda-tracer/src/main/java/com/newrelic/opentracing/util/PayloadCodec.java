@@ -0,0 +1,59 @@
+package com.newrelic.opentracing.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses the data hash of a payload. The collector only understands gzip, so codecs differ in how much CPU
+ * they trade for size, not in their output format. The name is reported in the payload metadata.
+ */
+public interface PayloadCodec {
+
+    /**
+     * @return the name reported under "compression" in the payload metadata
+     */
+    String getName();
+
+    /**
+     * Open a compressing stream on the sink. Closing the returned stream finishes the compressed data and closes the sink.
+     */
+    OutputStream openStream(OutputStream sink) throws IOException;
+
+    /**
+     * Compress and base64 encode.
+     */
+    String compressAndEncode(String source);
+
+    /**
+     * gzip at the given level, from {@link java.util.zip.Deflater#BEST_SPEED} to {@link java.util.zip.Deflater#BEST_COMPRESSION},
+     * or {@link java.util.zip.Deflater#DEFAULT_COMPRESSION}.
+     */
+    static PayloadCodec gzip(int level) {
+        return GzipCodec.forLevel(level);
+    }
+
+    /**
+     * gzip with the HUFFMAN_ONLY strategy. It skips the search for repeated strings, which is where deflate spends
+     * most of its time, at the cost of a noticeably larger payload.
+     */
+    static PayloadCodec huffmanOnly() {
+        return GzipCodec.HUFFMAN_ONLY;
+    }
+
+    /**
+     * gzip at the level set with NEW_RELIC_COMPRESSION_LEVEL, or the JDK default.
+     */
+    static PayloadCodec defaultCodec() {
+        return GzipCodec.forLevel(PayloadCompressor.getDefaultLevel());
+    }
+
+    /**
+     * Look up a codec by the name it reports: "gzip", "gzip-1" through "gzip-9", or "huffman".
+     *
+     * @return the codec, or null if the name is unknown
+     */
+    static PayloadCodec forName(String name) {
+        return GzipCodec.forName(name);
+    }
+
+}
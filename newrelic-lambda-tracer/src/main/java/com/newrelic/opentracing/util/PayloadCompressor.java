@@ -0,0 +1,284 @@
+package com.newrelic.opentracing.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Reusable gzip compression context. Each thread keeps one instance, so a warm container resets a single
+ * Deflater between invocations instead of allocating new native zlib state for every payload. The output buffer
+ * is kept between invocations and sized from recent payloads.
+ *
+ * Instances are not thread safe. Use {@link #get()} to obtain the one that belongs to the current thread.
+ */
+public class PayloadCompressor {
+
+    private static final String NEW_RELIC_COMPRESSION_LEVEL = "NEW_RELIC_COMPRESSION_LEVEL";
+
+    // Same header GZIPOutputStream writes: magic number, deflate method, no flags, no mtime, no extra flags, OS 0
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private static final int MIN_BUFFER_SIZE = 4096;
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    private static final ThreadLocal<PayloadCompressor> INSTANCE = ThreadLocal.withInitial(PayloadCompressor::new);
+
+    private static volatile int defaultLevel = parseLevel(System.getenv(NEW_RELIC_COMPRESSION_LEVEL));
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] streamBuffer = new byte[STREAM_BUFFER_SIZE];
+
+    private final boolean temporary;
+    private int averageOutputSize = MIN_BUFFER_SIZE;
+    private byte[] output = new byte[targetOutputSize()];
+    private boolean inUse;
+
+    PayloadCompressor() {
+        this(false);
+    }
+
+    private PayloadCompressor(boolean temporary) {
+        this.temporary = temporary;
+    }
+
+    /**
+     * @return the compressor that belongs to the current thread
+     */
+    public static PayloadCompressor get() {
+        final PayloadCompressor compressor = INSTANCE.get();
+        // Only possible if a payload is compressed while another one is being streamed on the same thread. The
+        // temporary compressor frees its Deflater once it has been used.
+        return compressor.inUse ? new PayloadCompressor(true) : compressor;
+    }
+
+    /**
+     * The level used when none is given, {@link Deflater#DEFAULT_COMPRESSION} unless NEW_RELIC_COMPRESSION_LEVEL is set.
+     */
+    public static int getDefaultLevel() {
+        return defaultLevel;
+    }
+
+    public static void setDefaultLevel(int level) {
+        defaultLevel = checkLevel(level);
+    }
+
+    /**
+     * gzip compress and base64 encode using the default level.
+     */
+    public String compressAndEncode(String source) {
+        return compressAndEncode(source, defaultLevel);
+    }
+
+    /**
+     * gzip compress and base64 encode using the given level.
+     */
+    public String compressAndEncode(String source, int level) {
+        return compressAndEncode(source, level, Deflater.DEFAULT_STRATEGY);
+    }
+
+    String compressAndEncode(String source, int level, int strategy) {
+        final byte[] input = source.getBytes(StandardCharsets.UTF_8);
+        final int length = compress(input, 0, input.length, level, strategy);
+        final String encoded = Base64.encode(output, 0, length);
+        recordOutputSize(length);
+        return encoded;
+    }
+
+    /**
+     * Open a gzip stream backed by this compressor's Deflater. Closing the returned stream finishes the gzip data
+     * and closes the sink. Only one stream per compressor can be open at a time, and it must be closed even if
+     * writing to it fails, or the compressor stays in use.
+     */
+    public OutputStream openStream(OutputStream sink, int level) throws IOException {
+        return openStream(sink, level, Deflater.DEFAULT_STRATEGY);
+    }
+
+    public OutputStream openStream(OutputStream sink) throws IOException {
+        return openStream(sink, defaultLevel);
+    }
+
+    OutputStream openStream(OutputStream sink, int level, int strategy) throws IOException {
+        begin(level, strategy);
+        try {
+            sink.write(GZIP_HEADER);
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+        return new GzipStream(sink);
+    }
+
+    private int compress(byte[] input, int offset, int length, int level, int strategy) {
+        begin(level, strategy);
+        try {
+            if (output.length < targetOutputSize()) {
+                output = new byte[targetOutputSize()];
+            }
+
+            crc.update(input, offset, length);
+            deflater.setInput(input, offset, length);
+            deflater.finish();
+
+            System.arraycopy(GZIP_HEADER, 0, output, 0, GZIP_HEADER.length);
+            int position = GZIP_HEADER.length;
+            while (!deflater.finished()) {
+                if (position == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                position += deflater.deflate(output, position, output.length - position);
+            }
+
+            if (output.length - position < GZIP_TRAILER_SIZE) {
+                output = Arrays.copyOf(output, position + GZIP_TRAILER_SIZE);
+            }
+            writeTrailer(output, position, crc.getValue(), length);
+            return position + GZIP_TRAILER_SIZE;
+        } finally {
+            release();
+        }
+    }
+
+    private void begin(int level, int strategy) {
+        checkLevel(level);
+        inUse = true;
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setStrategy(strategy);
+        crc.reset();
+    }
+
+    private void release() {
+        inUse = false;
+        if (temporary) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Keep the output buffer close to what recent payloads needed, so a single large payload does not pin a
+     * large buffer for the life of the container.
+     */
+    private void recordOutputSize(int size) {
+        averageOutputSize = (averageOutputSize * 3 + size) / 4;
+        if (output.length > targetOutputSize() * 4) {
+            output = new byte[targetOutputSize()];
+        }
+    }
+
+    private int targetOutputSize() {
+        return Math.max(MIN_BUFFER_SIZE, averageOutputSize + averageOutputSize / 4);
+    }
+
+    private static void writeTrailer(byte[] buffer, int offset, long crc, long size) {
+        writeInt(buffer, offset, (int) crc);
+        writeInt(buffer, offset + 4, (int) size);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static int checkLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        return level;
+    }
+
+    private static int parseLevel(String level) {
+        try {
+            return level == null ? Deflater.DEFAULT_COMPRESSION : checkLevel(Integer.parseInt(level.trim()));
+        } catch (IllegalArgumentException e) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+    }
+
+    /**
+     * gzip stream that writes through the shared Deflater and buffer instead of allocating its own.
+     */
+    private class GzipStream extends OutputStream {
+
+        private final OutputStream out;
+        private final byte[] singleByte = new byte[1];
+        private long size;
+        private boolean closed;
+
+        GzipStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            singleByte[0] = (byte) b;
+            write(singleByte, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return;
+            }
+            crc.update(b, off, len);
+            size += len;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                drain(Deflater.NO_FLUSH);
+            }
+        }
+
+        /**
+         * Sync flush, so everything written so far can be decompressed from what has reached the sink.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (closed) {
+                return;
+            }
+            int length;
+            do {
+                length = deflater.deflate(streamBuffer, 0, streamBuffer.length, Deflater.SYNC_FLUSH);
+                out.write(streamBuffer, 0, length);
+            } while (length == streamBuffer.length);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    drain(Deflater.NO_FLUSH);
+                }
+                writeTrailer(streamBuffer, 0, crc.getValue(), size);
+                out.write(streamBuffer, 0, GZIP_TRAILER_SIZE);
+                out.close();
+            } finally {
+                release();
+            }
+        }
+
+        private void drain(int flush) throws IOException {
+            final int length = deflater.deflate(streamBuffer, 0, streamBuffer.length, flush);
+            if (length > 0) {
+                out.write(streamBuffer, 0, length);
+            }
+        }
+
+    }
+
+}
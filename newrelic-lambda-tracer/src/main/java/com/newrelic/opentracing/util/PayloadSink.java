@@ -0,0 +1,13 @@
+package com.newrelic.opentracing.util;
+
+import java.io.IOException;
+
+/**
+ * Receives complete payload lines, as ASCII bytes without a trailing newline. The bytes are only valid for the
+ * duration of the call.
+ */
+public interface PayloadSink {
+
+    void line(byte[] bytes, int offset, int length) throws IOException;
+
+}
@@ -0,0 +1,109 @@
+package com.newrelic.opentracing.util;
+
+import com.newrelic.opentracing.events.ErrorEvent;
+import com.newrelic.opentracing.events.Event;
+import com.newrelic.opentracing.events.TransactionEvent;
+import com.newrelic.opentracing.traces.ErrorTrace;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes the payload lines that are logged at the end of an invocation.
+ *
+ * The data hash is serialized straight into a gzip stream which feeds a base64 encoder which feeds the sink,
+ * so memory use is bounded by the stream buffers instead of the size of the uncompressed payload.
+ */
+public class PayloadWriter {
+
+    private PayloadWriter() {
+    }
+
+    /**
+     * Write a complete NR_LAMBDA_MONITORING line, without the trailing newline, as ASCII bytes to the sink.
+     * The sink is not closed.
+     *
+     * @return the size of the data hash before compression, in bytes
+     */
+    public static long writePayload(OutputStream sink, PayloadCodec codec, String arn, String executionEnv, List<? extends Event> spans,
+            TransactionEvent txnEvent, List<ErrorEvent> errorEvents, List<ErrorTrace> errorTraces) throws IOException {
+        sink.write(ContainerMetadata.getPayloadHeader(arn, executionEnv, codec));
+
+        final OutputStream compressed = codec.openStream(new Base64OutputStream(sink));
+        final CountingOutputStream uncompressed = new CountingOutputStream(compressed);
+        try {
+            final Writer data = new OutputStreamWriter(uncompressed, StandardCharsets.UTF_8);
+            final JsonWriter dataWriter = new JsonWriter(data);
+            ProtocolUtil.writeData(dataWriter, spans, txnEvent, errorEvents, errorTraces);
+            dataWriter.flush();
+            // Finishes the gzip stream and the base64 encoding, but leaves the sink open
+            data.close();
+        } catch (Throwable t) {
+            abort(compressed, t);
+            throw t;
+        }
+
+        sink.write('"');
+        sink.write(']');
+        return uncompressed.getCount();
+    }
+
+    /**
+     * Write the payload as one or more NR_LAMBDA_MONITORING lines, each at most maxLineBytes long unless a single
+     * event does not fit in that on its own. Each line is a complete payload that can be decoded by itself.
+     *
+     * @return the size of the data hashes before compression, in bytes
+     */
+    public static long writePayloads(PayloadSink sink, PayloadCodec codec, long maxLineBytes, String arn, String executionEnv,
+            List<? extends Event> spans, TransactionEvent txnEvent, List<ErrorEvent> errorEvents, List<ErrorTrace> errorTraces) throws IOException {
+        return writePayloads(sink, codec, maxLineBytes, arn, executionEnv, spans, spans.size(), spans.size(), txnEvent, errorEvents, errorTraces);
+    }
+
+    /**
+     * @param spansSeen spans that finished, including those that were not kept
+     * @param spanReservoirSize how many spans could have been kept
+     * @see #writePayloads(PayloadSink, PayloadCodec, long, String, String, List, TransactionEvent, List, List)
+     */
+    public static long writePayloads(PayloadSink sink, PayloadCodec codec, long maxLineBytes, String arn, String executionEnv,
+            List<? extends Event> spans, int spansSeen, int spanReservoirSize, TransactionEvent txnEvent, List<ErrorEvent> errorEvents,
+            List<ErrorTrace> errorTraces) throws IOException {
+        final ChunkedPayloadWriter writer = new ChunkedPayloadWriter(sink, codec, maxLineBytes,
+                ContainerMetadata.getPayloadHeader(arn, executionEnv, codec));
+        return writer.write(spans, spansSeen, spanReservoirSize, txnEvent, errorEvents, errorTraces);
+    }
+
+    /**
+     * Close a compressed stream that could not be written in full, so the codec releases its per-thread state.
+     * The line is broken either way, so a failure to close is only recorded on the original one.
+     */
+    static void abort(OutputStream compressed, Throwable cause) {
+        try {
+            compressed.close();
+        } catch (Throwable t) {
+            cause.addSuppressed(t);
+        }
+    }
+
+    /**
+     * Write the uncompressed DEBUG representation of the payload.
+     */
+    public static void writeDebugPayload(Writer out, PayloadCodec codec, String arn, String executionEnv, List<? extends Event> spans,
+            TransactionEvent txnEvent, List<ErrorEvent> errorEvents, List<ErrorTrace> errorTraces) throws IOException {
+        writeDebugPayload(out, codec, arn, executionEnv, spans, spans.size(), spans.size(), txnEvent, errorEvents, errorTraces);
+    }
+
+    public static void writeDebugPayload(Writer out, PayloadCodec codec, String arn, String executionEnv, List<? extends Event> spans,
+            int spansSeen, int spanReservoirSize, TransactionEvent txnEvent, List<ErrorEvent> errorEvents, List<ErrorTrace> errorTraces)
+            throws IOException {
+        final JsonWriter writer = new JsonWriter(out);
+        writer.beginArray().value(2).value("DEBUG").rawValue(ContainerMetadata.getMetadataJson(arn, executionEnv, codec));
+        ProtocolUtil.writeData(writer, spans, spansSeen, spanReservoirSize, txnEvent, errorEvents, errorTraces);
+        writer.endArray();
+        writer.flush();
+    }
+
+}
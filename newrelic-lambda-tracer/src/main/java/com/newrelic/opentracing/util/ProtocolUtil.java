@@ -8,7 +8,6 @@ import com.newrelic.opentracing.traces.ErrorTrace;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
@@ -19,7 +18,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * See the Lambda spec for the Protocol format.
@@ -44,18 +42,36 @@ public class ProtocolUtil {
         return metadata;
     }
 
+    /**
+     * Metadata for a payload whose data was written with the given codec.
+     */
+    public static Map<String, Object> getMetadata(String arn, String executionEnv, PayloadCodec codec) {
+        final Map<String, Object> metadata = getMetadata(arn, executionEnv);
+        metadata.put("compression", codec.getName());
+        return metadata;
+    }
+
     public static Map<String, Object> getData(List<LambdaSpan> spans, TransactionEvent transactionEvent, List<ErrorEvent> errorEvents,
             List<ErrorTrace> errorTraces) {
+        return getData(spans, spans.size(), spans.size(), transactionEvent, errorEvents, errorTraces);
+    }
+
+    /**
+     * @param spansSeen spans that finished, including those that were not kept
+     * @param spanReservoirSize how many spans could have been kept
+     */
+    public static Map<String, Object> getData(List<LambdaSpan> spans, int spansSeen, int spanReservoirSize, TransactionEvent transactionEvent,
+            List<ErrorEvent> errorEvents, List<ErrorTrace> errorTraces) {
         Map<String, Object> data = new HashMap<>();
 
         if (spans.size() > 0) {
-            addEvents(spans, data, "span_event_data");
+            addEvents(spans, spansSeen, spanReservoirSize, data, "span_event_data");
         }
         if (transactionEvent != null) {
-            addEvents(Collections.singletonList(transactionEvent), data, "analytic_event_data");
+            addEvents(Collections.singletonList(transactionEvent), 1, 1, data, "analytic_event_data");
         }
         if (errorEvents.size() > 0) {
-            addEvents(errorEvents, data, "error_event_data");
+            addEvents(errorEvents, errorEvents.size(), errorEvents.size(), data, "error_event_data");
         }
         if (errorTraces.size() > 0) {
             data.put("error_data", Arrays.asList(null, errorTraces));
@@ -64,13 +80,53 @@ public class ProtocolUtil {
         return data;
     }
 
-    private static void addEvents(List<? extends Event> events, Map<String, Object> data, String eventKey) {
+    /**
+     * Stream the same data hash {@link #getData} builds, without materializing it.
+     */
+    public static void writeData(JsonWriter writer, List<? extends Event> spans, TransactionEvent transactionEvent, List<ErrorEvent> errorEvents,
+            List<ErrorTrace> errorTraces) throws IOException {
+        writeData(writer, spans, spans.size(), spans.size(), transactionEvent, errorEvents, errorTraces);
+    }
+
+    /**
+     * Stream the same data hash {@link #getData(List, int, int, TransactionEvent, List, List)} builds, without materializing it.
+     */
+    public static void writeData(JsonWriter writer, List<? extends Event> spans, int spansSeen, int spanReservoirSize,
+            TransactionEvent transactionEvent, List<ErrorEvent> errorEvents, List<ErrorTrace> errorTraces) throws IOException {
+        writer.beginObject();
+        if (spans.size() > 0) {
+            writeEvents(writer, "span_event_data", spans, spansSeen, spanReservoirSize);
+        }
+        if (transactionEvent != null) {
+            writeEvents(writer, "analytic_event_data", Collections.singletonList(transactionEvent), 1, 1);
+        }
+        if (errorEvents.size() > 0) {
+            writeEvents(writer, "error_event_data", errorEvents, errorEvents.size(), errorEvents.size());
+        }
+        if (errorTraces.size() > 0) {
+            writer.name("error_data").beginArray().nullValue().list(errorTraces).endArray();
+        }
+        writer.endObject();
+    }
+
+    private static void writeEvents(JsonWriter writer, String eventKey, List<? extends Event> events, int eventsSeen, int reservoirSize)
+            throws IOException {
+        writer.name(eventKey).beginArray().nullValue();
+        writer.beginObject();
+        writer.name("events_seen").value(eventsSeen);
+        writer.name("reservoir_size").value(reservoirSize);
+        writer.endObject();
+        writer.list(events);
+        writer.endArray();
+    }
+
+    private static void addEvents(List<? extends Event> events, int eventsSeen, int reservoirSize, Map<String, Object> data, String eventKey) {
         List<Object> list = new ArrayList<>();
         list.add(0, null);
 
         final Map<String, Object> eventInfo = new HashMap<>();
-        eventInfo.put("events_seen", events.size());
-        eventInfo.put("reservoir_size", events.size());
+        eventInfo.put("events_seen", eventsSeen);
+        eventInfo.put("reservoir_size", reservoirSize);
         list.add(1, eventInfo);
         list.add(2, events);
         data.put(eventKey, list);
@@ -80,16 +136,7 @@ public class ProtocolUtil {
      * gzip compress and base64 encode.
      */
     public static String compressAndEncode(String source) {
-        try {
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            GZIPOutputStream gzip = new GZIPOutputStream(output);
-            gzip.write(source.getBytes(StandardCharsets.UTF_8));
-            gzip.flush();
-            gzip.close();
-            return Base64.encode(output.toByteArray());
-        } catch (IOException e) {
-        }
-        return "";
+        return PayloadCompressor.get().compressAndEncode(source);
     }
 
     /**
@@ -5,8 +5,10 @@ public enum SpanCategory {
     DATASTORE,
     GENERIC;
 
+    private final String lowerCaseName = name().toLowerCase();
+
     @Override
     public String toString() {
-        return name().toLowerCase();
+        return lowerCaseName;
     }
 }
@@ -2,20 +2,66 @@ package com.newrelic.opentracing.util;
 
 import com.newrelic.opentracing.LambdaSpan;
 
-import java.util.Map;
-
+/**
+ * A span is a datastore span if it has any of the db tags, and an http span if it is a client span with any of the
+ * http tags. Spans track which of those tags they have in a bitmask as tags are set, so the category is known at
+ * serialization time without looking the tags up again.
+ */
 public class SpanCategoryDetection {
 
+    static final int DATASTORE_TAG = 1;
+    static final int HTTP_TAG = 1 << 1;
+    static final int CLIENT_KIND = 1 << 2;
+
     private SpanCategoryDetection() {
     }
 
     public static SpanCategory detectSpanCategory(LambdaSpan span) {
-        final Map<String, Object> tags = span.getTags();
-        if (tags.containsKey("db.instance") || tags.containsKey("db.statement") || tags.containsKey("db.type") || tags.containsKey("db.user")) {
+        return span.getCategory();
+    }
+
+    /**
+     * @return the category bits of all the tags in the store
+     */
+    public static int categoryBits(TagStore tags) {
+        int bits = 0;
+        for (int i = 0; i < tags.size(); i++) {
+            final Object value = tags.valueAt(i);
+            bits = categoryBits(bits, tags.keyAt(i), value instanceof String ? (String) value : null);
+        }
+        return bits;
+    }
+
+    /**
+     * @param stringValue the value if the tag was set to a String, null otherwise
+     * @return the category bits after setting the tag
+     */
+    public static int categoryBits(int bits, String key, String stringValue) {
+        if (key == null) {
+            return bits;
+        }
+        switch (key) {
+            case "db.instance":
+            case "db.statement":
+            case "db.type":
+            case "db.user":
+                return bits | DATASTORE_TAG;
+            case "http.method":
+            case "http.status_code":
+            case "http.url":
+                return bits | HTTP_TAG;
+            case "span.kind":
+                return "client".equals(stringValue) ? bits | CLIENT_KIND : bits & ~CLIENT_KIND;
+            default:
+                return bits;
+        }
+    }
+
+    public static SpanCategory fromBits(int bits) {
+        if ((bits & DATASTORE_TAG) != 0) {
             return SpanCategory.DATASTORE;
         }
-        if (tags.getOrDefault("span.kind", "").equals("client") &&
-                (tags.containsKey("http.method") || tags.containsKey("http.status_code") || tags.containsKey("http.url"))) {
+        if ((bits & (HTTP_TAG | CLIENT_KIND)) == (HTTP_TAG | CLIENT_KIND)) {
             return SpanCategory.HTTP;
         }
         return SpanCategory.GENERIC;
@@ -0,0 +1,382 @@
+package com.newrelic.opentracing.util;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Flat storage for span tags. Keys, type codes and values live in parallel arrays, with numbers and booleans kept
+ * as raw bits in a long slot, so setting a primitive tag does not box it and a span's tags take four arrays instead
+ * of a HashMap with an entry per tag.
+ *
+ * Tags keep the semantics of a map: setting a key again replaces its value, and {@link #get} returns the value with
+ * the same boxed type it was set with. Spans carry a handful of tags, so lookups are a linear scan, which also keeps
+ * the insertion order for serialization. Like the HashMap it replaces, this class is not thread safe.
+ */
+public class TagStore {
+
+    private static final byte STRING = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte FLOAT = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte OBJECT = 6; // other Number types and null, kept as they are
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final String[] EMPTY_KEYS = {};
+    private static final byte[] EMPTY_TYPES = {};
+    private static final long[] EMPTY_PRIMITIVES = {};
+    private static final Object[] EMPTY_OBJECTS = {};
+
+    private String[] keys;
+    private byte[] types;
+    private long[] primitives;
+    private Object[] objects;
+    private int size;
+
+    private Map<String, Object> mapView;
+
+    /**
+     * An empty store. The arrays are allocated when the first tag is set.
+     */
+    public TagStore() {
+        keys = EMPTY_KEYS;
+        types = EMPTY_TYPES;
+        primitives = EMPTY_PRIMITIVES;
+        objects = EMPTY_OBJECTS;
+    }
+
+    private TagStore(int capacity) {
+        keys = new String[capacity];
+        types = new byte[capacity];
+        primitives = new long[capacity];
+        objects = new Object[capacity];
+    }
+
+    /**
+     * Copy a map of tags, keeping the boxed type of each value.
+     */
+    public static TagStore of(Map<String, ?> tags) {
+        final TagStore store = new TagStore();
+        if (tags != null) {
+            for (Map.Entry<String, ?> entry : tags.entrySet()) {
+                store.putObject(entry.getKey(), entry.getValue());
+            }
+        }
+        return store;
+    }
+
+    public TagStore copy() {
+        if (size == 0) {
+            return new TagStore();
+        }
+        final TagStore copy = new TagStore(keys.length);
+        System.arraycopy(keys, 0, copy.keys, 0, size);
+        System.arraycopy(types, 0, copy.types, 0, size);
+        System.arraycopy(primitives, 0, copy.primitives, 0, size);
+        System.arraycopy(objects, 0, copy.objects, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void put(String key, String value) {
+        final int index = slot(key);
+        types[index] = STRING;
+        objects[index] = value;
+        primitives[index] = 0;
+    }
+
+    public void put(String key, boolean value) {
+        putPrimitive(key, BOOLEAN, value ? 1 : 0);
+    }
+
+    public void put(String key, int value) {
+        putPrimitive(key, INT, value);
+    }
+
+    public void put(String key, long value) {
+        putPrimitive(key, LONG, value);
+    }
+
+    public void put(String key, float value) {
+        putPrimitive(key, FLOAT, Float.floatToRawIntBits(value));
+    }
+
+    public void put(String key, double value) {
+        putPrimitive(key, DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Store a Number, unboxing the common types. Other types, and null, are kept as they are.
+     */
+    public void put(String key, Number value) {
+        if (value instanceof Integer) {
+            put(key, value.intValue());
+        } else if (value instanceof Long) {
+            put(key, value.longValue());
+        } else if (value instanceof Double) {
+            put(key, value.doubleValue());
+        } else if (value instanceof Float) {
+            put(key, value.floatValue());
+        } else {
+            putReference(key, value);
+        }
+    }
+
+    public void putObject(String key, Object value) {
+        if (value instanceof String) {
+            put(key, (String) value);
+        } else if (value instanceof Boolean) {
+            put(key, ((Boolean) value).booleanValue());
+        } else if (value instanceof Number) {
+            put(key, (Number) value);
+        } else {
+            putReference(key, value);
+        }
+    }
+
+    public void putAll(TagStore other) {
+        for (int i = 0; i < other.size; i++) {
+            final int index = slot(other.keys[i]);
+            types[index] = other.types[i];
+            primitives[index] = other.primitives[i];
+            objects[index] = other.objects[i];
+        }
+    }
+
+    public boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the value, boxed with the type it was set with, or null
+     */
+    public Object get(String key) {
+        final int index = indexOf(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    /**
+     * @return the value if it was set as a String, null otherwise. Never allocates.
+     */
+    public String getString(String key) {
+        final int index = indexOf(key);
+        return index >= 0 && types[index] == STRING ? (String) objects[index] : null;
+    }
+
+    public String keyAt(int index) {
+        return keys[index];
+    }
+
+    public Object valueAt(int index) {
+        switch (types[index]) {
+            case STRING:
+            case OBJECT:
+                return objects[index];
+            case BOOLEAN:
+                return primitives[index] != 0;
+            case INT:
+                return (int) primitives[index];
+            case LONG:
+                return primitives[index];
+            case FLOAT:
+                return Float.intBitsToFloat((int) primitives[index]);
+            case DOUBLE:
+                return Double.longBitsToDouble(primitives[index]);
+            default:
+                throw new IllegalStateException("Unknown tag type " + types[index]);
+        }
+    }
+
+    public boolean remove(String key) {
+        final int index = indexOf(key);
+        if (index < 0) {
+            return false;
+        }
+        final int moved = size - index - 1;
+        System.arraycopy(keys, index + 1, keys, index, moved);
+        System.arraycopy(types, index + 1, types, index, moved);
+        System.arraycopy(primitives, index + 1, primitives, index, moved);
+        System.arraycopy(objects, index + 1, objects, index, moved);
+        size--;
+        keys[size] = null;
+        objects[size] = null;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Write the tags as a JSON object without boxing them, leaving out one key.
+     *
+     * @param excludedKey key to leave out, or null
+     */
+    public void writeTo(JsonWriter writer, String excludedKey) throws IOException {
+        writer.beginObject();
+        for (int i = 0; i < size; i++) {
+            if (excludedKey != null && excludedKey.equals(keys[i])) {
+                continue;
+            }
+            writer.name(keys[i]);
+            switch (types[i]) {
+                case STRING:
+                    writer.value((String) objects[i]);
+                    break;
+                case BOOLEAN:
+                    writer.value(primitives[i] != 0);
+                    break;
+                case INT:
+                case LONG:
+                    writer.value(primitives[i]);
+                    break;
+                case FLOAT:
+                    writer.value(Float.intBitsToFloat((int) primitives[i]));
+                    break;
+                case DOUBLE:
+                    writer.value(Double.longBitsToDouble(primitives[i]));
+                    break;
+                default:
+                    writer.value(objects[i]);
+            }
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Copy the tags into a map, boxing primitive values.
+     */
+    public void copyInto(Map<String, Object> map) {
+        for (int i = 0; i < size; i++) {
+            map.put(keys[i], valueAt(i));
+        }
+    }
+
+    /**
+     * @return a read-only map backed by this store. Values are boxed as they are read.
+     */
+    public Map<String, Object> asMap() {
+        if (mapView == null) {
+            mapView = new MapView();
+        }
+        return mapView;
+    }
+
+    private void putPrimitive(String key, byte type, long bits) {
+        final int index = slot(key);
+        types[index] = type;
+        primitives[index] = bits;
+        objects[index] = null;
+    }
+
+    private void putReference(String key, Object value) {
+        final int index = slot(key);
+        types[index] = OBJECT;
+        objects[index] = value;
+        primitives[index] = 0;
+    }
+
+    /**
+     * @return the index of the key, appending it if it is not present
+     */
+    private int slot(String key) {
+        final int index = indexOf(key);
+        if (index >= 0) {
+            return index;
+        }
+        if (size == keys.length) {
+            final int capacity = Math.max(INITIAL_CAPACITY, keys.length * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            types = Arrays.copyOf(types, capacity);
+            primitives = Arrays.copyOf(primitives, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+        }
+        keys[size] = key;
+        return size++;
+    }
+
+    private int indexOf(String key) {
+        // Tag keys are usually constants, so try identity before equals
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        if (key != null) {
+            for (int i = 0; i < size; i++) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private class MapView extends AbstractMap<String, Object> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && TagStore.this.containsKey((String) key);
+        }
+
+        @Override
+        public Object get(Object key) {
+            return key instanceof String ? TagStore.this.get((String) key) : null;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            final int index = next++;
+                            return new SimpleImmutableEntry<>(keys[index], valueAt(index));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+    }
+
+}
@@ -14,15 +14,16 @@ public class TestUtils {
     /**
      * Validate the metadata section of the payload is parseable.
      *
-     * There are 6 metadata attributes, but 'execution_environment' and 'arn' won't be present in tests.
+     * There are 7 metadata attributes, but 'execution_environment' and 'arn' won't be present in tests.
      */
     private static void validateMetaData(Map<String, Object> metadata) {
         Assert.assertNotNull(metadata);
-        Assert.assertEquals(6, metadata.size());
+        Assert.assertEquals(7, metadata.size());
         Assert.assertNotNull(metadata.get("agent_version"));
         Assert.assertNotNull(metadata.get("protocol_version"));
         Assert.assertNotNull(metadata.get("agent_language"));
         Assert.assertNotNull(metadata.get("metadata_version"));
+        Assert.assertNotNull(metadata.get("compression"));
     }
 
     /**
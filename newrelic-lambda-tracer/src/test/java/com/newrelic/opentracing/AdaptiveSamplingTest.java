@@ -3,6 +3,11 @@ package com.newrelic.opentracing;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class AdaptiveSamplingTest {
 
     @Test
@@ -40,4 +45,83 @@ public class AdaptiveSamplingTest {
         Assert.assertTrue(sampledTrue <= maxSamples);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void thresholdsMatchFormula() {
+        final int target = 10;
+        final double[] thresholds = AdaptiveSampling.computeThresholds(target);
+        for (int sampledTrueCount = target; sampledTrueCount < target * 3; sampledTrueCount++) {
+            final double expTarget = Math.pow(target, (target * 1.0f / sampledTrueCount)) - Math.sqrt(target);
+            final int index = sampledTrueCount - target;
+            if (index < thresholds.length) {
+                Assert.assertEquals(expTarget, thresholds[index], 0);
+            } else {
+                // Past the table nothing more is sampled
+                Assert.assertTrue(expTarget <= 0);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentDecisionsInFirstPeriod() throws Exception {
+        final AdaptiveSampling sampler = new AdaptiveSampling();
+        final int threads = 8;
+        final AtomicInteger sampledTrue = new AtomicInteger();
+        runConcurrently(threads, () -> {
+            for (int i = 0; i < 1000; i++) {
+                sampler.requestStarted();
+                if (sampler.computeSampled()) {
+                    sampledTrue.incrementAndGet();
+                }
+            }
+        });
+        // At most one extra per thread racing past the target
+        Assert.assertTrue(sampledTrue.get() >= sampler.getTarget());
+        Assert.assertTrue(sampledTrue.get() < sampler.getTarget() + threads);
+    }
+
+    @Test
+    public void concurrentRolloverStartsOnePeriod() throws Exception {
+        final AdaptiveSampling sampler = new AdaptiveSampling();
+        final long start = 1000;
+        sampler.requestStarted(start);
+        for (int i = 0; i < sampler.getTarget() * 3; i++) {
+            sampler.computeSampled();
+        }
+
+        // Every thread sees the period as over, only one of them starts the next one
+        final long nextPeriod = start + sampler.getSamplingTargetPeriodInMilliSeconds();
+        final AtomicInteger sampledTrue = new AtomicInteger();
+        runConcurrently(8, () -> {
+            for (int i = 0; i < 100; i++) {
+                sampler.requestStarted(nextPeriod + i);
+                if (sampler.computeSampled()) {
+                    sampledTrue.incrementAndGet();
+                }
+            }
+        });
+        // A second rollover would have reset the sampled count and let up to another 2 * target through
+        Assert.assertTrue(sampledTrue.get() <= sampler.getTarget() * 2 + 8);
+    }
+
+    private static void runConcurrently(int threads, Runnable task) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> started = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                task.run();
+            });
+            thread.start();
+            started.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : started) {
+            thread.join();
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.newrelic.opentracing;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ContextPropagationTest {
+
+    private final LambdaTracer tracer = LambdaTracer.INSTANCE;
+    private ExecutorService executor;
+
+    @Before
+    public void before() {
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A root span that does not count towards adaptive sampling, which only samples the first few roots here.
+     */
+    private static LambdaSpan root() {
+        final LambdaSpan root = new LambdaSpan("root", System.currentTimeMillis(), System.nanoTime(), new HashMap<>(), null, "guid", "txnId");
+        root.setContext(new LambdaSpanContext(root, (LambdaScopeManager) LambdaTracer.INSTANCE.scopeManager()));
+        return root;
+    }
+
+    @Test
+    public void activeSpanIsPropagatedToExecutorTasks() throws Exception {
+        final Span root = root();
+        final Scope scope = tracer.scopeManager().activate(root, false);
+        try {
+            final ExecutorService tracingExecutor = ContextPropagation.wrap(executor);
+            Assert.assertSame(root, tracingExecutor.submit(() -> tracer.activeSpan()).get());
+
+            final LambdaSpan child = (LambdaSpan) tracingExecutor.submit(() -> tracer.buildSpan("child").start()).get();
+            Assert.assertFalse(child.isRootSpan());
+            Assert.assertSame(((LambdaSpan) root).getTransactionState(), child.getTransactionState());
+            child.finish();
+
+            final List<Callable<Span>> tasks = Arrays.asList(() -> tracer.activeSpan(), () -> tracer.activeSpan());
+            for (Future<Span> future : tracingExecutor.invokeAll(tasks)) {
+                Assert.assertSame(root, future.get());
+            }
+        } finally {
+            scope.close();
+        }
+        root.finish();
+
+        // The worker's scope is restored after each task
+        Assert.assertNull(executor.submit(() -> tracer.activeSpan()).get());
+    }
+
+    @Test
+    public void tasksWrappedWithoutActiveSpanAreUnchanged() {
+        final Runnable task = () -> {
+        };
+        Assert.assertSame(task, ContextPropagation.wrap(task));
+    }
+
+    @Test
+    public void completableFuturesAndParallelStreams() throws Exception {
+        final Span root = root();
+        final Scope scope = tracer.scopeManager().activate(root, false);
+        try {
+            Assert.assertSame(root, ContextPropagation.supplyAsync(() -> tracer.activeSpan()).get());
+            Assert.assertSame(root, ContextPropagation.supplyAsync(() -> tracer.activeSpan(), executor).get());
+
+            final List<Span> spans = IntStream.range(0, 100).boxed().parallel()
+                    .map(ContextPropagation.wrapFunction(i -> tracer.activeSpan()))
+                    .collect(Collectors.toList());
+            for (Span span : spans) {
+                Assert.assertSame(root, span);
+            }
+
+            Assert.assertSame(root, ContextPropagation.wrap(ForkJoinPool.commonPool()).submit(() -> tracer.activeSpan()).get());
+        } finally {
+            scope.close();
+        }
+        root.finish();
+    }
+
+    @Test
+    public void tasksMayCloseTheirOwnScope() throws Exception {
+        final Span root = root();
+        final ExecutorService tracingExecutor = ContextPropagation.wrap(executor);
+        final Scope scope = tracer.scopeManager().activate(root, false);
+        try {
+            for (int i = 0; i < 3; i++) {
+                // The wrapper's close after the task's own is a no-op
+                Assert.assertNull(tracingExecutor.submit(() -> {
+                    tracer.scopeManager().active().close();
+                    return tracer.activeSpan();
+                }).get());
+                Assert.assertSame(root, tracingExecutor.submit(() -> tracer.activeSpan()).get());
+            }
+        } finally {
+            scope.close();
+        }
+        root.finish();
+        Assert.assertNull(executor.submit(() -> tracer.activeSpan()).get());
+    }
+
+    @Test
+    public void nestedTasksRestoreTheOuterScope() {
+        final Span root = root();
+        final Span other = root();
+        final Scope scope = tracer.scopeManager().activate(root, false);
+        try {
+            final Runnable inner = ContextPropagation.wrap(() -> Assert.assertSame(root, tracer.activeSpan()));
+            final Runnable outer;
+            final Scope otherScope = tracer.scopeManager().activate(other, false);
+            try {
+                outer = ContextPropagation.wrap(() -> {
+                    Assert.assertSame(other, tracer.activeSpan());
+                    inner.run();
+                    Assert.assertSame(other, tracer.activeSpan());
+                    // A scope the task leaves open does not outlive it
+                    tracer.scopeManager().activate(root, false);
+                });
+            } finally {
+                otherScope.close();
+            }
+            outer.run();
+            Assert.assertSame(root, tracer.activeSpan());
+        } finally {
+            scope.close();
+        }
+        Assert.assertNull(tracer.activeSpan());
+        other.finish();
+        root.finish();
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.newrelic.opentracing;
+
+import com.newrelic.opentracing.state.PrioritySamplingState;
+import io.opentracing.SpanContext;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapExtractAdapter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InboundSamplingTest {
+
+    private final LambdaTracer tracer = LambdaTracer.INSTANCE;
+    private final AtomicInteger localDecisions = new AtomicInteger();
+    private Sampler originalSampler;
+
+    @Before
+    public void before() {
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        originalSampler = tracer.sampler();
+        tracer.setSampler(rootSpan -> {
+            localDecisions.incrementAndGet();
+            return true;
+        });
+    }
+
+    @After
+    public void after() {
+        tracer.setSampler(originalSampler);
+    }
+
+    @Test
+    public void adoptsInboundDecision() {
+        final LambdaSpan root = (LambdaSpan) tracer.buildSpan("root").asChildOf(inbound("\"pr\": 0.1234, \"sa\": false,")).start();
+        Assert.assertFalse(root.getPrioritySamplingState().isSampled());
+        Assert.assertEquals(0.1234f, root.priority(), 0.0f);
+        Assert.assertEquals(0, localDecisions.get());
+
+        // Nothing under an unsampled caller is collected
+        final LambdaSpan child = (LambdaSpan) tracer.buildSpan("child").asChildOf(root).start();
+        Assert.assertTrue(child.isLightweight());
+        child.finish();
+        root.finish();
+    }
+
+    @Test
+    public void sampledInboundDecisionKeepsFullSpans() {
+        final LambdaSpan root = (LambdaSpan) tracer.buildSpan("root").asChildOf(inbound("\"pr\": 1.5, \"sa\": true,")).start();
+        Assert.assertTrue(root.getPrioritySamplingState().isSampled());
+        Assert.assertEquals(1.5f, root.priority(), 0.0f);
+
+        final LambdaSpan child = (LambdaSpan) tracer.buildSpan("child").asChildOf(root).start();
+        Assert.assertFalse(child.isLightweight());
+        child.finish();
+        root.finish();
+        Assert.assertEquals(0, localDecisions.get());
+    }
+
+    @Test
+    public void samplesLocallyWithoutInboundDecision() {
+        final LambdaSpan root = (LambdaSpan) tracer.buildSpan("root").asChildOf(inbound("")).start();
+        Assert.assertTrue(root.getPrioritySamplingState().isSampled());
+        Assert.assertFalse(root.getPrioritySamplingState().isDecidedUpstream());
+        Assert.assertEquals(1, localDecisions.get());
+        root.finish();
+    }
+
+    @Test
+    public void partialInboundDecisions() {
+        final PrioritySamplingState priorityOnly = new PrioritySamplingState();
+        priorityOnly.setInboundSampledAndPriority(null, 1.25f);
+        Assert.assertTrue(priorityOnly.isSampled());
+        Assert.assertEquals(1.25f, priorityOnly.getPriority(), 0.0f);
+
+        final PrioritySamplingState sampledOnly = new PrioritySamplingState();
+        sampledOnly.setInboundSampledAndPriority(true, null);
+        Assert.assertTrue(sampledOnly.isSampled());
+        Assert.assertTrue(sampledOnly.getPriority() >= 1.0f);
+
+        // The priority is moved to match the flag, since sampled is reported from the priority
+        final PrioritySamplingState contradicting = new PrioritySamplingState();
+        contradicting.setInboundSampledAndPriority(true, 0.5f);
+        Assert.assertTrue(contradicting.isSampled());
+        Assert.assertEquals(1.5f, contradicting.getPriority(), 0.0f);
+        Assert.assertTrue(contradicting.isDecidedUpstream());
+
+        // Neither is no decision at all
+        final PrioritySamplingState neither = new PrioritySamplingState();
+        Assert.assertFalse(neither.setInboundSampledAndPriority(null, null));
+        Assert.assertFalse(neither.isDecidedUpstream());
+        Assert.assertFalse(neither.isSampled());
+    }
+
+    private SpanContext inbound(String samplingFields) {
+        final String payload = "{\"v\": [0,1], \"d\": {\"ty\": \"App\", \"ac\": \"account\", \"tk\": \"trustKey\", \"ap\": \"application\","
+                + " \"id\": \"5f474d64b9cc9b2a\", \"tr\": \"3221bf09aa0bcf0d\", " + samplingFields + " \"ti\": " + System.currentTimeMillis() + "}}";
+        return tracer.extract(Format.Builtin.TEXT_MAP, new TextMapExtractAdapter(Collections.singletonMap("newrelic", payload)));
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.newrelic.opentracing;
+
+import com.newrelic.opentracing.logging.InMemoryLogger;
+import com.newrelic.opentracing.logging.Log;
+import io.opentracing.Span;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class InvocationContextTest {
+
+    private final LambdaTracer tracer = LambdaTracer.INSTANCE;
+    private ExecutorService executor;
+
+    @Before
+    public void before() {
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        Log.setInstance(new InMemoryLogger());
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void spansFinishedOnWorkersAreReportedWithTheirInvocation() throws Exception {
+        final LambdaSpan root = (LambdaSpan) tracer.buildSpan("root").start();
+        root.getPrioritySamplingState().setSampledAndGeneratePriority(true);
+
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final String name = "worker-" + i;
+            futures.add(executor.submit(() -> {
+                final Span child = tracer.buildSpan(name).asChildOf(root).start();
+                child.finish();
+                // Nothing is reported on the worker's own thread
+                Assert.assertEquals(0, ((LambdaScopeManager) tracer.scopeManager()).dataCollection.get().getSpanReservoir().size());
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        root.finish();
+
+        final Set<String> names = new HashSet<>();
+        for (Object span : (JSONArray) ((JSONArray) spanEventData()).get(2)) {
+            names.add((String) ((JSONObject) ((JSONArray) span).get(0)).get("name"));
+        }
+        Assert.assertEquals(21, names.size());
+        Assert.assertTrue(names.contains("root"));
+        Assert.assertTrue(names.contains("worker-19"));
+    }
+
+    @Test
+    public void rootSpanFinishedOnAWorkerReportsTheInvocation() throws Exception {
+        final LambdaSpan root = (LambdaSpan) tracer.buildSpan("root").start();
+        root.getPrioritySamplingState().setSampledAndGeneratePriority(true);
+        tracer.buildSpan("owner").asChildOf(root).start().finish();
+        executor.submit(() -> tracer.buildSpan("worker").asChildOf(root).start().finish()).get();
+
+        executor.submit(() -> root.finish()).get();
+
+        final Set<String> names = new HashSet<>();
+        for (Object span : (JSONArray) ((JSONArray) spanEventData()).get(2)) {
+            names.add((String) ((JSONObject) ((JSONArray) span).get(0)).get("name"));
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList("root", "owner", "worker")), names);
+        // Reported through the data collection of the thread that started the invocation, which is left empty
+        Assert.assertEquals(0, ((LambdaScopeManager) tracer.scopeManager()).dataCollection.get().getSpanReservoir().size());
+    }
+
+    @Test
+    public void childSpansShareTheInvocationState() throws Exception {
+        final LambdaSpan root = (LambdaSpan) tracer.buildSpan("root").start();
+        final LambdaSpan child = (LambdaSpan) executor.submit(() -> tracer.buildSpan("child").asChildOf(root).start()).get();
+
+        Assert.assertSame(root.getLambdaSpanContext().getInvocation(), child.getLambdaSpanContext().getInvocation());
+        Assert.assertSame(root.getTransactionState(), child.getTransactionState());
+        Assert.assertSame(root.getPrioritySamplingState(), child.getPrioritySamplingState());
+        Assert.assertEquals(root.getTransactionId(), child.getTransactionId());
+        child.finish();
+        root.finish();
+
+        // The next invocation starts afresh
+        final LambdaSpan next = (LambdaSpan) tracer.buildSpan("next").start();
+        Assert.assertNotSame(root.getLambdaSpanContext().getInvocation(), next.getLambdaSpanContext().getInvocation());
+        next.finish();
+    }
+
+    @Test
+    public void drainsInFinishOrder() {
+        final InvocationContext invocation = new InvocationContext(new DataCollection());
+        final LambdaSpan root = new LambdaSpan("root", 0, 0, new HashMap<>(), null, "guid", "txnId");
+        final List<LambdaSpan> spans = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            spans.add(new LambdaSpan("span" + i, 0, 0, new HashMap<>(), root, "guid" + i, "txnId"));
+        }
+        final List<LambdaSpan> drained = new ArrayList<>();
+        final Thread other = new Thread(() -> spans.forEach(invocation::spanFinished));
+        other.start();
+        try {
+            other.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        invocation.drainFinishedElsewhere(drained::add);
+        Assert.assertEquals(spans, drained);
+
+        drained.clear();
+        invocation.drainFinishedElsewhere(drained::add);
+        Assert.assertTrue(drained.isEmpty());
+    }
+
+    private static Object spanEventData() throws Exception {
+        final List<String> logs = Log.getInstance().getLogs();
+        final JSONArray debugPayload = (JSONArray) new JSONParser().parse(logs.get(1));
+        return ((JSONObject) debugPayload.get(3)).get("span_event_data");
+    }
+
+}
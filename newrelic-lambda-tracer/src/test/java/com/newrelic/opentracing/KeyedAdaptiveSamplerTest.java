@@ -0,0 +1,105 @@
+package com.newrelic.opentracing;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class KeyedAdaptiveSamplerTest {
+
+    @Test
+    public void eachKeyHasItsOwnTarget() {
+        final KeyedAdaptiveSampler sampler = new KeyedAdaptiveSampler(5, 60, TimeUnit.SECONDS, 10, KeyedAdaptiveSampler.BY_OPERATION_NAME);
+
+        // A busy route uses up its own target
+        for (int i = 0; i < 100; i++) {
+            sampler.computeSampled(root("busy"));
+        }
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(sampler.computeSampled(root("rare")));
+        }
+        Assert.assertFalse(sampler.computeSampled(root("rare")));
+        Assert.assertEquals(2, sampler.size());
+    }
+
+    @Test
+    public void keysPastTheLimitShareOneSampler() {
+        final KeyedAdaptiveSampler sampler = new KeyedAdaptiveSampler(1, 60, TimeUnit.SECONDS, 2, KeyedAdaptiveSampler.BY_OPERATION_NAME);
+        Assert.assertTrue(sampler.computeSampled(root("a")));
+        Assert.assertTrue(sampler.computeSampled(root("b")));
+        Assert.assertTrue(sampler.computeSampled(root("c")));
+        Assert.assertFalse(sampler.computeSampled(root("d")));
+        Assert.assertSame(sampler.samplerFor("c"), sampler.samplerFor("d"));
+        Assert.assertSame(sampler.samplerFor("c"), sampler.samplerFor(null));
+        Assert.assertEquals(2, sampler.size());
+    }
+
+    @Test
+    public void concurrentNewKeysStayBounded() throws Exception {
+        final KeyedAdaptiveSampler sampler = new KeyedAdaptiveSampler(1, 60, TimeUnit.SECONDS, 16, KeyedAdaptiveSampler.BY_OPERATION_NAME);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 100; i++) {
+                    sampler.samplerFor("key" + i);
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        executor.shutdown();
+        Assert.assertEquals(16, sampler.size());
+    }
+
+    @Test
+    public void keyByEventSource() {
+        final LambdaSpan root = root("handleRequest");
+        Assert.assertNull(KeyedAdaptiveSampler.BY_EVENT_SOURCE.apply(root));
+        root.setTag(KeyedAdaptiveSampler.EVENT_SOURCE_ARN, "arn:aws:sqs:us-west-2:123456789012:queue");
+        Assert.assertEquals("arn:aws:sqs:us-west-2:123456789012:queue", KeyedAdaptiveSampler.BY_EVENT_SOURCE.apply(root));
+    }
+
+    @Test
+    public void configurableTarget() {
+        final AdaptiveSampling sampling = new AdaptiveSampling(25, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 25; i++) {
+            Assert.assertTrue(sampling.computeSampled(root("root")));
+        }
+        Assert.assertFalse(sampling.computeSampled(root("root")));
+
+        Assert.assertEquals(AdaptiveSampling.DEFAULT_TARGET, AdaptiveSampling.parsePositive(null, AdaptiveSampling.DEFAULT_TARGET));
+        Assert.assertEquals(AdaptiveSampling.DEFAULT_TARGET, AdaptiveSampling.parsePositive("ten", AdaptiveSampling.DEFAULT_TARGET));
+        Assert.assertEquals(100, AdaptiveSampling.parsePositive(" 100 ", AdaptiveSampling.DEFAULT_TARGET));
+    }
+
+    @Test
+    public void tracerUsesTheConfiguredSampler() {
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        final LambdaTracer tracer = LambdaTracer.INSTANCE;
+        final Sampler original = tracer.sampler();
+        try {
+            tracer.setSampler(rootSpan -> "sampled".equals(rootSpan.getOperationName()));
+            final LambdaSpan sampled = (LambdaSpan) tracer.buildSpan("sampled").start();
+            Assert.assertTrue(sampled.getPrioritySamplingState().isSampled());
+            sampled.finish();
+
+            final LambdaSpan unsampled = (LambdaSpan) tracer.buildSpan("unsampled").start();
+            Assert.assertFalse(unsampled.getPrioritySamplingState().isSampled());
+            unsampled.finish();
+        } finally {
+            tracer.setSampler(original);
+        }
+    }
+
+    private static LambdaSpan root(String operationName) {
+        return new LambdaSpan(operationName, 0, 0, new HashMap<>(), null, "guid", "txnId");
+    }
+
+}
@@ -2,6 +2,8 @@ package com.newrelic.opentracing;
 
 import com.newrelic.opentracing.logging.InMemoryLogger;
 import com.newrelic.opentracing.logging.Log;
+import com.newrelic.opentracing.util.JsonWriter;
+import com.newrelic.opentracing.util.SpanCategory;
 import com.newrelic.opentracing.util.TimeUtil;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -13,6 +15,7 @@ import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -69,6 +72,44 @@ public class LambdaSpanTest {
         Assert.assertEquals("http", intrinsics.get("category"));
     }
 
+    @Test
+    public void spanCategoryFollowsTags() {
+        final Map<String, Object> tags = new HashMap<>();
+        tags.put("http.url", "https://example.com");
+        final LambdaSpan span = SpanTestUtils.createSpan("operationName", System.currentTimeMillis(), System.nanoTime(), tags, null, "guid", "txnId");
+        Assert.assertEquals(SpanCategory.GENERIC, span.getCategory());
+
+        span.setTag("span.kind", "client");
+        Assert.assertEquals(SpanCategory.HTTP, span.getCategory());
+
+        span.setTag("span.kind", "server");
+        Assert.assertEquals(SpanCategory.GENERIC, span.getCategory());
+
+        span.setTag("db.statement", "SELECT 1");
+        Assert.assertEquals(SpanCategory.DATASTORE, span.getCategory());
+    }
+
+    @Test
+    public void writtenIntrinsicsMatchMap() throws Exception {
+        final LambdaSpan parent = SpanTestUtils.createSpan("parent", System.currentTimeMillis(), System.nanoTime(), new HashMap<>(), null, "parentGuid",
+                "txnId");
+        final LambdaSpan span = SpanTestUtils.createSpan("operationName", System.currentTimeMillis(), System.nanoTime(), new HashMap<>(), parent,
+                "guid", "txnId");
+        span.setTag("span.kind", "client");
+        span.setTag("http.status_code", 200);
+        span.finish();
+
+        final StringWriter out = new StringWriter();
+        final JsonWriter writer = new JsonWriter(out);
+        span.writeJson(writer);
+        writer.flush();
+
+        final JSONArray written = (JSONArray) new JSONParser().parse(out.toString());
+        final JSONObject expected = (JSONObject) new JSONParser().parse(JSONObject.toJSONString(span.getIntrinsics()));
+        Assert.assertEquals(expected, written.get(0));
+        Assert.assertEquals("http", ((JSONObject) written.get(0)).get("category"));
+    }
+
     @Test
     public void spanParenting() {
         final LambdaSpan parent = SpanTestUtils.createSpan("operationName", System.currentTimeMillis(),
@@ -0,0 +1,114 @@
+package com.newrelic.opentracing;
+
+import com.newrelic.opentracing.util.SpanCategory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+public class LightweightSpanTest {
+
+    private final LambdaTracer tracer = LambdaTracer.INSTANCE;
+    private Sampler originalSampler;
+
+    @Before
+    public void before() {
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        // Keep the shared adaptive sampler's budget for the tests that rely on it
+        originalSampler = tracer.sampler();
+        tracer.setSampler(rootSpan -> true);
+        tracer.setLightweightUnsampledSpans(true);
+    }
+
+    @After
+    public void after() {
+        tracer.setSampler(originalSampler);
+        tracer.setLightweightUnsampledSpans(false);
+    }
+
+    @Test
+    public void unsampledChildSpansAreLightweight() {
+        final LambdaSpan root = startRoot(false);
+        final LambdaSpan child = (LambdaSpan) tracer.buildSpan("child").asChildOf(root).withTag("builderTag", "value").start();
+        child.setTag("tag", "value");
+
+        Assert.assertTrue(child.isLightweight());
+        Assert.assertFalse(root.isLightweight());
+        Assert.assertTrue(child.getTags().isEmpty());
+        Assert.assertEquals("value", root.getTag("aws.lambda.arn"));
+
+        child.finish();
+        Assert.assertEquals(0, reservoir().size());
+        root.finish();
+    }
+
+    @Test
+    public void lightweightSpansThatLogErrorsAreCollected() {
+        final LambdaSpan root = startRoot(false);
+        final LambdaSpan child = (LambdaSpan) tracer.buildSpan("child").asChildOf(root).start();
+        child.log(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()), "error");
+        child.finish();
+        Assert.assertEquals(1, reservoir().size());
+        root.finish();
+    }
+
+    @Test
+    public void lightweightSpansKeepTheErrorTagAndCategory() {
+        final LambdaSpan root = startRoot(false);
+        final LambdaSpan tagged = (LambdaSpan) tracer.buildSpan("tagged").asChildOf(root).start();
+        tagged.setTag("db.statement", "SELECT 1");
+        tagged.setTag("error", true);
+        Assert.assertTrue(tagged.isLightweight());
+        Assert.assertEquals(Boolean.TRUE, tagged.getTag("error"));
+        Assert.assertNull(tagged.getTag("db.statement"));
+        Assert.assertEquals(SpanCategory.DATASTORE, tagged.getCategory());
+        tagged.finish();
+        Assert.assertEquals(1, reservoir().size());
+
+        final LambdaSpan built = (LambdaSpan) tracer.buildSpan("built").asChildOf(root).withTag("error", true).withTag("db.type", "sql")
+                .start();
+        Assert.assertEquals(Boolean.TRUE, built.getTag("error"));
+        Assert.assertEquals(SpanCategory.DATASTORE, built.getCategory());
+        built.finish();
+        Assert.assertEquals(2, reservoir().size());
+        root.finish();
+    }
+
+    @Test
+    public void sampledChildSpansAreNotLightweight() {
+        final LambdaSpan root = startRoot(true);
+        final LambdaSpan child = (LambdaSpan) tracer.buildSpan("child").asChildOf(root).start();
+        child.setTag("tag", "value");
+
+        Assert.assertFalse(child.isLightweight());
+        Assert.assertEquals("value", child.getTag("tag"));
+        child.finish();
+        Assert.assertEquals(1, reservoir().size());
+        root.finish();
+    }
+
+    @Test
+    public void disabledByDefault() {
+        tracer.setLightweightUnsampledSpans(false);
+        final LambdaSpan root = startRoot(false);
+        final LambdaSpan child = (LambdaSpan) tracer.buildSpan("child").asChildOf(root).start();
+        Assert.assertFalse(child.isLightweight());
+        child.finish();
+        root.finish();
+    }
+
+    private LambdaSpan startRoot(boolean sampled) {
+        final LambdaSpan root = (LambdaSpan) tracer.buildSpan("root").withTag("aws.lambda.arn", "value").start();
+        root.getPrioritySamplingState().setSampledAndGeneratePriority(sampled);
+        return root;
+    }
+
+    private SpanReservoir reservoir() {
+        return ((LambdaScopeManager) tracer.scopeManager()).dataCollection.get().getSpanReservoir();
+    }
+
+}
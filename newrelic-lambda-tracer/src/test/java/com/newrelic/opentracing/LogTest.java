@@ -1,5 +1,6 @@
 package com.newrelic.opentracing;
 
+import com.newrelic.opentracing.logging.ChannelLogger;
 import com.newrelic.opentracing.logging.ConsoleLogger;
 import com.newrelic.opentracing.logging.DebugLogger;
 import com.newrelic.opentracing.logging.InMemoryLogger;
@@ -11,7 +12,16 @@ import org.junit.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class LogTest {
 
@@ -85,4 +95,116 @@ public class LogTest {
         Assert.assertTrue("debug".equals(logs.get(1)));
     }
 
+    /**
+     * The channel logger writes whole lines, with debug messages only when enabled.
+     */
+    @Test
+    public void testChannelLogger() throws IOException {
+        final Path file = Files.createTempFile("channel-logger", ".log");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            Log.setInstance(new ChannelLogger(channel, true));
+            Log.getInstance().out("test");
+            Log.getInstance().debug("debug");
+
+            // Longer than the initial buffer, written in one line
+            final byte[] payload = new byte[200 * 1024];
+            Arrays.fill(payload, (byte) 'a');
+            Log.getInstance().out(payload, 10, payload.length - 20);
+
+            Log.setInstance(new ChannelLogger(channel, false));
+            Assert.assertFalse(Log.getInstance().isDebugEnabled());
+            Log.getInstance().debug("hidden");
+            Log.getInstance().out("caf\u00e9");
+
+            final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            Assert.assertEquals(4, lines.size());
+            Assert.assertEquals("test", lines.get(0));
+            Assert.assertEquals("nr_debug: debug", lines.get(1));
+            Assert.assertEquals(payload.length - 20, lines.get(2).length());
+            Assert.assertEquals("caf\u00e9", lines.get(3));
+            Assert.assertEquals("", outContent.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A line the channel only took part of is finished with System.out, not written again.
+     */
+    @Test
+    public void testChannelLoggerFailsPartWay() {
+        final ByteArrayOutputStream channelContent = new ByteArrayOutputStream();
+        final WritableByteChannel channel = new WritableByteChannel() {
+            private boolean failing;
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                if (failing) {
+                    throw new IOException("broken pipe");
+                }
+                failing = true;
+                final int length = Math.min(src.remaining(), 1000);
+                for (int i = 0; i < length; i++) {
+                    channelContent.write(src.get());
+                }
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        final byte[] payload = new byte[200 * 1024];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) ('a' + i % 26);
+        }
+        Log.setInstance(new ChannelLogger(channel, true));
+        Log.getInstance().out(payload, 0, payload.length);
+        Assert.assertEquals(1000, channelContent.size());
+        Assert.assertEquals(new String(payload, StandardCharsets.US_ASCII) + "\n", channelContent.toString() + outContent.toString());
+
+        // Nothing reached the channel, so the whole line goes to System.out
+        outContent.reset();
+        Log.getInstance().debug("debug");
+        Assert.assertEquals("nr_debug: debug\n", outContent.toString());
+    }
+
+    /**
+     * Lazy debug messages should only be built when debug logging is enabled.
+     */
+    @Test
+    public void testLazyDebug() {
+        final AtomicBoolean supplierCalled = new AtomicBoolean(false);
+
+        Log.setInstance(new ConsoleLogger());
+        Assert.assertFalse(Log.getInstance().isDebugEnabled());
+        Log.getInstance().debug(() -> {
+            supplierCalled.set(true);
+            return "debug";
+        });
+        Log.getInstance().debug("debug {0}", "formatted");
+        Assert.assertFalse(supplierCalled.get());
+        Assert.assertTrue(outContent.toString().equals(""));
+
+        Log.setInstance(new InMemoryLogger());
+        Assert.assertTrue(Log.getInstance().isDebugEnabled());
+        Log.getInstance().debug(() -> {
+            supplierCalled.set(true);
+            return "debug";
+        });
+        Log.getInstance().debug("debug {0}", "formatted");
+        Assert.assertTrue(supplierCalled.get());
+
+        List<String> logs = Log.getInstance().getLogs();
+        Assert.assertEquals(2, logs.size());
+        Assert.assertEquals("debug", logs.get(0));
+        Assert.assertEquals("debug formatted", logs.get(1));
+    }
+
 }
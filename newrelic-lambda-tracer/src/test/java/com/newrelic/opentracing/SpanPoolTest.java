@@ -0,0 +1,112 @@
+package com.newrelic.opentracing;
+
+import io.opentracing.Span;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+public class SpanPoolTest {
+
+    private final LambdaTracer tracer = LambdaTracer.INSTANCE;
+    private Sampler originalSampler;
+
+    @Before
+    public void before() {
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        // Keep the shared adaptive sampler's budget for the tests that rely on it
+        originalSampler = tracer.sampler();
+        tracer.setSampler(rootSpan -> true);
+        tracer.setSpanPoolSize(16);
+    }
+
+    @After
+    public void after() {
+        tracer.setSampler(originalSampler);
+        tracer.setSpanPoolSize(0);
+    }
+
+    @Test
+    public void spansAreReusedAfterTheInvocation() {
+        final Span root = tracer.buildSpan("root").withTag("aws.lambda.arn", "arn:aws:lambda:us-west-2:123:function:fn").start();
+        final Span child = tracer.buildSpan("child").asChildOf(root).withTag("first", true).start();
+        child.finish();
+        root.finish();
+
+        final LambdaSpan nextRoot = (LambdaSpan) tracer.buildSpan("nextRoot").withTag("second", 2).start();
+        final LambdaSpan nextChild = (LambdaSpan) tracer.buildSpan("nextChild").asChildOf(nextRoot).start();
+        Assert.assertTrue(nextRoot == root || nextRoot == child);
+        Assert.assertTrue(nextChild == root || nextChild == child);
+
+        // Nothing from the previous invocation is left on the reused spans
+        Assert.assertEquals("nextRoot", nextRoot.getOperationName());
+        Assert.assertTrue(nextRoot.isRootSpan());
+        Assert.assertEquals(2, nextRoot.getTag("second"));
+        Assert.assertNull(nextRoot.getTag("first"));
+        Assert.assertNull(nextRoot.getTag("aws.lambda.arn"));
+        Assert.assertFalse(nextChild.isRootSpan());
+        Assert.assertEquals(nextRoot.guid(), nextChild.getIntrinsics().get("parentId"));
+        Assert.assertSame(nextRoot, ((LambdaSpanContext) nextRoot.context()).getSpan());
+
+        nextChild.finish();
+        nextRoot.finish();
+    }
+
+    @Test
+    public void reusedSpansGetAFreshContext() {
+        final Span root = tracer.buildSpan("root").start();
+        final LambdaSpanContext context = (LambdaSpanContext) root.context();
+        final InvocationContext invocation = context.getInvocation();
+        root.finish();
+
+        final LambdaSpan next = (LambdaSpan) tracer.buildSpan("next").start();
+        Assert.assertSame(root, next);
+        // A context held on to, for example by an injected carrier, still belongs to the earlier invocation
+        Assert.assertNotSame(context, next.context());
+        Assert.assertSame(invocation, context.getInvocation());
+        Assert.assertNotSame(invocation, next.getLambdaSpanContext().getInvocation());
+        next.finish();
+    }
+
+    @Test
+    public void poolIsBounded() {
+        tracer.setSpanPoolSize(1);
+        final Span root = tracer.buildSpan("root").start();
+        final Span child = tracer.buildSpan("child").asChildOf(root).start();
+        child.finish();
+        root.finish();
+
+        Assert.assertNotNull(SpanPool.acquire());
+        Assert.assertNull(SpanPool.acquire());
+    }
+
+    @Test
+    public void disabledByDefault() {
+        tracer.setSpanPoolSize(0);
+        final Span root = tracer.buildSpan("root").start();
+        root.finish();
+
+        final Span next = tracer.buildSpan("root").start();
+        Assert.assertNotSame(root, next);
+        next.finish();
+    }
+
+    @Test
+    public void useAfterRecycleFails() {
+        boolean assertionsEnabled = false;
+        assert assertionsEnabled = true;
+        final Span root = tracer.buildSpan("root").start();
+        root.finish();
+
+        try {
+            root.setTag("late", "tag");
+            Assert.assertFalse("Using a recycled span must fail when assertions are enabled", assertionsEnabled);
+        } catch (AssertionError e) {
+            Assert.assertTrue(assertionsEnabled);
+        }
+    }
+
+}
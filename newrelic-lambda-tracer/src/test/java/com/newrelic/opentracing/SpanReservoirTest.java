@@ -0,0 +1,140 @@
+package com.newrelic.opentracing;
+
+import com.newrelic.opentracing.logging.InMemoryLogger;
+import com.newrelic.opentracing.logging.Log;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class SpanReservoirTest {
+
+    private LambdaSpan root;
+
+    @Before
+    public void before() {
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        root = SpanTestUtils.createSpan("root", System.currentTimeMillis(), 0, new HashMap<>(), null, "rootGuid", "txnId");
+    }
+
+    @Test
+    public void keepsEverythingUnderCapacity() {
+        final SpanReservoir reservoir = new SpanReservoir(10);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNull(reservoir.add(child("child" + i, 100)));
+        }
+        Assert.assertEquals(5, reservoir.size());
+        Assert.assertEquals(5, reservoir.getSeen());
+        Assert.assertEquals(5, reservoir.getSpans().size());
+    }
+
+    @Test
+    public void dropsShortestGenericSpans() {
+        final SpanReservoir reservoir = new SpanReservoir(3);
+        final LambdaSpan errored = child("errored", 1);
+        errored.setTag("error", true);
+        final LambdaSpan datastore = child("datastore", 2);
+        datastore.setTag("db.statement", "SELECT 1");
+        reservoir.add(errored);
+        reservoir.add(datastore);
+        for (int i = 0; i < 100; i++) {
+            reservoir.add(child("generic" + i, 1000 + i));
+        }
+        Assert.assertEquals(3, reservoir.size());
+        Assert.assertEquals(102, reservoir.getSeen());
+        Assert.assertEquals(names("errored", "datastore", "generic99"), names(reservoir));
+    }
+
+    @Test
+    public void alwaysKeepsTheRootSpan() {
+        final SpanReservoir reservoir = new SpanReservoir(2);
+        final LambdaSpan errored = child("errored", 1);
+        errored.setTag("error", true);
+        reservoir.add(errored);
+        reservoir.add(child("long", Long.MAX_VALUE / 2));
+        root.finish(5);
+
+        Assert.assertEquals(2, reservoir.size());
+        reservoir.add(root);
+        Assert.assertEquals(names("errored", "root"), names(reservoir));
+    }
+
+    @Test
+    public void clearResetsSeen() {
+        final SpanReservoir reservoir = new SpanReservoir(1);
+        reservoir.add(child("a", 1));
+        reservoir.add(child("b", 2));
+        reservoir.clear();
+        Assert.assertEquals(0, reservoir.size());
+        Assert.assertEquals(0, reservoir.getSeen());
+    }
+
+    @Test
+    public void boundsTheSpansOfAnInvocation() {
+        final LambdaTracer tracer = LambdaTracer.INSTANCE;
+        final io.opentracing.Span invocation = tracer.buildSpan("root").start();
+        for (int i = 0; i < 5000; i++) {
+            tracer.buildSpan("record").asChildOf(invocation).start().finish();
+        }
+        final DataCollection dataCollection = ((LambdaScopeManager) tracer.scopeManager()).dataCollection.get();
+        Assert.assertTrue(dataCollection.getSpanReservoir().size() <= SpanReservoir.DEFAULT_CAPACITY);
+        Assert.assertEquals(5000, dataCollection.getSpanReservoir().getSeen());
+        invocation.finish();
+        Assert.assertEquals(0, dataCollection.getSpanReservoir().size());
+    }
+
+    @Test
+    public void reportsTheErrorsOfDroppedSpans() {
+        Log.setInstance(new InMemoryLogger());
+        final LambdaScopeManager scopeManager = new LambdaScopeManager();
+        scopeManager.dataCollection.set(new DataCollection(new TailSampling(false, 0), 2));
+        final LambdaSpan invocation = new LambdaSpan("root", System.currentTimeMillis(), 0, new HashMap<>(), null, "rootGuid", "txnId");
+        invocation.setContext(new LambdaSpanContext(invocation, scopeManager));
+        for (int i = 0; i < 5; i++) {
+            final LambdaSpan errored = new LambdaSpan("errored" + i, System.currentTimeMillis(), 0, new HashMap<>(), invocation, i + "Guid",
+                    "txnId");
+            errored.setContext(new LambdaSpanContext(errored, scopeManager));
+            final Map<String, Object> error = new HashMap<>();
+            error.put("event", "error");
+            error.put("error.object", new IllegalStateException("error" + i));
+            errored.log(error);
+            errored.finish(i + 1);
+        }
+        invocation.finish(10);
+
+        Assert.assertEquals(2, scopeManager.dataCollection.get().getSpanReservoir().getCapacity());
+        final String debugPayload = Log.getInstance().getLogs().get(1);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(debugPayload, debugPayload.contains("\"error.message\":\"error" + i + "\""));
+        }
+    }
+
+    private LambdaSpan child(String name, long durationInMicros) {
+        final LambdaSpan span = SpanTestUtils.createSpan(name, System.currentTimeMillis(), 0, new HashMap<>(), root, name + "Guid", "txnId");
+        span.finish(durationInMicros);
+        return span;
+    }
+
+    private static Set<String> names(String... names) {
+        final Set<String> set = new HashSet<>();
+        for (String name : names) {
+            set.add(name);
+        }
+        return set;
+    }
+
+    private static Set<String> names(SpanReservoir reservoir) {
+        final Set<String> set = new HashSet<>();
+        for (LambdaSpan span : reservoir.getSpans()) {
+            set.add(span.getOperationName());
+        }
+        return set;
+    }
+
+}
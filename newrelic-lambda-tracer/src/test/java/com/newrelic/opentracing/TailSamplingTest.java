@@ -0,0 +1,92 @@
+package com.newrelic.opentracing;
+
+import com.newrelic.opentracing.logging.InMemoryLogger;
+import com.newrelic.opentracing.logging.Log;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TailSamplingTest {
+
+    private static final long START_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long START_MICROS = TimeUnit.NANOSECONDS.toMicros(START_NANOS);
+
+    @Before
+    public void before() {
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        Log.setInstance(new InMemoryLogger());
+    }
+
+    @Test
+    public void dropsFastInvocations() throws Exception {
+        final LambdaSpan root = unsampledRoot(new TailSampling(true, 50));
+        root.finish(START_MICROS + 1000);
+        Assert.assertNull(spanEventData());
+    }
+
+    @Test
+    public void keepsSlowInvocations() throws Exception {
+        final LambdaSpan root = unsampledRoot(new TailSampling(true, 50));
+        root.finish(START_MICROS + 60_000);
+        final JSONArray spanEventData = (JSONArray) spanEventData();
+        final JSONObject intrinsics = (JSONObject) ((JSONArray) ((JSONArray) spanEventData.get(2)).get(0)).get(0);
+        // Promoted to sampled, with a priority to match
+        Assert.assertEquals(true, intrinsics.get("sampled"));
+        Assert.assertTrue(((Number) intrinsics.get("priority")).floatValue() >= 1.0f);
+    }
+
+    @Test
+    public void keepsFailedInvocations() throws Exception {
+        final LambdaSpan root = unsampledRoot(new TailSampling(true, 50));
+        root.log(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()), "error");
+        root.finish(START_MICROS + 1000);
+        Assert.assertNotNull(spanEventData());
+    }
+
+    @Test
+    public void keepsHeadSampledInvocations() throws Exception {
+        final LambdaSpan root = unsampledRoot(new TailSampling(true, 50));
+        root.getPrioritySamplingState().setSampledAndGeneratePriority(true);
+        root.finish(START_MICROS + 1000);
+        Assert.assertNotNull(spanEventData());
+    }
+
+    @Test
+    public void disabledKeepsHeadDecision() throws Exception {
+        final LambdaSpan root = unsampledRoot(new TailSampling(false, 50));
+        root.finish(START_MICROS + 60_000);
+        Assert.assertNull(spanEventData());
+    }
+
+    @Test
+    public void parseThreshold() {
+        Assert.assertEquals(TailSampling.DEFAULT_THRESHOLD_MILLIS, TailSampling.parseThresholdMillis(null));
+        Assert.assertEquals(TailSampling.DEFAULT_THRESHOLD_MILLIS, TailSampling.parseThresholdMillis("slow"));
+        Assert.assertEquals(250, TailSampling.parseThresholdMillis(" 250 "));
+    }
+
+    private static LambdaSpan unsampledRoot(TailSampling tailSampling) {
+        final LambdaScopeManager scopeManager = new LambdaScopeManager();
+        scopeManager.dataCollection.set(new DataCollection(tailSampling));
+        final LambdaSpan root = new LambdaSpan("root", System.currentTimeMillis(), START_NANOS, new HashMap<>(), null, "guid", "txnId");
+        root.setContext(new LambdaSpanContext(root, scopeManager));
+        root.getPrioritySamplingState().setSampledAndGeneratePriority(false);
+        return root;
+    }
+
+    private static Object spanEventData() throws Exception {
+        final List<String> logs = Log.getInstance().getLogs();
+        final JSONArray debugPayload = (JSONArray) new JSONParser().parse(logs.get(1));
+        return ((JSONObject) debugPayload.get(3)).get("span_event_data");
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.newrelic.opentracing;
+
+import com.newrelic.opentracing.dt.DistributedTracePayloadImpl;
+import io.opentracing.SpanContext;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapExtractAdapter;
+import io.opentracing.propagation.TextMapInjectAdapter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TraceContextTest {
+
+    private static final String TRACE_PARENT = "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01";
+
+    private final LambdaTracer tracer = LambdaTracer.INSTANCE;
+    private Sampler originalSampler;
+
+    @Before
+    public void before() {
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        originalSampler = tracer.sampler();
+        tracer.setSampler(rootSpan -> false);
+    }
+
+    @After
+    public void after() {
+        tracer.setSampler(originalSampler);
+    }
+
+    @Test
+    public void extractsTraceContextHeaders() {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("TraceParent", TRACE_PARENT);
+        headers.put("tracestate", "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-1.23456-" + System.currentTimeMillis()
+                + ",rojo=00f067aa0ba902b7");
+        final SpanContext context = tracer.extract(Format.Builtin.HTTP_HEADERS, new TextMapExtractAdapter(headers));
+        Assert.assertTrue(context instanceof LambdaPayloadContext);
+        Assert.assertTrue(((LambdaPayloadContext) context).getTransportDurationInMillis() >= 0);
+
+        final LambdaSpan root = (LambdaSpan) tracer.buildSpan("root").asChildOf(context).start();
+        Assert.assertEquals("0af7651916cd43dd8448eb211c80319c", root.traceId());
+        Assert.assertTrue(root.getPrioritySamplingState().isSampled());
+        Assert.assertEquals(1.23456f, root.priority(), 0.0f);
+
+        // The trace continues downstream, other vendors' entries included
+        final Map<String, String> outbound = new HashMap<>();
+        tracer.inject(root.context(), Format.Builtin.HTTP_HEADERS, new TextMapInjectAdapter(outbound));
+        Assert.assertEquals("00-0af7651916cd43dd8448eb211c80319c-" + root.guid() + "-01", outbound.get("traceparent"));
+        Assert.assertTrue(outbound.get("tracestate"), outbound.get("tracestate").startsWith("trustKey@nr=0-0-account-primaryApp-" + root.guid() + "-"));
+        Assert.assertTrue(outbound.get("tracestate"), outbound.get("tracestate").endsWith(",rojo=00f067aa0ba902b7"));
+        Assert.assertNotNull(outbound.get("newrelic"));
+        root.finish();
+    }
+
+    @Test
+    public void traceParentAloneLinksTheTrace() {
+        final SpanContext context = tracer.extract(Format.Builtin.TEXT_MAP, new TextMapExtractAdapter(singleHeader("traceparent", TRACE_PARENT)));
+        final LambdaSpan root = (LambdaSpan) tracer.buildSpan("root").asChildOf(context).start();
+        Assert.assertEquals("0af7651916cd43dd8448eb211c80319c", root.traceId());
+        // The traceparent's sampled flag is adopted, with a priority to match
+        Assert.assertTrue(root.getPrioritySamplingState().isDecidedUpstream());
+        Assert.assertTrue(root.getPrioritySamplingState().isSampled());
+        Assert.assertTrue(root.priority() >= 1.0f);
+        Assert.assertEquals(Long.MIN_VALUE, root.getDistributedTracingState().getTransportTimeMillis());
+        root.finish();
+
+        final String unsampled = TRACE_PARENT.substring(0, 53) + "00";
+        final SpanContext unsampledContext = tracer.extract(Format.Builtin.TEXT_MAP,
+                new TextMapExtractAdapter(singleHeader("traceparent", unsampled)));
+        final LambdaSpan unsampledRoot = (LambdaSpan) tracer.buildSpan("root").asChildOf(unsampledContext).start();
+        Assert.assertFalse(unsampledRoot.getPrioritySamplingState().isSampled());
+        Assert.assertTrue(unsampledRoot.priority() < 1.0f);
+        unsampledRoot.finish();
+    }
+
+    @Test
+    public void newRelicHeaderWins() {
+        final Map<String, String> headers = singleHeader("traceparent", TRACE_PARENT);
+        headers.put("newrelic", "{\"v\":[0,1],\"d\":{\"ty\":\"App\",\"ac\":\"account\",\"tk\":\"trustKey\",\"ap\":\"application\","
+                + "\"id\":\"5f474d64b9cc9b2a\",\"tr\":\"3221bf09aa0bcf0d\",\"ti\":" + System.currentTimeMillis() + "}}");
+        final SpanContext context = tracer.extract(Format.Builtin.TEXT_MAP, new TextMapExtractAdapter(headers));
+        final DistributedTracePayloadImpl payload = ((LambdaPayloadContext) context).getPayload();
+        Assert.assertEquals("3221bf09aa0bcf0d", payload.traceId);
+    }
+
+    @Test
+    public void malformedTraceParentIsIgnored() {
+        Assert.assertNull(tracer.extract(Format.Builtin.TEXT_MAP, new TextMapExtractAdapter(singleHeader("traceparent", "00-garbage"))));
+        Assert.assertNull(tracer.extract(Format.Builtin.TEXT_MAP, new TextMapExtractAdapter(singleHeader("other", TRACE_PARENT))));
+    }
+
+    @Test
+    public void injectsTraceContextForLocalTraces() {
+        final LambdaSpan root = (LambdaSpan) tracer.buildSpan("root").start();
+        final Map<String, String> outbound = new HashMap<>();
+        tracer.inject(root.context(), Format.Builtin.TEXT_MAP, new TextMapInjectAdapter(outbound));
+        final String traceParent = outbound.get("traceparent");
+        Assert.assertEquals(55, traceParent.length());
+        Assert.assertTrue(traceParent, traceParent.endsWith("-" + root.guid() + "-00"));
+        Assert.assertTrue(traceParent, traceParent.contains(root.traceId()));
+        Assert.assertFalse(outbound.get("tracestate"), outbound.get("tracestate").contains(","));
+        root.finish();
+    }
+
+    private static Map<String, String> singleHeader(String name, String value) {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put(name, value);
+        return headers;
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.newrelic.opentracing.dt;
+
+import com.newrelic.opentracing.util.Base64;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import static com.newrelic.opentracing.util.DistributedTraceUtil.ACCOUNT_ID;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.APPLICATION_ID;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.DATA;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.GUID;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.PARENT_TYPE;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.PRIORITY;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.SAMPLED;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.TIMESTAMP;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.TRACE_ID;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.TRUSTED_ACCOUNT_KEY;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.TX;
+import static com.newrelic.opentracing.util.DistributedTraceUtil.VERSION;
+
+/**
+ * The json-simple based parsing {@link PayloadParser} replaced, to check it against.
+ */
+final class JsonSimplePayloadParser {
+
+    private JsonSimplePayloadParser() {
+    }
+
+    /**
+     * @return the payload, or null if json-simple fails on it or it is missing fields, untrusted or from a newer major version
+     */
+    static DistributedTracePayloadImpl parse(String payload) {
+        if (payload == null) {
+            return null;
+        }
+
+        if (!payload.trim().isEmpty()) {
+            payload = payload.trim();
+            char firstChar = payload.charAt(0);
+            if (firstChar != '{' && firstChar != '[') {
+                // This must be base64 encoded, decode it
+                payload = new String(Base64.decode(payload), Base64.UTF_8);
+            }
+        }
+
+        DistributedTracing distributedTraceService = DistributedTracing.INSTANCE;
+        JSONParser parser = new JSONParser();
+        try {
+            JSONObject object = (JSONObject) parser.parse(payload);
+
+            // ignore payload if major version is higher than our own
+            JSONArray version = (JSONArray) object.get(VERSION);
+            final Long majorVersion = (Long) version.get(0);
+            if (majorVersion > distributedTraceService.getMajorSupportedCatVersion()) {
+                return null;
+            }
+
+            JSONObject data = (JSONObject) object.get(DATA);
+            String payloadAccountId = (String) data.get(ACCOUNT_ID);
+            String payloadTrustKey = (String) data.get(TRUSTED_ACCOUNT_KEY);
+            String trustKey = distributedTraceService.getTrustKey();
+            if (payloadAccountId == null) {
+                return null;
+            }
+
+            String applicationId = (String) data.get(APPLICATION_ID);
+            if (applicationId == null) {
+                return null;
+            }
+
+            // If payload doesn't have a tk, use accountId
+            if (!trustKey.equals(payloadTrustKey == null ? payloadAccountId : payloadTrustKey)) {
+                return null;
+            }
+
+            long timestamp = (Long) data.get(TIMESTAMP);
+            if (timestamp <= 0) {
+                return null;
+            }
+
+            String parentType = (String) data.get(PARENT_TYPE);
+            String traceId = (String) data.get(TRACE_ID);
+            String guid = (String) data.get(GUID);
+            String txnId = (String) data.get(TX);
+            if (parentType == null || traceId == null || (guid == null && txnId == null)) {
+                return null;
+            }
+
+            Number priorityNumber = (Number) data.get(PRIORITY);
+            Float priority = priorityNumber != null ? priorityNumber.floatValue() : null;
+            Boolean sampled = (Boolean) data.get(SAMPLED);
+
+            return new DistributedTracePayloadImpl(timestamp, parentType, payloadAccountId, payloadTrustKey, applicationId, guid, traceId, txnId,
+                    priority, sampled);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+}
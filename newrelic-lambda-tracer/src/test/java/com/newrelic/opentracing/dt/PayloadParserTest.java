@@ -0,0 +1,164 @@
+package com.newrelic.opentracing.dt;
+
+import com.newrelic.opentracing.logging.InMemoryLogger;
+import com.newrelic.opentracing.logging.Log;
+import com.newrelic.opentracing.util.Base64;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class PayloadParserTest {
+
+    private static final String PAYLOAD = "{\"v\":[0,1],\"d\":{\"ty\":\"App\",\"ac\":\"account\",\"tk\":\"trustKey\",\"ap\":\"application\","
+            + "\"id\":\"5f474d64b9cc9b2a\",\"tr\":\"3221bf09aa0bcf0d\",\"pr\":0.1234,\"sa\":false,\"ti\":1482959525577,\"tx\":\"27856f70d3d314b7\"}}";
+
+    // Characters that turn up in payloads, and some that must not
+    private static final String ALPHABET = "{}[],:\"\\/ \t\n\f0123456789.-+eEtrufalsnbdvkyicpxu\u00e9";
+
+    @Before
+    public void before() {
+        Log.setInstance(new InMemoryLogger());
+    }
+
+    @Test
+    public void parsesPayload() {
+        final DistributedTracePayloadImpl payload = PayloadParser.parse(PAYLOAD);
+        Assert.assertNotNull(payload);
+        Assert.assertEquals(1482959525577L, payload.timestamp);
+        Assert.assertEquals("App", payload.parentType);
+        Assert.assertEquals("account", payload.accountId);
+        Assert.assertEquals("trustKey", payload.trustKey);
+        Assert.assertEquals("application", payload.applicationId);
+        Assert.assertEquals("5f474d64b9cc9b2a", payload.guid);
+        Assert.assertEquals("3221bf09aa0bcf0d", payload.traceId);
+        Assert.assertEquals("27856f70d3d314b7", payload.txnId);
+        Assert.assertEquals(0.1234f, payload.priority, 0.0f);
+        Assert.assertFalse(payload.sampled);
+
+        assertSameAsJsonSimple(Base64.encode(PAYLOAD.getBytes(Base64.UTF_8)));
+    }
+
+    @Test
+    public void reusesRecentValues() {
+        final DistributedTracePayloadImpl first = PayloadParser.parse(PAYLOAD);
+        final DistributedTracePayloadImpl second = PayloadParser.parse(PAYLOAD);
+        Assert.assertSame(first.accountId, second.accountId);
+        Assert.assertSame(first.trustKey, second.trustKey);
+        Assert.assertSame(first.applicationId, second.applicationId);
+        Assert.assertSame(first.parentType, second.parentType);
+    }
+
+    @Test
+    public void sameAsJsonSimpleOnWellFormedPayloads() {
+        final String[] payloads = {
+                // Last duplicate wins
+                "{\"v\":[1],\"v\":[0],\"d\":{\"tk\":\"trustKey\",\"ac\":5,\"ac\":\"account\",\"ap\":\"app\",\"ty\":\"App\",\"tr\":\"t\",\"id\":\"g\",\"ti\":1}}",
+                "{\"v\":[0],\"d\":5,\"d\":{\"tk\":\"trustKey\",\"ac\":\"account\",\"ap\":\"app\",\"ty\":\"App\",\"tr\":\"t\",\"id\":\"g\",\"ti\":1}}",
+                // Whitespace between tokens
+                " {\r\n\t\"v\" : [ 0 , 1 ] ,\n\"d\" : { \"tk\" : \"trustKey\" , \"ac\" : \"account\" , \"ap\" : \"app\" , \"ty\" : \"App\" , \"tr\" : \"t\" ,"
+                        + " \"id\" : \"g\" , \"ti\" : 1 } } ",
+                // Escaped keys and values
+                "{\"\\u0076\":[0],\"d\":{\"tk\":\"trustKey\",\"a\\u0063\":\"acc\\u006Funt\",\"ap\":\"a\\/p\\n\\\"\",\"ty\":\"\u00e9\",\"tr\":\"t\",\"tx\":\"x\",\"ti\":1}}",
+                // Nested unknown values
+                "{\"x\":{\"y\":[[{}],{\"z\":null}]},\"v\":[0,{\"a\":[]}],\"d\":{\"tk\":\"trustKey\",\"ac\":\"account\",\"ap\":\"app\",\"ty\":\"App\",\"tr\":\"t\","
+                        + "\"id\":\"g\",\"ti\":1,\"q\":[true,false,null,-1.5e3]}}",
+                // Numbers
+                "{\"v\":[0],\"d\":{\"tk\":\"trustKey\",\"ac\":\"account\",\"ap\":\"app\",\"ty\":\"App\",\"tr\":\"t\",\"id\":\"g\",\"ti\":7,\"pr\":1}}",
+                "{\"v\":[0],\"d\":{\"tk\":\"trustKey\",\"ac\":\"account\",\"ap\":\"app\",\"ty\":\"App\",\"tr\":\"t\",\"id\":\"g\",\"ti\":1,\"pr\":1.23456789012345678}}",
+                "{\"v\":[0],\"d\":{\"tk\":\"trustKey\",\"ac\":\"account\",\"ap\":\"app\",\"ty\":\"App\",\"tr\":\"t\",\"id\":\"g\",\"ti\":1,\"pr\":-0.0}}",
+                "{\"v\":[0],\"d\":{\"tk\":\"trustKey\",\"ac\":\"account\",\"ap\":\"app\",\"ty\":\"App\",\"tr\":\"t\",\"id\":\"g\",\"ti\":1,\"pr\":1E-2}}",
+                "{\"v\":[0],\"d\":{\"tk\":\"trustKey\",\"ac\":\"account\",\"ap\":\"app\",\"ty\":\"App\",\"tr\":\"t\",\"id\":\"g\",\"ti\":1,\"x\":-9223372036854775808}}",
+                // Nulls
+                "{\"v\":[0],\"d\":{\"tk\":\"trustKey\",\"ac\":\"account\",\"ap\":\"app\",\"ty\":\"App\",\"tr\":\"t\",\"id\":\"g\",\"tx\":null,\"ti\":1,\"pr\":null,\"sa\":null}}",
+        };
+        for (String payload : payloads) {
+            Assert.assertNotNull(payload, PayloadParser.parse(payload));
+            assertSameAsJsonSimple(payload);
+        }
+    }
+
+    @Test
+    public void rejectsWhatJsonSimpleLetThrough() {
+        final String valid = "{\"v\":[0],\"d\":{\"tk\":\"trustKey\",\"ac\":\"account\",\"ap\":\"app\",\"ty\":\"App\",\"tr\":\"t\",\"id\":\"g\",\"ti\":1}}";
+        Assert.assertNotNull(PayloadParser.parse(valid));
+        final String[] payloads = {
+                // Extra commas and colons, no colon at all, values run together
+                valid.replace("{\"v\"", "{,\"v\""), valid.replace("[0]", "[0,]"), valid.replace("[0]", "[,0]"), valid.replace("[0]", "[0,,1]"),
+                valid.replace(",\"d\"", ",,\"d\""), valid.replace("\"d\":", "\"d\"::"), valid.replace("\"ty\":", "\"ty\" "),
+                valid.replace(",\"ap\"", "\"ap\""), valid.replace("1}}", "1,}}"), valid.replace("\"g\",", "\"g\",{}"),
+                valid.replace("1}}", "1,\"x\":[1 2]}}"), valid.replace("1}}", "1,\"x\":{\"y\" 1}}}"), valid.replace("1}}", "1,\"x\":{\"y\":1,}}}"),
+                valid.replace("1}}", "1,\"x\":{,}}}"),
+                // An unterminated string
+                valid + " \"}}", valid.substring(0, valid.length() - 2) + ",\"x\":\"}}",
+                // Backslashes that do not start an escape, control characters
+                valid.replace("\"account\"", "\"\\x\""), valid.replace("\"account\"", "\"\\u12\""), valid.replace("\"account\"", "\"acc\tount\""),
+                // Leading zeros
+                valid.replace("\"ti\":1", "\"ti\":007"), valid.replace("[0]", "[00]"), valid.replace("1}}", "1,\"x\":-01}}"),
+        };
+        for (String payload : payloads) {
+            Assert.assertNull(payload, PayloadParser.parse(payload));
+        }
+    }
+
+    @Test
+    public void fuzzAgainstJsonSimple() {
+        final Random random = new Random(42);
+        int accepted = 0;
+        for (int i = 0; i < 50000; i++) {
+            final String payload = mutate(PAYLOAD, random);
+            final String input = random.nextInt(8) == 0 ? Base64.encode(payload.getBytes(Base64.UTF_8)) : payload;
+            final DistributedTracePayloadImpl actual = PayloadParser.parse(input);
+            if (actual != null) {
+                // Well formed, which json-simple parses correctly
+                Assert.assertEquals(input, String.valueOf(parseWithJsonSimple(input)), String.valueOf(actual));
+                accepted++;
+            }
+            // Otherwise json-simple may still accept it, leniently, or reject it too
+        }
+        // Enough mutations keep the payload valid to compare parsed fields, not just rejections
+        Assert.assertTrue(accepted > 1000);
+    }
+
+    private static String mutate(String payload, Random random) {
+        final StringBuilder mutated = new StringBuilder(payload);
+        final int mutations = 1 + random.nextInt(3);
+        for (int i = 0; i < mutations && mutated.length() > 0; i++) {
+            final int at = random.nextInt(mutated.length());
+            final char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            switch (random.nextInt(5)) {
+                case 0:
+                    mutated.deleteCharAt(at);
+                    break;
+                case 1:
+                    mutated.insert(at, c);
+                    break;
+                case 2:
+                    mutated.setCharAt(at, c);
+                    break;
+                case 3:
+                    final int length = Math.min(mutated.length() - at, 1 + random.nextInt(8));
+                    mutated.insert(at, mutated.substring(at, at + length));
+                    break;
+                default:
+                    mutated.setLength(at);
+            }
+        }
+        return mutated.toString();
+    }
+
+    private static void assertSameAsJsonSimple(String payload) {
+        Assert.assertEquals(payload, String.valueOf(parseWithJsonSimple(payload)), String.valueOf(PayloadParser.parse(payload)));
+    }
+
+    private static DistributedTracePayloadImpl parseWithJsonSimple(String payload) {
+        try {
+            return JsonSimplePayloadParser.parse(payload);
+        } catch (RuntimeException e) {
+            // It used to throw on some input, which is rejected now
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.newrelic.opentracing.dt;
+
+import com.newrelic.opentracing.logging.InMemoryLogger;
+import com.newrelic.opentracing.logging.Log;
+import com.newrelic.opentracing.util.Base64;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PayloadTemplateTest {
+
+    @Before
+    public void before() {
+        Log.setInstance(new InMemoryLogger());
+    }
+
+    @Test
+    public void rendersTheSamePayloadAsTheObject() {
+        for (String guid : new String[] { "5f474d64b9cc9b2a", "5f474d64b9cc9b2", "5f474d64b9cc9b", "gu\u00efd", null }) {
+            final DistributedTracePayloadImpl payload = DistributedTracePayloadImpl.createDistributedTracePayload("traceId", guid, "txnId", 1.2345f);
+            final DistributedTracePayload rendered = new PayloadTemplate(payload, null).at(1482959525577L);
+
+            Assert.assertEquals(Base64.encode(rendered.text().getBytes(Base64.UTF_8)), rendered.httpSafe());
+            final DistributedTracePayloadImpl parsed = PayloadParser.parse(rendered.httpSafe());
+            Assert.assertNotNull(rendered.text(), parsed);
+            Assert.assertEquals(1482959525577L, parsed.timestamp);
+            Assert.assertEquals(guid, parsed.guid);
+            Assert.assertEquals(payload.toString().replaceFirst("timestamp=\\d+", ""), parsed.toString().replaceFirst("timestamp=\\d+", ""));
+        }
+    }
+
+    @Test
+    public void splicesTheTimestamp() {
+        final DistributedTracePayloadImpl payload = DistributedTracePayloadImpl.createDistributedTracePayload("traceId", "guid", "txnId", 0.5f);
+        final PayloadTemplate template = new PayloadTemplate(payload, null);
+
+        final DistributedTracePayload first = template.at(1000);
+        final DistributedTracePayload second = template.at(1000);
+        final DistributedTracePayload third = template.at(99999999999999L);
+        Assert.assertSame(first.text(), second.text());
+        Assert.assertSame(first.httpSafe(), second.httpSafe());
+        Assert.assertEquals(1000, PayloadParser.parse(first.httpSafe()).timestamp);
+        Assert.assertEquals(99999999999999L, PayloadParser.parse(third.httpSafe()).timestamp);
+        Assert.assertEquals(Base64.encode(third.text().getBytes(Base64.UTF_8)), third.httpSafe());
+        // Rendering another timestamp does not change payloads already handed out
+        Assert.assertEquals(1000, PayloadParser.parse(first.text()).timestamp);
+    }
+
+    @Test
+    public void matchesTheValuesItWasCreatedFor() {
+        final PayloadTemplate template = new PayloadTemplate(DistributedTracePayloadImpl.createDistributedTracePayload("traceId", "guid", "txnId", 0.5f), null);
+        Assert.assertTrue(template.isFor("traceId", "guid", "txnId", 0.5f));
+        Assert.assertFalse(template.isFor("traceId", "guid", "txnId", 1.5f));
+        Assert.assertFalse(template.isFor("traceId", "other", "txnId", 0.5f));
+        Assert.assertFalse(template.isFor("other", "guid", "txnId", 0.5f));
+        Assert.assertFalse(template.isFor("traceId", "guid", null, 0.5f));
+    }
+
+}
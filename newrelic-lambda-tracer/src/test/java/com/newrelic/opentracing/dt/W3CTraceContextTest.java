@@ -0,0 +1,163 @@
+package com.newrelic.opentracing.dt;
+
+import com.newrelic.opentracing.logging.InMemoryLogger;
+import com.newrelic.opentracing.logging.Log;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class W3CTraceContextTest {
+
+    private static final String TRACE_PARENT = "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01";
+    private static final String ENTRY = "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-1.23456-1482959525577";
+
+    @Before
+    public void before() {
+        Log.setInstance(new InMemoryLogger());
+    }
+
+    @Test
+    public void parsesTraceParent() {
+        final DistributedTracePayloadImpl payload = W3CTraceContext.parse(TRACE_PARENT, null);
+        Assert.assertNotNull(payload);
+        Assert.assertEquals("0af7651916cd43dd8448eb211c80319c", payload.traceId);
+        Assert.assertEquals("b7ad6b7169203331", payload.guid);
+        Assert.assertNull(payload.accountId);
+        Assert.assertNull(payload.priority);
+        // The traceparent's flag is the sampling decision, and there is no timestamp without our entry
+        Assert.assertTrue(payload.sampled);
+        Assert.assertEquals(DistributedTracePayloadImpl.NO_TIMESTAMP, payload.timestamp);
+        Assert.assertFalse(W3CTraceContext.parse(TRACE_PARENT.substring(0, 53) + "00", null).sampled);
+        Assert.assertFalse(W3CTraceContext.parse(TRACE_PARENT.substring(0, 53) + "fe", null).sampled);
+
+        // 64 bit ids come back as they were generated
+        Assert.assertEquals("8448eb211c80319c", W3CTraceContext.parse("00-00000000000000008448eb211c80319c-b7ad6b7169203331-00", null).traceId);
+        // Whitespace around the value, and fields added by later versions
+        Assert.assertNotNull(W3CTraceContext.parse(" " + TRACE_PARENT + "\t", null));
+        Assert.assertNotNull(W3CTraceContext.parse("01" + TRACE_PARENT.substring(2) + "-future", null));
+        Assert.assertNotNull(W3CTraceContext.parse("01" + TRACE_PARENT.substring(2), null));
+    }
+
+    @Test
+    public void rejectsMalformedTraceParents() {
+        final String[] traceParents = {
+                null, "", TRACE_PARENT.substring(1), TRACE_PARENT + "-future", TRACE_PARENT + "0", "ff" + TRACE_PARENT.substring(2),
+                TRACE_PARENT.toUpperCase(), TRACE_PARENT.replace('-', '_'), "00-00000000000000000000000000000000-b7ad6b7169203331-01",
+                "00-0af7651916cd43dd8448eb211c80319c-0000000000000000-01", "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-0g",
+                "01" + TRACE_PARENT.substring(2) + "future", "0g" + TRACE_PARENT.substring(2),
+        };
+        for (String traceParent : traceParents) {
+            Assert.assertNull(traceParent, W3CTraceContext.parse(traceParent, ENTRY));
+        }
+    }
+
+    @Test
+    public void parsesOurTraceStateEntry() {
+        final DistributedTracePayloadImpl payload = W3CTraceContext.parse(TRACE_PARENT, "congo=t61rcWkgMzE, " + ENTRY + " ,rojo=00f067aa0ba902b7");
+        Assert.assertEquals("0af7651916cd43dd8448eb211c80319c", payload.traceId);
+        // The parent is the span named by the traceparent
+        Assert.assertEquals("b7ad6b7169203331", payload.guid);
+        Assert.assertEquals("App", payload.parentType);
+        Assert.assertEquals("account", payload.accountId);
+        Assert.assertEquals("trustKey", payload.trustKey);
+        Assert.assertEquals("application", payload.applicationId);
+        Assert.assertEquals("27856f70d3d314b7", payload.txnId);
+        Assert.assertTrue(payload.sampled);
+        Assert.assertEquals(1.23456f, payload.priority, 0.0f);
+        Assert.assertEquals(1482959525577L, payload.timestamp);
+
+        final DistributedTracePayloadImpl optional = W3CTraceContext.parse(TRACE_PARENT, "trustKey@nr=0-2-account-application---false--1482959525577");
+        Assert.assertEquals("Mobile", optional.parentType);
+        Assert.assertNull(optional.txnId);
+        Assert.assertFalse(optional.sampled);
+        Assert.assertNull(optional.priority);
+
+        final DistributedTracePayloadImpl unknownSampled = W3CTraceContext.parse(TRACE_PARENT, "trustKey@nr=0-1-account-application----0.5-1-more");
+        Assert.assertEquals("Browser", unknownSampled.parentType);
+        Assert.assertNull(unknownSampled.sampled);
+        Assert.assertEquals(1L, unknownSampled.timestamp);
+    }
+
+    @Test
+    public void ignoresOtherAndMalformedEntries() {
+        final String[] traceStates = {
+                "otherKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-1.23456-1482959525577",
+                "trustKey@nr=0-3-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-1.23456-1482959525577",
+                "trustKey@nr=0-0--application-5f474d64b9cc9b2a-27856f70d3d314b7-1-1.23456-1482959525577",
+                "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-yes-1.23456-1482959525577",
+                "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-high-1482959525577",
+                "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-NaN-1482959525577",
+                "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-Infinity-1482959525577",
+                "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-0x1p3-1482959525577",
+                "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-1e3-1482959525577",
+                "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-.5-1482959525577",
+                "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-1.23456-",
+                "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-1.23456",
+                "trustKey@nr=0-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-1.23456-99999999999999999999",
+                "trustKey@nr=x-0-account-application-5f474d64b9cc9b2a-27856f70d3d314b7-1-1.23456-1482959525577",
+        };
+        for (String traceState : traceStates) {
+            final DistributedTracePayloadImpl payload = W3CTraceContext.parse(TRACE_PARENT, traceState);
+            Assert.assertNotNull(traceState, payload);
+            Assert.assertEquals(traceState, "0af7651916cd43dd8448eb211c80319c", payload.traceId);
+            Assert.assertNull(traceState, payload.accountId);
+            Assert.assertEquals(traceState, DistributedTracePayloadImpl.NO_TIMESTAMP, payload.timestamp);
+        }
+    }
+
+    @Test
+    public void passesOnOtherVendors() {
+        Assert.assertNull(W3CTraceContext.otherVendors(null));
+        Assert.assertNull(W3CTraceContext.otherVendors(ENTRY));
+        Assert.assertNull(W3CTraceContext.otherVendors(" , " + ENTRY + ",,"));
+        Assert.assertEquals("congo=t61rcWkgMzE,rojo=00f067aa0ba902b7", W3CTraceContext.otherVendors("congo=t61rcWkgMzE, " + ENTRY + "\t,rojo=00f067aa0ba902b7"));
+        Assert.assertEquals("rojo=00f067aa0ba902b7", W3CTraceContext.otherVendors("rojo=00f067aa0ba902b7"));
+        // Every entry under our key is dropped, not just the first
+        Assert.assertEquals("rojo=1", W3CTraceContext.otherVendors(ENTRY + "," + ENTRY + ",rojo=1"));
+        Assert.assertEquals("account@nr=x,rojo=1", W3CTraceContext.otherVendors("account@nr=x," + ENTRY + ",rojo=1"));
+
+        final StringBuilder many = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            many.append("v").append(i).append("=x,");
+        }
+        Assert.assertEquals(31, W3CTraceContext.otherVendors(many.toString()).split(",").length);
+    }
+
+    @Test
+    public void entryKeyFallsBackToTheAccount() {
+        Assert.assertEquals("trustKey", W3CTraceContext.traceStateKey());
+        Assert.assertEquals("trustKey", W3CTraceContext.traceStateKey("trustKey", "account"));
+        Assert.assertEquals("account", W3CTraceContext.traceStateKey(null, "account"));
+
+        // Written under the account id without a trust key
+        final DistributedTracePayloadImpl payload = new DistributedTracePayloadImpl(1, "App", "account", null, "app", "b7ad6b7169203331", "8448eb211c80319c",
+                null, 1.2f, true);
+        Assert.assertTrue(new PayloadTemplate(payload, null).at(1).traceState().startsWith("account@nr="));
+    }
+
+    @Test
+    public void writesHeaders() {
+        final DistributedTracePayloadImpl payload = DistributedTracePayloadImpl.createDistributedTracePayload("8448eb211c80319c", "b7ad6b7169203331",
+                "27856f70d3d314b7", 1.0E-4f);
+        final OutboundPayload outbound = new PayloadTemplate(payload, "rojo=00f067aa0ba902b7").at(1482959525577L);
+        Assert.assertEquals("00-00000000000000008448eb211c80319c-b7ad6b7169203331-00", outbound.traceParent());
+        Assert.assertEquals("trustKey@nr=0-0-account-primaryApp-b7ad6b7169203331-27856f70d3d314b7-0-0.00010-1482959525577,rojo=00f067aa0ba902b7",
+                outbound.traceState());
+        Assert.assertSame(outbound.traceState(), outbound.traceState());
+
+        // What is written reads back
+        final DistributedTracePayloadImpl parsed = W3CTraceContext.parse(outbound.traceParent(), outbound.traceState());
+        Assert.assertEquals(payload.toString().replaceFirst("timestamp=\\d+", ""), parsed.toString().replaceFirst("timestamp=\\d+", ""));
+
+        Assert.assertEquals("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01",
+                W3CTraceContext.traceParent("0af7651916cd43dd8448eb211c80319c", "b7ad6b7169203331", true));
+        // Ids that are not hex ids have no traceparent
+        Assert.assertNull(W3CTraceContext.traceParent("traceId", "b7ad6b7169203331", true));
+        Assert.assertNull(W3CTraceContext.traceParent("8448eb211c80319c", "guid", true));
+        final OutboundPayload withoutIds = new PayloadTemplate(DistributedTracePayloadImpl.createDistributedTracePayload("traceId", "guid", "txnId", 0.5f),
+                null).at(1);
+        Assert.assertNull(withoutIds.traceParent());
+        Assert.assertNull(withoutIds.traceState());
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.newrelic.opentracing.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Base64Test {
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void encodesLikeTheJdk() throws IOException {
+        for (int len = 0; len < 300; len++) {
+            final byte[] data = randomBytes(len + 3);
+            // Offsets into the array
+            final byte[] slice = Arrays.copyOfRange(data, 2, 2 + len);
+            final String expected = java.util.Base64.getEncoder().encodeToString(slice);
+            final String expectedUrlSafe = java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(slice);
+
+            assertEquals(expected, Base64.encode(data, 2, len));
+            assertEquals(expectedUrlSafe, Base64.encodeUrlSafe(data, 2, len));
+            assertEquals(expected.length(), Base64.encodedLength(len, true));
+            assertEquals(expectedUrlSafe.length(), Base64.encodedLength(len, false));
+
+            final byte[] bytes = new byte[expected.length() + 1];
+            assertEquals(expected.length(), Base64.encode(data, 2, len, bytes, 1, false));
+            assertEquals(expected, new String(bytes, 1, expected.length(), StandardCharsets.US_ASCII));
+            assertEquals(expectedUrlSafe.length(), Base64.encode(data, 2, len, bytes, 0, true));
+            assertEquals(expectedUrlSafe, new String(bytes, 0, expectedUrlSafe.length(), StandardCharsets.US_ASCII));
+
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            Base64.encode(data, 2, len, stream);
+            assertEquals(expected, stream.toString("US-ASCII"));
+
+            for (ByteBuffer dst : new ByteBuffer[] { ByteBuffer.allocate(expected.length()), ByteBuffer.allocateDirect(expected.length()) }) {
+                // Read-only and direct buffers have no accessible array
+                final ByteBuffer src = dst.isDirect() ? ByteBuffer.wrap(data, 2, len).asReadOnlyBuffer() : ByteBuffer.wrap(data, 2, len);
+                Base64.encode(src, dst);
+                assertEquals(0, src.remaining() + dst.remaining());
+                dst.flip();
+                assertEquals(expected, StandardCharsets.US_ASCII.decode(dst).toString());
+            }
+        }
+    }
+
+    @Test
+    public void encodesLargeInputInChunks() throws IOException {
+        final byte[] data = randomBytes(100000);
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Base64.encode(data, 1, data.length - 1, stream);
+        assertEquals(java.util.Base64.getEncoder().encodeToString(Arrays.copyOfRange(data, 1, data.length)), stream.toString("US-ASCII"));
+    }
+
+    @Test
+    public void writerBreaksLines() throws IOException {
+        for (int len : new int[] { 0, 1, 56, 57, 58, 114, 200 }) {
+            final byte[] data = randomBytes(len);
+            final StringWriter writer = new StringWriter();
+            Base64.encode(data, 0, len, writer);
+            final String encoded = java.util.Base64.getEncoder().encodeToString(data);
+            final StringBuilder expected = new StringBuilder();
+            // Only full groups complete a line
+            final int fullGroups = len / 3 * 4;
+            for (int i = 0; i < encoded.length(); i += 76) {
+                expected.append(encoded, i, Math.min(encoded.length(), i + 76));
+                if (i + 76 <= fullGroups) {
+                    expected.append('\n');
+                }
+            }
+            assertEquals(expected.toString(), writer.toString());
+        }
+    }
+
+    @Test
+    public void decodesEitherAlphabet() throws IOException {
+        for (int len = 0; len < 300; len++) {
+            final byte[] data = randomBytes(len);
+            final String encoded = java.util.Base64.getEncoder().encodeToString(data);
+            final String urlSafe = java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(data);
+
+            assertArrayEquals(data, Base64.decode(encoded));
+            assertArrayEquals(data, Base64.decode(urlSafe));
+            assertArrayEquals(data, Base64.decode(("  " + encoded).toCharArray(), 2, encoded.length()));
+            final byte[] ascii = ("x" + urlSafe).getBytes(StandardCharsets.US_ASCII);
+            assertArrayEquals(data, Base64.decode(ascii, 1, urlSafe.length()));
+
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            Base64.decode(encoded, stream);
+            assertArrayEquals(data, stream.toByteArray());
+
+            final ByteBuffer dst = ByteBuffer.allocate(len);
+            final ByteBuffer src = ByteBuffer.wrap(encoded.getBytes(StandardCharsets.US_ASCII));
+            Base64.decode(src, dst);
+            assertEquals(0, src.remaining() + dst.remaining());
+            assertArrayEquals(data, dst.array());
+        }
+    }
+
+    @Test
+    public void skipsWhatIsNotInTheAlphabet() throws IOException {
+        final byte[] data = randomBytes(200);
+        final String mime = java.util.Base64.getMimeEncoder().encodeToString(data);
+        assertArrayEquals(data, Base64.decode(mime));
+        assertArrayEquals(data, Base64.decode(" \t" + mime.replace("\r\n", "\n\u00e9\u0100") + "\n"));
+        // Padding ends a group, decoding goes on with the next
+        assertArrayEquals("aa".getBytes(StandardCharsets.US_ASCII), Base64.decode("YQ==YQ=="));
+        assertArrayEquals("aabc".getBytes(StandardCharsets.US_ASCII), Base64.decode("YQ==\nYWJj".toCharArray(), 0, 9));
+        assertArrayEquals("abc".getBytes(StandardCharsets.US_ASCII), Base64.decode("=YWJj"));
+        assertArrayEquals(new byte[0], Base64.decode("Y"));
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Base64.decode("YWI=YQ==", stream);
+        assertArrayEquals("aba".getBytes(StandardCharsets.US_ASCII), stream.toByteArray());
+        final ByteBuffer dst = ByteBuffer.allocate(3);
+        Base64.decode(ByteBuffer.wrap("YQ==YWI".getBytes(StandardCharsets.US_ASCII)), dst);
+        assertArrayEquals("aab".getBytes(StandardCharsets.US_ASCII), dst.array());
+    }
+
+    @Test
+    public void decodesToStreamsInChunks() throws IOException {
+        final byte[] data = randomBytes(10_000);
+        final String mime = java.util.Base64.getMimeEncoder().encodeToString(data);
+        final int[] largestWrite = new int[1];
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                largestWrite[0] = Math.max(largestWrite[0], len);
+                super.write(b, off, len);
+            }
+        };
+        Base64.decode(mime, stream);
+        assertArrayEquals(data, stream.toByteArray());
+
+        stream.reset();
+        Base64.decode(("  " + mime).toCharArray(), 2, mime.length(), stream);
+        assertArrayEquals(data, stream.toByteArray());
+        assertTrue(largestWrite[0] <= 1024);
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void encodeChecksRoom() {
+        Base64.encode(ByteBuffer.wrap(new byte[4]), ByteBuffer.allocate(7));
+    }
+
+    private byte[] randomBytes(int len) {
+        final byte[] data = new byte[len];
+        random.nextBytes(data);
+        return data;
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.newrelic.opentracing.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkedBufferTest {
+
+    @Test
+    public void behavesLikeAList() {
+        final ChunkedBuffer<Integer> buffer = new ChunkedBuffer<>();
+        final List<Integer> expected = new ArrayList<>();
+        assertTrue(buffer.isEmpty());
+
+        for (int i = 0; i < 1000; i++) {
+            buffer.add(i);
+            expected.add(i);
+        }
+        assertEquals(expected, buffer);
+        assertEquals(1000, buffer.size());
+        assertEquals(Integer.valueOf(64), buffer.get(64));
+        assertEquals(Integer.valueOf(5), buffer.set(5, -5));
+        assertEquals(Integer.valueOf(-5), buffer.get(5));
+
+        final List<Integer> iterated = new ArrayList<>();
+        for (Integer value : buffer) {
+            iterated.add(value);
+        }
+        expected.set(5, -5);
+        assertEquals(expected, iterated);
+    }
+
+    @Test
+    public void refillsAfterClear() {
+        final ChunkedBuffer<String> buffer = new ChunkedBuffer<>();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < ChunkedBuffer.MAX_RETAINED * 2 + 7; i++) {
+                buffer.add(round + ":" + i);
+            }
+            assertEquals(round + ":70", buffer.get(70));
+            buffer.clear();
+            assertTrue(buffer.isEmpty());
+        }
+        buffer.add("last");
+        assertEquals(1, buffer.size());
+        assertEquals("last", buffer.get(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getPastTheEnd() {
+        final ChunkedBuffer<String> buffer = new ChunkedBuffer<>();
+        buffer.add("only");
+        buffer.get(1);
+    }
+
+    @Test
+    public void iteratorFailsFast() {
+        final ChunkedBuffer<String> buffer = new ChunkedBuffer<>();
+        buffer.add("a");
+        buffer.add("b");
+        final Iterator<String> iterator = buffer.iterator();
+        iterator.next();
+        buffer.add("c");
+        try {
+            iterator.next();
+            fail();
+        } catch (ConcurrentModificationException expected) {
+        }
+    }
+
+}
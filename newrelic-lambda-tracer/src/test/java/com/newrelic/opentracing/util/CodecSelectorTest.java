@@ -0,0 +1,45 @@
+package com.newrelic.opentracing.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CodecSelectorTest {
+
+    @Test
+    public void fromConfig() {
+        assertSame(PayloadCodec.defaultCodec(), CodecSelector.fromConfig(null, null).select(10));
+        assertSame(PayloadCodec.defaultCodec(), CodecSelector.fromConfig("zstd", null).select(10));
+        assertSame(PayloadCodec.huffmanOnly(), CodecSelector.fromConfig(" HUFFMAN ", null).select(10));
+        assertSame(PayloadCodec.gzip(3), CodecSelector.fromConfig("gzip-3", "1").select(100_000));
+        assertFalse(CodecSelector.fromConfig("gzip-3", null).isAdaptive());
+        assertTrue(CodecSelector.fromConfig("Adaptive", "not a number").isAdaptive());
+    }
+
+    @Test
+    public void adaptiveFollowsPayloadSize() {
+        final CodecSelector selector = CodecSelector.adaptive(10, TimeUnit.MILLISECONDS);
+        assertSame(PayloadCodec.gzip(9), selector.select(1));
+        assertSame(PayloadCodec.huffmanOnly(), selector.select(10_000_000));
+    }
+
+    @Test
+    public void adaptiveLearnsFromMeasurements() {
+        final CodecSelector selector = CodecSelector.adaptive(10, TimeUnit.MILLISECONDS);
+        assertSame(PayloadCodec.gzip(9), selector.select(100));
+
+        // Slow invocations at the best ratio push the selection to a faster codec
+        for (int i = 0; i < 10; i++) {
+            selector.record(PayloadCodec.gzip(9), 100, 60_000, TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        assertSame(PayloadCodec.gzip(6), selector.select(100));
+
+        // A zero budget always takes the fastest codec
+        assertSame(PayloadCodec.huffmanOnly(), CodecSelector.adaptive(0, TimeUnit.MILLISECONDS).select(1));
+    }
+
+}
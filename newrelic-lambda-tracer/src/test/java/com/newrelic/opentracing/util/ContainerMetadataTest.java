@@ -0,0 +1,63 @@
+package com.newrelic.opentracing.util;
+
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ContainerMetadataTest {
+
+    private static final String ARN = "arn:aws:lambda:us-west-2:121212121212:function:S3ListBuckets";
+
+    @Test
+    public void metadataJson() throws Exception {
+        final PayloadCodec codec = PayloadCodec.gzip(1);
+        final String json = ContainerMetadata.getMetadataJson(ARN, "AWS_Lambda_java8", codec);
+        final JSONParser parser = new JSONParser();
+        assertEquals(parser.parse(JSONValue.toJSONString(ProtocolUtil.getMetadata(ARN, "AWS_Lambda_java8", codec))), parser.parse(json));
+
+        // Reused while the inputs stay the same
+        assertSame(json, ContainerMetadata.getMetadataJson(ARN, "AWS_Lambda_java8", codec));
+        assertSame(ContainerMetadata.getPayloadHeader(ARN, "AWS_Lambda_java8", codec), ContainerMetadata.getPayloadHeader(ARN, "AWS_Lambda_java8", codec));
+        assertEquals("[2,\"NR_LAMBDA_MONITORING\"," + json + ",\"",
+                new String(ContainerMetadata.getPayloadHeader(ARN, "AWS_Lambda_java8", codec), StandardCharsets.UTF_8));
+
+        // Replaced when they change
+        assertNotSame(json, ContainerMetadata.getMetadataJson(ARN, "AWS_Lambda_java8", PayloadCodec.gzip(9)));
+        assertEquals("gzip-9", ((Map) parser.parse(ContainerMetadata.getMetadataJson(ARN, null, PayloadCodec.gzip(9)))).get("compression"));
+    }
+
+    @Test
+    public void keptPerCodec() throws Exception {
+        final String gzipJson = ContainerMetadata.getMetadataJson(ARN, "AWS_Lambda_java8", PayloadCodec.gzip(1));
+        final String huffmanJson = ContainerMetadata.getMetadataJson(ARN, "AWS_Lambda_java8", PayloadCodec.huffmanOnly());
+        // An adaptive selector alternating between codecs reuses the entry of each
+        for (int i = 0; i < 3; i++) {
+            assertSame(gzipJson, ContainerMetadata.getMetadataJson(ARN, "AWS_Lambda_java8", PayloadCodec.gzip(1)));
+            assertSame(huffmanJson, ContainerMetadata.getMetadataJson(ARN, "AWS_Lambda_java8", PayloadCodec.huffmanOnly()));
+        }
+        assertEquals("huffman", ((Map<?, ?>) new JSONParser().parse(huffmanJson)).get("compression"));
+
+        // Entries for other inputs are replaced
+        ContainerMetadata.getMetadataJson(ARN, null, PayloadCodec.gzip(1));
+        assertNotSame(huffmanJson, ContainerMetadata.getMetadataJson(ARN, "AWS_Lambda_java8", PayloadCodec.huffmanOnly()));
+    }
+
+    @Test
+    public void transactionNames() {
+        assertEquals("Other/Function/S3ListBuckets", ContainerMetadata.getTransactionName(ARN, false));
+        assertEquals("WebTransaction/Function/S3ListBuckets", ContainerMetadata.getTransactionName(ARN, true));
+        assertSame(ContainerMetadata.getTransactionName(ARN, true), ContainerMetadata.getTransactionName(ARN, true));
+        assertEquals("Other/Function/other", ContainerMetadata.getTransactionName("arn:aws:lambda:us-west-2:121212121212:function:other", false));
+        assertNull(ContainerMetadata.getTransactionName("no function", false));
+        assertNull(ContainerMetadata.getTransactionName(null, true));
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.newrelic.opentracing.util;
+
+import com.newrelic.opentracing.state.DistributedTracingState;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DistributedTraceUtilTest {
+
+    @After
+    public void after() {
+        DistributedTraceUtil.setUse128BitTraceIds(false);
+    }
+
+    @Test
+    public void hexIsZeroPaddedAndLowerCase() {
+        assertEquals("0000000000000001", DistributedTraceUtil.toHex(1L));
+        assertEquals("ffffffffffffffff", DistributedTraceUtil.toHex(-1L));
+        assertEquals("5f474d64b9cc9b2a", DistributedTraceUtil.toHex(0x5f474d64b9cc9b2aL));
+        assertEquals("00000000000000ab5f474d64b9cc9b2a", DistributedTraceUtil.toHex(0xabL, 0x5f474d64b9cc9b2aL));
+        assertEquals(Long.toHexString(0x7f474d64b9cc9b2aL), DistributedTraceUtil.toHex(0x7f474d64b9cc9b2aL));
+    }
+
+    @Test
+    public void idsAreNonZeroAndDistinct() {
+        final Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            final long id = DistributedTraceUtil.nextId();
+            assertNotEquals(0, id);
+            ids.add(id);
+        }
+        assertEquals(10_000, ids.size());
+        assertEquals(16, DistributedTraceUtil.generateGuid().length());
+    }
+
+    @Test
+    public void jsonWriterWritesHexIds() throws Exception {
+        final StringWriter out = new StringWriter();
+        final JsonWriter writer = new JsonWriter(out);
+        writer.beginArray().hexValue(0x5f474d64b9cc9b2aL).hexValue(42L).endArray();
+        writer.flush();
+        assertEquals("[\"5f474d64b9cc9b2a\",\"000000000000002a\"]", out.toString());
+    }
+
+    @Test
+    public void truncatedFloatMatchesDecimalFormat() {
+        final DecimalFormat format = new DecimalFormat("#.######", DecimalFormatSymbols.getInstance(Locale.US));
+        // Every value whose seventh decimal is an exact tie, then a spread of the other 2^24 inputs
+        for (int k = 0; k < 1 << 24; k += 1 << 17) {
+            assertTruncatedFloat(format, k);
+        }
+        for (int k = 0; k < 1 << 24; k += 251) {
+            assertTruncatedFloat(format, k);
+        }
+        final Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            assertTruncatedFloat(format, random.nextInt() >>> 8);
+        }
+        assertTruncatedFloat(format, (1 << 24) - 1);
+    }
+
+    @Test
+    public void nextTruncatedFloatRange() {
+        for (int i = 0; i < 10_000; i++) {
+            final float next = DistributedTraceUtil.nextTruncatedFloat();
+            assertTrue(next >= 0.0f && next <= 1.0f);
+            assertEquals(next, Math.round(next * 1_000_000d) / 1_000_000f, 0.0f);
+        }
+    }
+
+    private static void assertTruncatedFloat(DecimalFormat format, int k) {
+        // What nextTruncatedFloat used to do with ThreadLocalRandom.nextFloat, which is k * 2^-24
+        final float legacy = Float.parseFloat(format.format(k * 0x1.0p-24f));
+        assertEquals("k=" + k, Float.floatToIntBits(legacy), Float.floatToIntBits(DistributedTraceUtil.truncatedFloat(k)));
+    }
+
+    @Test
+    public void traceIdLength() {
+        final DistributedTracingState state = new DistributedTracingState();
+        state.generateAndStoreTraceId();
+        assertEquals(16, state.getTraceId().length());
+        assertSame(state.getTraceId(), state.getTraceId());
+
+        DistributedTraceUtil.setUse128BitTraceIds(true);
+        state.generateAndStoreTraceId();
+        assertEquals(32, state.getTraceId().length());
+        assertTrue(state.getTraceId().matches("[0-9a-f]{32}"));
+    }
+
+}
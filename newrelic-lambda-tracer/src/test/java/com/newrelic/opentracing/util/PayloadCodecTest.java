@@ -0,0 +1,66 @@
+package com.newrelic.opentracing.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadCodecTest {
+
+    private static final String SOURCE = buildSource();
+
+    @Test
+    public void forName() {
+        assertSame(PayloadCodec.gzip(Deflater.DEFAULT_COMPRESSION), PayloadCodec.forName("gzip"));
+        assertSame(PayloadCodec.gzip(1), PayloadCodec.forName("gzip-1"));
+        assertSame(PayloadCodec.gzip(9), PayloadCodec.forName("gzip-9"));
+        assertSame(PayloadCodec.huffmanOnly(), PayloadCodec.forName("huffman"));
+        assertNull(PayloadCodec.forName("brotli"));
+        assertNull(PayloadCodec.forName(null));
+        assertEquals("gzip-6", PayloadCodec.gzip(6).getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLevel() {
+        PayloadCodec.gzip(11);
+    }
+
+    @Test
+    public void allCodecsProduceGzip() throws IOException {
+        for (PayloadCodec codec : new PayloadCodec[] { PayloadCodec.defaultCodec(), PayloadCodec.gzip(1), PayloadCodec.gzip(9),
+                PayloadCodec.huffmanOnly() }) {
+            assertEquals(codec.getName(), SOURCE, ProtocolUtil.decodeAndExtract(codec.compressAndEncode(SOURCE)));
+
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream stream = codec.openStream(compressed)) {
+                stream.write(SOURCE.getBytes(StandardCharsets.UTF_8));
+            }
+            assertEquals(codec.getName(), SOURCE, ProtocolUtil.decodeAndExtract(Base64.encode(compressed.toByteArray())));
+        }
+    }
+
+    @Test
+    public void huffmanTradesSizeForSpeed() {
+        final int huffman = PayloadCodec.huffmanOnly().compressAndEncode(SOURCE).length();
+        final int best = PayloadCodec.gzip(9).compressAndEncode(SOURCE).length();
+        assertTrue(best < huffman);
+        assertTrue(huffman < SOURCE.length());
+    }
+
+    private static String buildSource() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append("{\"name\":\"span-").append(i % 17).append("\",\"duration\":").append(i * 0.37f).append('}');
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.newrelic.opentracing.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PayloadCompressorTest {
+
+    @Test
+    public void reusedCompressorRoundTrips() {
+        final PayloadCompressor compressor = PayloadCompressor.get();
+        assertSame(compressor, PayloadCompressor.get());
+
+        // Growing and shrinking payloads exercise the buffer sizing between reuses
+        for (int size : new int[] { 0, 10, 100_000, 50, 1_000_000, 3 }) {
+            final String source = randomJson(size);
+            assertEquals(source, ProtocolUtil.decodeAndExtract(compressor.compressAndEncode(source)));
+        }
+    }
+
+    @Test
+    public void compressionLevels() {
+        final String source = randomJson(200_000);
+        final PayloadCompressor compressor = PayloadCompressor.get();
+
+        final String fastest = compressor.compressAndEncode(source, Deflater.BEST_SPEED);
+        final String smallest = compressor.compressAndEncode(source, Deflater.BEST_COMPRESSION);
+        final String stored = compressor.compressAndEncode(source, Deflater.NO_COMPRESSION);
+
+        assertEquals(source, ProtocolUtil.decodeAndExtract(fastest));
+        assertEquals(source, ProtocolUtil.decodeAndExtract(smallest));
+        assertEquals(source, ProtocolUtil.decodeAndExtract(stored));
+        assertTrue(smallest.length() <= fastest.length());
+        assertTrue(fastest.length() < stored.length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLevel() {
+        PayloadCompressor.get().compressAndEncode("payload", 10);
+    }
+
+    @Test
+    public void streamRoundTrips() throws IOException {
+        final String source = randomJson(300_000);
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        final PayloadCompressor compressor = PayloadCompressor.get();
+        try (OutputStream gzip = compressor.openStream(compressed)) {
+            // Another payload compressed on the same thread while the stream is open gets its own context
+            assertNotSame(compressor, PayloadCompressor.get());
+            assertEquals("nested", ProtocolUtil.decodeAndExtract(PayloadCompressor.get().compressAndEncode("nested")));
+
+            final byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+            gzip.write(bytes, 0, 1000);
+            gzip.write(bytes[1000]);
+            gzip.write(bytes, 1001, bytes.length - 1001);
+        }
+        assertSame(compressor, PayloadCompressor.get());
+        assertEquals(source, gunzip(compressed.toByteArray()));
+    }
+
+    @Test
+    public void failedOpenReleasesTheCompressor() {
+        final PayloadCompressor compressor = PayloadCompressor.get();
+        try {
+            compressor.openStream(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("sink closed");
+                }
+            });
+            fail();
+        } catch (IOException expected) {
+        }
+        assertSame(compressor, PayloadCompressor.get());
+    }
+
+    private static String gunzip(byte[] compressed) throws IOException {
+        final GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = gzip.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String randomJson(int length) {
+        final Random random = new Random(length);
+        final StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append("{\"guid\":\"").append(Long.toHexString(random.nextLong())).append("\",\"duration\":")
+                    .append(random.nextFloat()).append('}');
+        }
+        builder.setLength(length);
+        return builder.toString();
+    }
+
+}
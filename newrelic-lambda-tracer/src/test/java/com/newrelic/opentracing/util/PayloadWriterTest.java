@@ -0,0 +1,234 @@
+package com.newrelic.opentracing.util;
+
+import com.newrelic.opentracing.LambdaSpan;
+import com.newrelic.opentracing.events.ErrorEvent;
+import com.newrelic.opentracing.events.ErrorEventBuilder;
+import com.newrelic.opentracing.events.TransactionEvent;
+import com.newrelic.opentracing.traces.ErrorTrace;
+import com.newrelic.opentracing.traces.ErrorTraceBuilder;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PayloadWriterTest {
+
+    @Test
+    public void jsonWriterMatchesJsonSimple() throws Exception {
+        final Map<String, Object> map = new HashMap<>();
+        map.put("string", "quote\" backslash\\ slash/ \b\f\n\r\t \u0001 \u007f \u2028 caf\u00e9");
+        map.put("int", 42);
+        map.put("long", Long.MAX_VALUE);
+        map.put("float", 8.619987f);
+        map.put("double", 1.0E-7);
+        map.put("nan", Float.NaN);
+        map.put("bool", true);
+        map.put("null", null);
+        map.put("list", Arrays.asList(1, "two", null, Collections.singletonMap("k", "v")));
+
+        final StringWriter out = new StringWriter();
+        final JsonWriter writer = new JsonWriter(out);
+        writer.value(map);
+        writer.flush();
+
+        assertEquals(JSONValue.toJSONString(map), out.toString());
+    }
+
+    @Test
+    public void streamedPayloadMatchesMapPayload() throws Exception {
+        final List<LambdaSpan> spans = createTestSpans(300);
+        final TransactionEvent txnEvent = new TransactionEvent(spans.get(0));
+        final List<ErrorEvent> errorEvents = Collections.singletonList(new ErrorEventBuilder()
+                .setErrorClass("java.lang.ArithmeticException")
+                .setErrorMessage("/ by zero")
+                .setUserAttributes(new HashMap<>())
+                .createError());
+        final List<ErrorTrace> errorTraces = Collections.singletonList(new ErrorTraceBuilder()
+                .setErrorType("java.lang.ArithmeticException")
+                .setMessage("/ by zero")
+                .setStackTrace(Arrays.asList("\tcom.example.Handler.handle", "\tcom.example.Handler.run"))
+                .createErrorTrace());
+
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        PayloadWriter.writePayload(sink, PayloadCodec.gzip(1), "myARN", "executionEnvironment", spans, txnEvent, errorEvents, errorTraces);
+
+        final JSONParser parser = new JSONParser();
+        final JSONArray payload = (JSONArray) parser.parse(sink.toString("US-ASCII"));
+        assertEquals(2L, payload.get(0));
+        assertEquals("NR_LAMBDA_MONITORING", payload.get(1));
+        assertEquals(parser.parse(JSONValue.toJSONString(ProtocolUtil.getMetadata("myARN", "executionEnvironment", PayloadCodec.gzip(1)))), payload.get(2));
+
+        final Object expected = parser.parse(JSONObject.toJSONString(ProtocolUtil.getData(spans, txnEvent, errorEvents, errorTraces)));
+        assertEquals(expected, parser.parse(ProtocolUtil.decodeAndExtract((String) payload.get(3))));
+
+        final StringWriter debug = new StringWriter();
+        PayloadWriter.writeDebugPayload(debug, PayloadCodec.gzip(1), "myARN", "executionEnvironment", spans, txnEvent, errorEvents, errorTraces);
+        final JSONArray debugPayload = (JSONArray) parser.parse(debug.toString());
+        assertEquals("DEBUG", debugPayload.get(1));
+        assertEquals(expected, debugPayload.get(3));
+    }
+
+    @Test
+    public void splitsLinesOverTheCeiling() throws Exception {
+        final List<LambdaSpan> spans = createTestSpans(3000);
+        final TransactionEvent txnEvent = new TransactionEvent(spans.get(0));
+        final List<ErrorEvent> errorEvents = Collections.singletonList(new ErrorEventBuilder()
+                .setErrorClass("java.lang.ArithmeticException")
+                .setErrorMessage("/ by zero")
+                .setUserAttributes(new HashMap<>())
+                .createError());
+        final List<ErrorTrace> errorTraces = Collections.emptyList();
+
+        final int maxLineBytes = 16 * 1024;
+        final List<String> lines = new ArrayList<>();
+        final long uncompressedBytes = PayloadWriter.writePayloads((bytes, offset, length) -> lines.add(new String(bytes, offset, length, "US-ASCII")),
+                PayloadCodec.defaultCodec(), maxLineBytes, "myARN", "executionEnvironment", spans, txnEvent, errorEvents, errorTraces);
+        assertTrue(lines.size() > 1);
+
+        final JSONParser parser = new JSONParser();
+        final List<Object> spanTags = new ArrayList<>();
+        long spansSeen = 0;
+        long decodedBytes = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i);
+            assertTrue(line.length() <= maxLineBytes);
+
+            final JSONArray payload = (JSONArray) parser.parse(line);
+            assertEquals("NR_LAMBDA_MONITORING", payload.get(1));
+            assertEquals("myARN", ((Map<?, ?>) payload.get(2)).get("arn"));
+            final String json = ProtocolUtil.decodeAndExtract((String) payload.get(3));
+            decodedBytes += json.length();
+            final Map<?, ?> data = (Map<?, ?>) parser.parse(json);
+
+            // The transaction and errors lead the first line
+            assertEquals(i == 0, data.containsKey("analytic_event_data"));
+            assertEquals(i == 0, data.containsKey("error_event_data"));
+
+            final List<?> spanEventData = (List<?>) data.get("span_event_data");
+            spansSeen += (Long) ((Map<?, ?>) spanEventData.get(1)).get("events_seen");
+            assertEquals(3000L, ((Map<?, ?>) spanEventData.get(1)).get("reservoir_size"));
+            for (Object span : (List<?>) spanEventData.get(2)) {
+                spanTags.add(((Map<?, ?>) ((List<?>) span).get(1)).get("someTag"));
+            }
+        }
+
+        assertEquals(3000, spansSeen);
+        assertEquals(decodedBytes, uncompressedBytes);
+        final List<Object> expectedTags = new ArrayList<>();
+        for (LambdaSpan span : spans) {
+            expectedTags.add(span.getTag("someTag"));
+        }
+        assertEquals(expectedTags, spanTags);
+    }
+
+    @Test
+    public void reportsSpansSeenAndReservoirSize() throws Exception {
+        final List<LambdaSpan> spans = createTestSpans(10);
+        final List<String> lines = new ArrayList<>();
+        PayloadWriter.writePayloads((bytes, offset, length) -> lines.add(new String(bytes, offset, length, "US-ASCII")), PayloadCodec.defaultCodec(),
+                240_000, "myARN", "executionEnvironment", spans, 25, 10, null, Collections.emptyList(), Collections.emptyList());
+
+        final JSONParser parser = new JSONParser();
+        final JSONArray payload = (JSONArray) parser.parse(lines.get(0));
+        final Map<?, ?> data = (Map<?, ?>) parser.parse(ProtocolUtil.decodeAndExtract((String) payload.get(3)));
+        final Map<?, ?> info = (Map<?, ?>) ((List<?>) data.get("span_event_data")).get(1);
+        assertEquals(25L, info.get("events_seen"));
+        assertEquals(10L, info.get("reservoir_size"));
+    }
+
+    @Test
+    public void singleLineUnderTheCeiling() throws Exception {
+        final List<LambdaSpan> spans = createTestSpans(10);
+        final TransactionEvent txnEvent = new TransactionEvent(spans.get(0));
+        final List<String> lines = new ArrayList<>();
+        PayloadWriter.writePayloads((bytes, offset, length) -> lines.add(new String(bytes, offset, length, "US-ASCII")), PayloadCodec.defaultCodec(),
+                Long.MAX_VALUE, "myARN", "executionEnvironment", spans, txnEvent, Collections.emptyList(), Collections.emptyList());
+        assertEquals(1, lines.size());
+
+        final JSONParser parser = new JSONParser();
+        final JSONArray payload = (JSONArray) parser.parse(lines.get(0));
+        final Object expected = parser.parse(JSONObject.toJSONString(ProtocolUtil.getData(spans, txnEvent, Collections.emptyList(),
+                Collections.emptyList())));
+        assertEquals(expected, parser.parse(ProtocolUtil.decodeAndExtract((String) payload.get(3))));
+    }
+
+    @Test
+    public void failedWritesReleaseTheCompressor() throws Exception {
+        final PayloadCompressor compressor = PayloadCompressor.get();
+        final List<LambdaSpan> spans = createTestSpans(300);
+
+        // The sink fails once the data hash is being compressed
+        final OutputStream failingSink = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                if (count > 1000) {
+                    throw new IllegalStateException("sink closed");
+                }
+                super.write(b, off, len);
+            }
+        };
+        try {
+            PayloadWriter.writePayload(failingSink, PayloadCodec.gzip(1), "myARN", "executionEnvironment", spans, null, Collections.emptyList(),
+                    Collections.emptyList());
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertSame(compressor, PayloadCompressor.get());
+
+        // Serializing the spans fails half way through the first line
+        final List<LambdaSpan> failingSpans = new AbstractList<LambdaSpan>() {
+            @Override
+            public LambdaSpan get(int index) {
+                if (index == 150) {
+                    throw new IllegalStateException("span gone");
+                }
+                return spans.get(index);
+            }
+
+            @Override
+            public int size() {
+                return spans.size();
+            }
+        };
+        try {
+            PayloadWriter.writePayloads((bytes, offset, length) -> {
+            }, PayloadCodec.gzip(1), Long.MAX_VALUE, "myARN", "executionEnvironment", failingSpans, null, Collections.emptyList(),
+                    Collections.emptyList());
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertSame(compressor, PayloadCompressor.get());
+    }
+
+    private List<LambdaSpan> createTestSpans(int numberOfSpans) {
+        final List<LambdaSpan> spans = new ArrayList<>();
+        LambdaSpan parentSpan = null;
+        while (numberOfSpans-- > 0) {
+            final Map<String, Object> tags = new HashMap<>();
+            tags.put("someTag", "value" + numberOfSpans);
+            tags.put("count", numberOfSpans);
+            final LambdaSpan lambdaSpan = new LambdaSpan("operationName", 1234L, 1234L, tags, parentSpan, "guid" + numberOfSpans, "txnId");
+            parentSpan = lambdaSpan;
+            spans.add(lambdaSpan);
+        }
+        return spans;
+    }
+
+}
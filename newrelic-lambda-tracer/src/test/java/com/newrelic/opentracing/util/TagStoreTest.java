@@ -0,0 +1,112 @@
+package com.newrelic.opentracing.util;
+
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TagStoreTest {
+
+    @Test
+    public void behavesLikeAMap() {
+        final TagStore store = new TagStore();
+        final Map<String, Object> expected = new HashMap<>();
+        assertTrue(store.isEmpty());
+
+        for (int i = 0; i < 20; i++) {
+            store.put("int" + i, i);
+            expected.put("int" + i, i);
+        }
+        store.put("string", "value");
+        store.put("bool", true);
+        store.put("long", Long.MAX_VALUE);
+        store.put("float", 8.619987f);
+        store.put("double", 1.0E-7);
+        store.put("short", (Number) (short) 7);
+        store.put("decimal", new BigDecimal("1.50"));
+        store.put("nullString", (String) null);
+        expected.put("string", "value");
+        expected.put("bool", true);
+        expected.put("long", Long.MAX_VALUE);
+        expected.put("float", 8.619987f);
+        expected.put("double", 1.0E-7);
+        expected.put("short", (short) 7);
+        expected.put("decimal", new BigDecimal("1.50"));
+        expected.put("nullString", null);
+
+        // Replacing a value changes its type too
+        store.put("int3", "three");
+        expected.put("int3", "three");
+
+        assertEquals(expected, store.asMap());
+        assertEquals(expected.size(), store.size());
+        assertEquals(Integer.valueOf(5), store.get("int5"));
+        assertEquals("three", store.getString("int3"));
+        assertNull(store.getString("int5"));
+        assertTrue(store.containsKey("nullString"));
+        assertFalse(store.containsKey("missing"));
+        assertNull(store.get(null));
+
+        assertTrue(store.remove("int0"));
+        assertFalse(store.remove("int0"));
+        expected.remove("int0");
+        assertEquals(expected, store.asMap());
+
+        final Map<String, Object> copied = new HashMap<>();
+        store.copy().copyInto(copied);
+        assertEquals(expected, copied);
+        assertEquals(expected, TagStore.of(expected).asMap());
+
+        store.clear();
+        assertTrue(store.asMap().isEmpty());
+    }
+
+    @Test
+    public void writeToMatchesJsonSimple() throws Exception {
+        final Map<String, Object> tags = new HashMap<>();
+        tags.put("string", "slash/ quote\"");
+        tags.put("bool", false);
+        tags.put("int", 42);
+        tags.put("long", -1L);
+        tags.put("float", Float.NaN);
+        tags.put("double", 0.1d);
+        tags.put("decimal", new BigDecimal("1.50"));
+        tags.put("error", true);
+        final TagStore store = TagStore.of(tags);
+
+        final StringWriter out = new StringWriter();
+        final JsonWriter writer = new JsonWriter(out);
+        store.writeTo(writer, "error");
+        writer.flush();
+
+        tags.remove("error");
+        final JSONParser parser = new JSONParser();
+        assertEquals(parser.parse(JSONValue.toJSONString(tags)), parser.parse(out.toString()));
+    }
+
+    @Test
+    public void putAllOverwrites() {
+        final TagStore store = new TagStore();
+        store.put("a", 1);
+        store.put("b", "b");
+        final TagStore other = new TagStore();
+        other.put("b", 2.5d);
+        other.put("c", true);
+        store.putAll(other);
+
+        assertEquals(3, store.size());
+        assertEquals(1, store.get("a"));
+        assertEquals(2.5d, store.get("b"));
+        assertEquals(true, store.get("c"));
+    }
+
+}